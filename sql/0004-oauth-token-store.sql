@@ -0,0 +1,46 @@
+--
+-- OAuth2 token store tables for auth.tokenType=oauth2 with auth.tokenStore.type=jdbc
+--   + column layout is fixed by Spring's JdbcTokenStore; token and authentication are serialized objects
+--   + token_id and authentication_id are MD5 digests of the token value / authentication key
+--   + expiry is added to Spring's layout by ExpiringJdbcTokenStore, which deletes expired rows on a schedule
+--  run this script as the auth_admin_user with authdb set as default database
+--   command line:  psql -U auth_admin_user -d authdb -a -f 0004-oauth-token-store.sql
+--
+SET search_path = spring, pg_catalog;
+
+--
+-- oauth_access_token
+--   lookups: by token (readAccessToken, readAuthentication), by authentication (getAccessToken),
+--   by refresh token (removeAccessTokenUsingRefreshToken), by client and by client + user and by user
+--   (token listings), and expired tokens (ExpiringJdbcTokenStore.removeExpiredTokens)
+--
+CREATE TABLE oauth_access_token (
+  token_id VARCHAR(256) NOT NULL,
+  token BYTEA NOT NULL,
+  authentication_id VARCHAR(256) NOT NULL,
+  user_name VARCHAR(256) NULL,
+  client_id VARCHAR(256) NOT NULL,
+  authentication BYTEA NOT NULL,
+  refresh_token VARCHAR(256) NULL,
+  expiry TIMESTAMP NULL,
+
+  CONSTRAINT pk_oauth_access_token PRIMARY KEY (authentication_id)
+);
+CREATE UNIQUE INDEX ix_uq_oauth_access_token ON oauth_access_token (token_id);
+CREATE INDEX ix_oauth_access_token_client ON oauth_access_token (client_id, user_name);
+CREATE INDEX ix_oauth_access_token_refresh ON oauth_access_token (refresh_token);
+CREATE INDEX ix_oauth_access_token_user ON oauth_access_token (user_name);
+CREATE INDEX ix_oauth_access_token_expiry ON oauth_access_token (expiry);
+
+--
+-- oauth_refresh_token
+--
+CREATE TABLE oauth_refresh_token (
+  token_id VARCHAR(256) NOT NULL,
+  token BYTEA NOT NULL,
+  authentication BYTEA NOT NULL,
+  expiry TIMESTAMP NULL,
+
+  CONSTRAINT pk_oauth_refresh_token PRIMARY KEY (token_id)
+);
+CREATE INDEX ix_oauth_refresh_token_expiry ON oauth_refresh_token (expiry);
@@ -0,0 +1,16 @@
+--
+-- indexes for the admin user search (RswUserDetailsService.searchUsers / GET /api/admin/users)
+--   + keyset pagination on (lower(last_name), username): the search index is in that order, so each page is an
+--     index range scan from the previous page's last key - page cost does not grow with the table
+--   + case-insensitive prefix matching: LIKE 'abc%' can only use a btree whose collation is "C" (or a
+--     *_pattern_ops class); "C" also gives the search a stable byte-wise order that row comparison can seek on
+--   + email and username prefixes get their own "C" btrees; ix_uq_users (lower(username)) uses the database
+--     collation and so can't serve LIKE
+--  run this script as the auth_admin_user with authdb set as default database
+--   command line:  psql -U auth_admin_user -d authdb -a -f 0005-user-search-indexes.sql
+--
+SET search_path = spring, pg_catalog;
+
+CREATE INDEX ix_users_search_last_name ON users (lower(last_name) COLLATE "C", username COLLATE "C");
+CREATE INDEX ix_users_search_email ON users (lower(email_address) COLLATE "C");
+CREATE INDEX ix_users_search_username ON users (lower(username) COLLATE "C");
@@ -0,0 +1,44 @@
+--
+-- usernames are case-insensitive and stored in lower case (see RswUserDetailsService): lower-case existing rows,
+-- so the lower(?) written by the application always matches the parent users row
+--   + the foreign keys to users(username) are not ON UPDATE CASCADE, so they are dropped and re-created around
+--     the update, in one transaction
+--   + ix_uq_users (lower(username)) already guarantees no two users collide once lower-cased
+--   + oauth_access_token.user_name (no foreign key) is lower-cased too, when the jdbc token store is installed
+--  run this script as the auth_admin_user with authdb set as default database
+--   command line:  psql -U auth_admin_user -d authdb -a -f 0006-normalize-usernames.sql
+--
+SET search_path = spring, pg_catalog;
+
+BEGIN;
+
+ALTER TABLE authorities DROP CONSTRAINT fk_authorities_users;
+ALTER TABLE group_members DROP CONSTRAINT fk_group_members_users;
+ALTER TABLE persistent_logins DROP CONSTRAINT fk_persistent_logins_users;
+ALTER TABLE password_history DROP CONSTRAINT fk_password_history_users;
+
+UPDATE users SET username = lower(username) WHERE username <> lower(username);
+UPDATE authorities SET username = lower(username) WHERE username <> lower(username);
+UPDATE group_members SET username = lower(username) WHERE username <> lower(username);
+UPDATE persistent_logins SET username = lower(username) WHERE username <> lower(username);
+UPDATE password_history SET username = lower(username) WHERE username <> lower(username);
+
+-- tokens issued before normalization, so findTokensByUserName / findTokensByClientIdAndUserName find them by the
+-- normalized name (the table only exists with the jdbc token store - sql/0004-oauth-token-store.sql)
+DO $$
+BEGIN
+  IF to_regclass('oauth_access_token') IS NOT NULL THEN
+    UPDATE oauth_access_token SET user_name = lower(user_name) WHERE user_name <> lower(user_name);
+  END IF;
+END $$;
+
+ALTER TABLE authorities
+  ADD CONSTRAINT fk_authorities_users FOREIGN KEY(username) REFERENCES users(username);
+ALTER TABLE group_members
+  ADD CONSTRAINT fk_group_members_users FOREIGN KEY (username) REFERENCES users (username);
+ALTER TABLE persistent_logins
+  ADD CONSTRAINT fk_persistent_logins_users FOREIGN KEY (username) REFERENCES users (username);
+ALTER TABLE password_history
+  ADD CONSTRAINT fk_password_history_users FOREIGN KEY (username) REFERENCES users (username);
+
+COMMIT;
@@ -0,0 +1,122 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.JwtSigningKeys;
+import com.rsw.auth.domain.RswUser;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT issuance per core: the token enhancer chain as configured in AuthServerJwtConfig (JwtTokenEnhancer, then
+ * the converter), with the stock JwtAccessTokenConverter vs RswJwtAccessTokenConverter (lean JwtEncoder);
+ * plus the enhancer alone, and decode/verify.
+ * Run with -prof gc to compare allocation per token.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtEncodeBenchmark {
+
+    @Param({"stock-hmac", "lean-hmac", "stock-rsa", "lean-rsa", "lean-ec"})
+    public String converter;
+
+    private TokenEnhancerChain enhancerChain;
+    private JwtTokenEnhancer tokenEnhancer;
+    private JwtTokenStore tokenStore;
+    private OAuth2Authentication authentication;
+    private String jwt;
+
+    @Setup
+    public void setUp() throws Exception {
+        JwtAccessTokenConverter tokenConverter;
+        switch (converter) {
+            case "stock-hmac":
+                tokenConverter = new JwtAccessTokenConverter();
+                tokenConverter.setSigningKey("abracadabra");
+                break;
+            case "lean-hmac":
+                tokenConverter = new RswJwtAccessTokenConverter("abracadabra");
+                break;
+            case "stock-rsa":
+                tokenConverter = new JwtAccessTokenConverter();
+                tokenConverter.setKeyPair(keyPair("RSA"));
+                break;
+            case "lean-rsa":
+                tokenConverter = new RswJwtAccessTokenConverter(
+                        JwtSigningKeys.of("rsa-1", keyPair("RSA"), Collections.emptyMap()));
+                break;
+            default:
+                tokenConverter = new RswJwtAccessTokenConverter(
+                        JwtSigningKeys.of("ec-1", keyPair("EC"), Collections.emptyMap()));
+        }
+        tokenConverter.afterPropertiesSet();
+        tokenEnhancer = new JwtTokenEnhancer();
+        enhancerChain = new TokenEnhancerChain();
+        enhancerChain.setTokenEnhancers(Arrays.asList(tokenEnhancer, tokenConverter));
+        tokenStore = new JwtTokenStore(tokenConverter);
+
+        RswUser user = new RswUser("joetest", "N/A", true, null, false,
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_API_USER", "ROLE_API_ADMIN"));
+        user.setFirstName("Joe").setLastName("Test").setEmailAddress("joe.test@example.com");
+        OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), "rsw",
+                AuthorityUtils.createAuthorityList("ROLE_TRUSTED_CLIENT"), true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        authentication = new OAuth2Authentication(request,
+                new UsernamePasswordAuthenticationToken(user, "N/A", user.getAuthorities()));
+        jwt = issue().getValue();
+    }
+
+    @Benchmark
+    public OAuth2AccessToken issue() {
+        return enhancerChain.enhance(newToken(), authentication);
+    }
+
+    /**
+     * JwtTokenEnhancer alone - the same for every converter
+     */
+    @Benchmark
+    public Object enhance() {
+        return tokenEnhancer.enhance(newToken(), authentication);
+    }
+
+    /**
+     * Verify and convert back to an access token, as JwtTokenStore / check_token do
+     */
+    @Benchmark
+    public Object decode() {
+        return tokenStore.readAccessToken(jwt);
+    }
+
+    private DefaultOAuth2AccessToken newToken() {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 3600000L));
+        token.setScope(authentication.getOAuth2Request().getScope());
+        return token;
+    }
+
+    private static KeyPair keyPair(String algorithm) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if ("EC".equals(algorithm)) {
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        } else {
+            generator.initialize(2048);
+        }
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,44 @@
+package com.rsw.auth.core;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PasswordService.validatePassword with the application.yml pattern, for a valid password, a password failing
+ * the lookaheads and a long password (worst case for the lookahead backtracking).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordPatternBenchmark {
+
+    private static final String PASSWORD_PATTERN =
+            "^(?=.*[a-z])(?=.*[A-Z])(?=.*[0-9])(?=.*[!@#$%\\^\\-_+=])[a-zA-Z0-9!@#$%\\^\\-_+=]{6,15}$";
+
+    @Param({"MyP@ssw0rd1", "mypassword1", "abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnop"})
+    public String password;
+
+    private PasswordService passwordService;
+
+    @Setup
+    public void setUp() {
+        passwordService = new PasswordService();
+        passwordService.setPasswordFormatRegEx(PASSWORD_PATTERN);
+        passwordService.onPostConstruct();
+    }
+
+    @Benchmark
+    public void validatePassword(Blackhole blackhole) {
+        try {
+            passwordService.validatePassword(password);
+            blackhole.consume(true);
+        } catch (IllegalArgumentException e) {
+            blackhole.consume(false);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.rsw.auth.core;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Map;
+
+/**
+ * Single-row, in-memory ResultSet for benchmarking row mappers without a database
+ */
+final class ResultSets {
+
+    private ResultSets() {
+    }
+
+    static ResultSet of(Map<String, Object> row) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSets.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getString":
+                            Object value = row.get((String) args[0]);
+                            return (value == null ? null : value.toString());
+                        case "getBoolean":
+                            return Boolean.TRUE.equals(row.get((String) args[0]));
+                        case "getObject":
+                            return row.get((String) args[0]);
+                        case "wasNull":
+                            return false;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
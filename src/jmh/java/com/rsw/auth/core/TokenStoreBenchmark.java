@@ -0,0 +1,93 @@
+package com.rsw.auth.core;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * client_credentials style load against the token stores: each operation issues a token for one of a set of
+ * clients (store + lookup by authentication), then validates it as a resource server would (read token and
+ * authentication), and finally revokes a token issued earlier.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class TokenStoreBenchmark {
+
+    private static final int CLIENTS = 256;
+    private static final int TOKEN_VALIDITY_SECS = 3600;
+
+    @Param({"inMemory", "sharded"})
+    public String store;
+
+    private TokenStore tokenStore;
+    private OAuth2Authentication[] authentications;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final Deque<DefaultOAuth2AccessToken> issued = new ArrayDeque<>();
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        tokenStore = ("sharded".equals(store) ? new ShardedTokenStore(16, 100000, 1000L) : new InMemoryTokenStore());
+        authentications = new OAuth2Authentication[CLIENTS];
+        for (int ix = 0; ix < CLIENTS; ix++) {
+            OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), "client-" + ix,
+                    AuthorityUtils.createAuthorityList("ROLE_TRUSTED_CLIENT"), true,
+                    new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+            authentications[ix] = new OAuth2Authentication(request, null);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (tokenStore instanceof ShardedTokenStore) {
+            ((ShardedTokenStore) tokenStore).shutdown();
+        }
+    }
+
+    @Benchmark
+    public Object issueValidateRevoke(ThreadState state) {
+        OAuth2Authentication authentication = authentications[state.next++ % CLIENTS];
+
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY_SECS * 1000L));
+        tokenStore.getAccessToken(authentication);
+        tokenStore.storeAccessToken(token, authentication);
+        state.issued.addLast(token);
+
+        Object result = tokenStore.readAccessToken(token.getValue());
+        tokenStore.readAuthentication(token.getValue());
+
+        if (state.issued.size() > CLIENTS) {
+            tokenStore.removeAccessToken(state.issued.removeFirst());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Object validate(ThreadState state) {
+        DefaultOAuth2AccessToken token = state.issued.peekLast();
+        if (token == null) {
+            token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+            token.setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY_SECS * 1000L));
+            tokenStore.storeAccessToken(token, authentications[state.next++ % CLIENTS]);
+            state.issued.addLast(token);
+        }
+        tokenStore.readAccessToken(token.getValue());
+        return tokenStore.readAuthentication(token.getValue());
+    }
+}
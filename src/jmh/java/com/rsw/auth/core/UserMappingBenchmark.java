@@ -0,0 +1,82 @@
+package com.rsw.auth.core;
+
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User row mapping and UserDetails assembly on the multi-query load path, without a database: the row mappers
+ * read an in-memory row and the group name query returns a fixed result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserMappingBenchmark {
+
+    private ResultSet userRow;
+    private RswUserRowMapper rswUserRowMapper;
+    private UserDetailsRowMapper userDetailsRowMapper;
+    private RswUserDetailsService rswUserService;
+    private RswUser fetchedUser;
+    private List<GrantedAuthority> combinedAuthorities;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("username", "joetest");
+        row.put("password", "$2a$10$7EqJtq98hPqEX7fNZaFWoO5ZGq5E5iKzrWq4l1Y5y9K1dL0aXW7eG");
+        row.put("first_name", "Joe");
+        row.put("middle_initial", "Q");
+        row.put("last_name", "Test");
+        row.put("email_address", "joe.test@example.com");
+        row.put("mobile_number", "5555551212");
+        row.put("enabled", true);
+        row.put("locked", false);
+        row.put("password_expiry", Timestamp.valueOf(LocalDateTime.now().plusDays(90)));
+        userRow = ResultSets.of(row);
+
+        rswUserRowMapper = new RswUserRowMapper();
+        userDetailsRowMapper = new UserDetailsRowMapper();
+
+        final List<RswGroup> groups = Arrays.asList(RswGroup.values());
+        rswUserService = new RswUserDetailsService();
+        rswUserService.setJdbcTemplate(new JdbcTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> List<T> query(String sql, Object[] args, RowMapper<T> rowMapper) {
+                return (List<T>) new ArrayList<>(groups);
+            }
+        });
+        fetchedUser = rswUserRowMapper.mapRow(userRow, 0);
+        combinedAuthorities = AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_API_USER", "ROLE_API_ADMIN");
+    }
+
+    @Benchmark
+    public Object rswUserRowMapper() throws SQLException {
+        return rswUserRowMapper.mapRow(userRow, 0);
+    }
+
+    @Benchmark
+    public Object userDetailsRowMapper() throws SQLException {
+        return userDetailsRowMapper.mapRow(userRow, 0);
+    }
+
+    @Benchmark
+    public Object createUserDetails() {
+        return rswUserService.createUserDetails("joetest", fetchedUser, combinedAuthorities);
+    }
+}
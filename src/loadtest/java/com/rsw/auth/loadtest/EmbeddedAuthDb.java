@@ -0,0 +1,61 @@
+package com.rsw.auth.loadtest;
+
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Throwaway local Postgres for the load test: an embedded server (real Postgres binaries, unpacked to a temp
+ * directory, no Docker) initialized with the same sql/ scripts as a real install - roles and authdb as the
+ * superuser, then schema, groups and token store tables as auth_admin_user.
+ *
+ * The embedded server trusts local connections, so the script passwords are not needed.
+ */
+final class EmbeddedAuthDb implements AutoCloseable {
+
+    static final String DB_NAME = "authdb";
+    static final String APP_USER = "auth_server_user";
+    static final String ADMIN_USER = "auth_admin_user";
+
+    private final EmbeddedPostgres postgres;
+
+    private EmbeddedAuthDb(EmbeddedPostgres postgres) {
+        this.postgres = postgres;
+    }
+
+    /**
+     * @param sqlDir the repository sql/ directory
+     * @return a running, initialized authdb
+     */
+    static EmbeddedAuthDb start(Path sqlDir) throws IOException, SQLException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.start();
+        try {
+            try (Connection connection = postgres.getPostgresDatabase().getConnection()) {
+                SqlScript.run(connection, sqlDir.resolve("0001-db-init.sql"));
+            }
+            try (Connection connection = postgres.getDatabase(ADMIN_USER, DB_NAME).getConnection()) {
+                SqlScript.run(connection, sqlDir.resolve("0002-spring-schema.sql"));
+                SqlScript.run(connection, sqlDir.resolve("0003-users-groups-init.sql"));
+                SqlScript.run(connection, sqlDir.resolve("0004-oauth-token-store.sql"));
+                SqlScript.run(connection, sqlDir.resolve("0005-user-search-indexes.sql"));
+                SqlScript.run(connection, sqlDir.resolve("0006-normalize-usernames.sql"));
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            postgres.close();
+            throw e;
+        }
+        return new EmbeddedAuthDb(postgres);
+    }
+
+    String getJdbcUrl() {
+        return "jdbc:postgresql://localhost:" + postgres.getPort() + "/" + DB_NAME + "?currentSchema=spring";
+    }
+
+    @Override
+    public void close() throws IOException {
+        postgres.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.rsw.auth.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency (microseconds, HdrHistogram) and error counts for one flow, recorded concurrently by the load threads.
+ * reset() discards the warm-up samples.
+ */
+final class FlowStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    private final GrantFlow flow;
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final LongAdder errors = new LongAdder();
+    private volatile String lastError;
+    private Histogram histogram;
+
+    FlowStats(GrantFlow flow) {
+        this.flow = flow;
+    }
+
+    void recordSuccess(long elapsedNanos) {
+        recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), MAX_LATENCY_MICROS));
+    }
+
+    void recordError(Exception e) {
+        errors.increment();
+        lastError = e.getMessage();
+    }
+
+    void reset() {
+        recorder.reset();
+        errors.reset();
+        lastError = null;
+    }
+
+    /**
+     * Ends the measurement
+     */
+    void finish() {
+        histogram = recorder.getIntervalHistogram();
+    }
+
+    static void printHeader(PrintStream out) {
+        out.printf("%-20s %10s %8s %10s %10s %10s %10s %10s%n",
+                "flow", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+    }
+
+    void print(PrintStream out, double elapsedSecs) {
+        long count = histogram.getTotalCount();
+        out.printf("%-20s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", flow.getFlowName(), count, errors.sum(),
+                count / elapsedSecs, millis(histogram.getValueAtPercentile(50.0)),
+                millis(histogram.getValueAtPercentile(99.0)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+        if (lastError != null) {
+            out.println("    last error: " + lastError);
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,126 @@
+package com.rsw.auth.loadtest;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The flows of the JMeter plan (jmeter/OAuth Login.jmx).  One execution is one complete flow as a client sees
+ * it - for authorization_code that is login, authorize and code exchange - and is timed as a single sample.
+ */
+enum GrantFlow {
+
+    PASSWORD("password") {
+        @Override
+        void run(Session session) throws IOException {
+            session.keepTokens(session.client.token("grant_type", "password",
+                    "username", session.user.username, "password", session.user.password));
+        }
+    },
+
+    CLIENT_CREDENTIALS("client_credentials") {
+        @Override
+        void run(Session session) throws IOException {
+            requireAccessToken(session.client.token("grant_type", "client_credentials"));
+        }
+    },
+
+    REFRESH_TOKEN("refresh_token") {
+        @Override
+        void run(Session session) throws IOException {
+            session.keepTokens(session.client.token("grant_type", "refresh_token",
+                    "refresh_token", session.refreshToken));
+        }
+    },
+
+    CHECK_TOKEN("check_token") {
+        @Override
+        void run(Session session) throws IOException {
+            session.client.checkToken(session.accessToken);
+        }
+    },
+
+    AUTHORIZATION_CODE("authorization_code") {
+        @Override
+        void run(Session session) throws IOException {
+            String cookie = session.client.login(session.user.username, session.user.password);
+            String code = OAuthClient.redirectParameter(session.client.authorize(cookie, "code"), "code");
+            if (code == null) {
+                throw new IOException("No code in authorize redirect");
+            }
+            requireAccessToken(session.client.token("grant_type", "authorization_code", "code", code,
+                    "redirect_uri", OAuthClient.REDIRECT_URI));
+        }
+    },
+
+    IMPLICIT("implicit") {
+        @Override
+        void run(Session session) throws IOException {
+            String cookie = session.client.login(session.user.username, session.user.password);
+            if (OAuthClient.redirectParameter(session.client.authorize(cookie, "token"), "access_token") == null) {
+                throw new IOException("No access_token in authorize redirect");
+            }
+        }
+    };
+
+    private final String flowName;
+
+    GrantFlow(String flowName) {
+        this.flowName = flowName;
+    }
+
+    String getFlowName() {
+        return flowName;
+    }
+
+    abstract void run(Session session) throws IOException;
+
+    static GrantFlow forName(String flowName) {
+        for (GrantFlow flow : values()) {
+            if (flow.flowName.equals(flowName)) {
+                return flow;
+            }
+        }
+        throw new IllegalArgumentException("Unknown flow: " + flowName);
+    }
+
+    private static String requireAccessToken(Map<String, Object> response) throws IOException {
+        Object accessToken = response.get("access_token");
+        if (accessToken == null) {
+            throw new IOException("No access_token in token response");
+        }
+        return accessToken.toString();
+    }
+
+    static final class User {
+        final String username;
+        final String password;
+
+        User(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    /**
+     * One load thread's client, current user, and the tokens the refresh and check_token flows reuse
+     */
+    static final class Session {
+        final OAuthClient client;
+        User user;
+        String accessToken;
+        String refreshToken;
+
+        Session(OAuthClient client, User user) {
+            this.client = client;
+            this.user = user;
+        }
+
+        void keepTokens(Map<String, Object> response) throws IOException {
+            accessToken = requireAccessToken(response);
+            Object refresh = response.get("refresh_token");
+            if (refresh != null) {
+                refreshToken = refresh.toString();
+            }
+        }
+    }
+}
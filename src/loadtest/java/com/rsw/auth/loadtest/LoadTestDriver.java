@@ -0,0 +1,227 @@
+package com.rsw.auth.loadtest;
+
+import com.rsw.auth.RswAuthServerApplication;
+import com.rsw.auth.core.RswUserDetailsService;
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Self-contained load test: boots the auth server against an embedded Postgres initialized from sql/, seeds
+ * synthetic users through RswUserDetailsService.createUser, then runs a weighted mix of the grant flows from
+ * concurrent threads and reports throughput and p50/p99/p999 latency per flow.
+ *
+ * Run with ./gradlew loadtest; settings are system properties (gradle -P properties of the same name):
+ * <pre>
+ *   loadtest.tokenType    jwt | oauth2 (auth.tokenType)          default jwt
+ *   loadtest.tokenStore   memory | sharded | jdbc (oauth2 only)  default memory
+ *   loadtest.users        synthetic users to seed                default 1000
+ *   loadtest.threads      concurrent clients                     default 32
+ *   loadtest.warmupSecs   discarded warm-up                      default 15
+ *   loadtest.durationSecs measured run                           default 60
+ *   loadtest.mix          flow:weight,...                        default see DEFAULT_MIX
+ *   loadtest.report       also write the report to this file
+ * </pre>
+ * Run it once per token type on the same machine to compare them.
+ */
+public final class LoadTestDriver {
+
+    static final String DEFAULT_MIX =
+            "password:30,client_credentials:10,refresh_token:20,check_token:30,authorization_code:5,implicit:5";
+
+    private static final String USER_PASSWORD = "L0ad-Test1";
+
+    private LoadTestDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String tokenType = System.getProperty("loadtest.tokenType", "jwt");
+        String tokenStore = System.getProperty("loadtest.tokenStore", "memory");
+        int userCount = Integer.getInteger("loadtest.users", 1000);
+        int threads = Integer.getInteger("loadtest.threads", 32);
+        int warmupSecs = Integer.getInteger("loadtest.warmupSecs", 15);
+        int durationSecs = Integer.getInteger("loadtest.durationSecs", 60);
+        String mix = System.getProperty("loadtest.mix", DEFAULT_MIX);
+        String reportPath = System.getProperty("loadtest.report");
+        Path sqlDir = Paths.get(System.getProperty("loadtest.sqlDir", "sql"));
+
+        Map<GrantFlow, Integer> weights = parseMix(mix);
+        // HttpURLConnection keep-alive cache, per destination
+        System.setProperty("http.maxConnections", String.valueOf(threads));
+
+        try (EmbeddedAuthDb db = EmbeddedAuthDb.start(sqlDir)) {
+            ConfigurableApplicationContext context = new SpringApplication(RswAuthServerApplication.class).run(
+                    "--server.port=0",
+                    "--spring.datasource.url=" + db.getJdbcUrl(),
+                    "--spring.datasource.username=" + EmbeddedAuthDb.APP_USER,
+                    "--spring.datasource.tomcat.max-active=" + Math.max(threads, 20),
+                    "--auth.tokenType=" + tokenType,
+                    "--auth.tokenStore.type=" + tokenStore,
+                    "--logging.level.root=WARN");
+            try {
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+                OAuthClient client = new OAuthClient(baseUrl,
+                        context.getEnvironment().getProperty("security.oauth2.client.clientId", "rsw"),
+                        context.getEnvironment().getProperty("security.oauth2.client.clientSecret", "rswsecret"));
+
+                List<GrantFlow.User> users = seedUsers(context.getBean(RswUserDetailsService.class), userCount);
+                String settings = String.format("auth.tokenType=%s tokenStore=%s users=%d threads=%d " +
+                        "warmup=%ds duration=%ds mix=%s", tokenType, tokenStore, userCount, threads, warmupSecs,
+                        durationSecs, mix);
+                String report = run(client, users, weights, threads, warmupSecs, durationSecs, settings);
+                System.out.print(report);
+                if (reportPath != null) {
+                    Path reportFile = Paths.get(reportPath);
+                    if (reportFile.getParent() != null) {
+                        Files.createDirectories(reportFile.getParent());
+                    }
+                    Files.write(reportFile, report.getBytes(StandardCharsets.UTF_8));
+                }
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * Users are created through the service, so passwords are hashed at the configured BCrypt strength,
+     * with password history and group membership, exactly as in production
+     */
+    private static List<GrantFlow.User> seedUsers(RswUserDetailsService userService, int userCount)
+            throws InterruptedException, ExecutionException {
+        List<GrantFlow.User> users = new ArrayList<>(userCount);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<?>> futures = new ArrayList<>(userCount);
+            for (int ix = 0; ix < userCount; ix++) {
+                final String username = String.format("loaduser%06d", ix);
+                users.add(new GrantFlow.User(username, USER_PASSWORD));
+                futures.add(executor.submit(() -> {
+                    RswUser user = new RswUser(username, USER_PASSWORD, true, null, false,
+                            Collections.singletonList(RswGroup.API_USER));
+                    userService.createUser(user.setFirstName("Load").setLastName("User")
+                            .setEmailAddress(username + "@example.com"));
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return users;
+    }
+
+    private static String run(OAuthClient client, List<GrantFlow.User> users, Map<GrantFlow, Integer> weights,
+                              int threads, int warmupSecs, int durationSecs, String settings) throws Exception {
+        Map<GrantFlow, FlowStats> stats = new EnumMap<>(GrantFlow.class);
+        for (GrantFlow flow : weights.keySet()) {
+            stats.put(flow, new FlowStats(flow));
+        }
+        GrantFlow[] schedule = schedule(weights);
+        AtomicInteger running = new AtomicInteger(1);
+        CountDownLatch ready = new CountDownLatch(threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int ix = 0; ix < threads; ix++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                GrantFlow.Session session = new GrantFlow.Session(client, users.get(random.nextInt(users.size())));
+                // tokens for the refresh_token and check_token flows, not measured; counted down even if the
+                // login fails, so the driver isn't left waiting for this worker
+                try {
+                    GrantFlow.PASSWORD.run(session);
+                } finally {
+                    ready.countDown();
+                }
+                while (running.get() > 0) {
+                    GrantFlow flow = schedule[random.nextInt(schedule.length)];
+                    session.user = users.get(random.nextInt(users.size()));
+                    long start = System.nanoTime();
+                    try {
+                        flow.run(session);
+                        stats.get(flow).recordSuccess(System.nanoTime() - start);
+                    } catch (Exception e) {
+                        stats.get(flow).recordError(e);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        ready.await();
+        for (Future<?> worker : workers) {
+            if (worker.isDone()) {
+                // only a failed initial login ends a worker before the run does: stop the others and report it
+                running.set(0);
+                executor.shutdown();
+                worker.get();
+            }
+        }
+        TimeUnit.SECONDS.sleep(warmupSecs);
+        for (FlowStats flowStats : stats.values()) {
+            flowStats.reset();
+        }
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSecs);
+        for (FlowStats flowStats : stats.values()) {
+            flowStats.finish();
+        }
+        double elapsedSecs = (System.nanoTime() - start) / 1e9;
+        running.set(0);
+        executor.shutdown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, "UTF-8");
+        out.println(settings);
+        FlowStats.printHeader(out);
+        for (FlowStats flowStats : stats.values()) {
+            flowStats.print(out, elapsedSecs);
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static Map<GrantFlow, Integer> parseMix(String mix) {
+        Map<GrantFlow, Integer> weights = new EnumMap<>(GrantFlow.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entries are flow:weight, got " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(GrantFlow.forName(parts[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Mix has no flows: " + mix);
+        }
+        return weights;
+    }
+
+    /**
+     * Each flow repeated by its weight, so a uniform pick follows the mix
+     */
+    private static GrantFlow[] schedule(Map<GrantFlow, Integer> weights) {
+        List<GrantFlow> schedule = new ArrayList<>();
+        for (Map.Entry<GrantFlow, Integer> entry : weights.entrySet()) {
+            schedule.addAll(Collections.nCopies(entry.getValue(), entry.getKey()));
+        }
+        return schedule.toArray(new GrantFlow[schedule.size()]);
+    }
+}
@@ -0,0 +1,193 @@
+package com.rsw.auth.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal HTTP client for the auth server endpoints the grant flows use, on HttpURLConnection so connections
+ * are kept alive between requests (bodies are always fully read).  Redirects are never followed: the
+ * authorization endpoint answers with the code or token in the Location header.
+ */
+final class OAuthClient {
+
+    static final String REDIRECT_URI = "http://www.example.com";
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final String baseUrl;
+    private final String clientId;
+    private final String clientAuthorization;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    OAuthClient(String baseUrl, String clientId, String clientSecret) {
+        this.baseUrl = baseUrl;
+        this.clientId = clientId;
+        this.clientAuthorization = "Basic " + Base64.getEncoder().encodeToString(
+                (clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * POST /oauth/token with client authentication
+     * @param form grant_type and grant parameters, as name/value pairs
+     * @return the token response
+     */
+    Map<String, Object> token(String... form) throws IOException {
+        return postJson("/oauth/token", clientAuthorization, form);
+    }
+
+    /**
+     * POST /oauth/check_token as the (trusted) client
+     */
+    Map<String, Object> checkToken(String accessToken) throws IOException {
+        return postJson("/oauth/check_token", clientAuthorization, "token", accessToken);
+    }
+
+    /**
+     * Form login
+     * @return the authenticated session cookie (name=value)
+     */
+    String login(String username, String password) throws IOException {
+        HttpURLConnection connection = open("/login", "POST");
+        writeForm(connection, "username", username, "password", password);
+        int status = connection.getResponseCode();
+        String location = connection.getHeaderField("Location");
+        String session = sessionCookie(connection);
+        drain(connection);
+        if (status != HttpURLConnection.HTTP_MOVED_TEMP || session == null ||
+                (location != null && location.contains("error"))) {
+            throw new IOException("Login failed for " + username + ": HTTP " + status + " " + location);
+        }
+        return session;
+    }
+
+    /**
+     * GET /oauth/authorize within an authenticated session; the client's scopes are auto-approved
+     * @param responseType code or token
+     * @return the redirect Location carrying the code (query) or token (fragment)
+     */
+    String authorize(String session, String responseType) throws IOException {
+        HttpURLConnection connection = open("/oauth/authorize?response_type=" + responseType +
+                "&client_id=" + encode(clientId) + "&redirect_uri=" + encode(REDIRECT_URI), "GET");
+        connection.setRequestProperty("Cookie", session);
+        int status = connection.getResponseCode();
+        String location = connection.getHeaderField("Location");
+        drain(connection);
+        if (status != HttpURLConnection.HTTP_MOVED_TEMP || location == null || ! location.startsWith(REDIRECT_URI)) {
+            throw new IOException("Authorize (" + responseType + ") failed: HTTP " + status + " " + location);
+        }
+        return location;
+    }
+
+    /**
+     * @param location redirect Location
+     * @param name
+     * @return the named query or fragment parameter, or null
+     */
+    static String redirectParameter(String location, String name) {
+        int start = location.indexOf(name + "=");
+        while (start > 0 && location.charAt(start - 1) != '?' && location.charAt(start - 1) != '&' &&
+                location.charAt(start - 1) != '#') {
+            start = location.indexOf(name + "=", start + 1);
+        }
+        if (start < 0) {
+            return null;
+        }
+        start += name.length() + 1;
+        int end = location.indexOf('&', start);
+        return location.substring(start, end < 0 ? location.length() : end);
+    }
+
+    private Map<String, Object> postJson(String path, String authorization, String... form) throws IOException {
+        HttpURLConnection connection = open(path, "POST");
+        connection.setRequestProperty("Authorization", authorization);
+        connection.setRequestProperty("Accept", "application/json");
+        writeForm(connection, form);
+        int status = connection.getResponseCode();
+        byte[] body = drain(connection);
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException(path + ": HTTP " + status + " " + new String(body, StandardCharsets.UTF_8));
+        }
+        return objectMapper.readValue(body, MAP_TYPE);
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+        return connection;
+    }
+
+    private static void writeForm(HttpURLConnection connection, String... form) throws IOException {
+        StringBuilder body = new StringBuilder(128);
+        for (int ix = 0; ix < form.length; ix += 2) {
+            if (ix > 0) {
+                body.append('&');
+            }
+            body.append(form[ix]).append('=').append(encode(form[ix + 1]));
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        connection.setFixedLengthStreamingMode(bytes.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String sessionCookie(HttpURLConnection connection) {
+        List<String> cookies = connection.getHeaderFields().get("Set-Cookie");
+        if (cookies != null) {
+            for (String cookie : cookies) {
+                if (cookie.startsWith("JSESSIONID=") || cookie.startsWith("SESSION=")) {
+                    int end = cookie.indexOf(';');
+                    return (end < 0 ? cookie : cookie.substring(0, end));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the whole body, so the connection goes back to the keep-alive cache
+     */
+    private static byte[] drain(HttpURLConnection connection) throws IOException {
+        InputStream in = (connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream());
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
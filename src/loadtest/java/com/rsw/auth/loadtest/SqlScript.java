@@ -0,0 +1,103 @@
+package com.rsw.auth.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the sql/ scripts over JDBC, one statement at a time with auto-commit, as psql -f would.
+ * Statements are split on ';' outside of quotes, comments and dollar-quoted bodies (the DO $$ blocks), and
+ * CREATE/DROP DATABASE never end up inside a transaction block.
+ */
+final class SqlScript {
+
+    private SqlScript() {
+    }
+
+    static void run(Connection connection, Path script) throws IOException, SQLException {
+        String sql = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            for (String each : split(sql)) {
+                try {
+                    statement.execute(each);
+                } catch (SQLException e) {
+                    throw new SQLException(script.getFileName() + ": " + e.getMessage() + "\n" + each, e);
+                }
+            }
+        }
+    }
+
+    static List<String> split(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        String dollarTag = null;
+        int length = sql.length();
+        int ix = 0;
+        while (ix < length) {
+            char ch = sql.charAt(ix);
+            if (dollarTag != null) {
+                if (sql.startsWith(dollarTag, ix)) {
+                    current.append(dollarTag);
+                    ix += dollarTag.length();
+                    dollarTag = null;
+                } else {
+                    current.append(ch);
+                    ix++;
+                }
+            } else if (ch == '-' && ix + 1 < length && sql.charAt(ix + 1) == '-') {
+                int eol = sql.indexOf('\n', ix);
+                ix = (eol < 0 ? length : eol + 1);
+                current.append('\n');
+            } else if (ch == '\'') {
+                int end = ix + 1;
+                while (end < length) {
+                    if (sql.charAt(end) == '\'') {
+                        // '' is an escaped quote
+                        if (end + 1 < length && sql.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                current.append(sql, ix, Math.min(end + 1, length));
+                ix = end + 1;
+            } else if (ch == '$') {
+                int close = sql.indexOf('$', ix + 1);
+                String tag = (close < 0 ? null : sql.substring(ix, close + 1));
+                if (tag != null && tag.matches("\\$[A-Za-z_]*\\$")) {
+                    dollarTag = tag;
+                    current.append(tag);
+                    ix = close + 1;
+                } else {
+                    current.append(ch);
+                    ix++;
+                }
+            } else if (ch == ';') {
+                addStatement(statements, current);
+                ix++;
+            } else {
+                current.append(ch);
+                ix++;
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String statement = current.toString().trim();
+        if (! statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+}
@@ -3,6 +3,7 @@ package com.rsw.auth;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.session.SessionAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Internal AuthServer implementation example
@@ -14,6 +15,7 @@ import org.springframework.boot.autoconfigure.session.SessionAutoConfiguration;
  * Goal is to not use Redis and Spring Session when running locally - use only in cloud profile
  */
 @SpringBootApplication(exclude = SessionAutoConfiguration.class)
+@EnableScheduling
 public class RswAuthServerApplication {
 
     public static void main(String[] args) {
@@ -1,11 +1,16 @@
 package com.rsw.auth.config;
 
+import com.rsw.auth.core.CheckTokenCache;
+import com.rsw.auth.core.JwtSigningKeys;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
@@ -14,8 +19,11 @@ import org.springframework.security.oauth2.config.annotation.web.configurers.Aut
 import org.springframework.security.oauth2.provider.token.*;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by DAlms on 10/16/16.
@@ -36,6 +44,24 @@ public class AuthServerJwtConfig extends AuthorizationServerConfigurerAdapter {
     private String signingKey;
     @Value("${auth.security.jwt.validityDurationSecs}")
     private Integer validityDurationSecs;
+    @Value("${auth.security.jwt.checkTokenCache.enabled}")
+    private boolean checkTokenCacheEnabled;
+    @Value("${auth.security.jwt.checkTokenCache.maxSize}")
+    private Integer checkTokenCacheMaxSize;
+    @Value("${auth.security.jwt.checkTokenCache.maxTtlSecs}")
+    private Long checkTokenCacheMaxTtlSecs;
+    @Value("${auth.security.jwt.keyStore.location:}")
+    private String keyStoreLocation;
+    @Value("${auth.security.jwt.keyStore.type:PKCS12}")
+    private String keyStoreType;
+    @Value("${auth.security.jwt.keyStore.password:}")
+    private String keyStorePassword;
+    @Value("${auth.security.jwt.keyStore.keyPassword:}")
+    private String keyPassword;
+    @Value("${auth.security.jwt.keyStore.activeKeyAlias:}")
+    private String activeKeyAlias;
+    @Value("${auth.security.jwt.keyStore.retiringKeyAliases:}")
+    private String[] retiringKeyAliases;
 
     @Autowired
     @Qualifier("rswAuthenticationManager")
@@ -74,7 +100,8 @@ public class AuthServerJwtConfig extends AuthorizationServerConfigurerAdapter {
         tokenEnhancerChain.setTokenEnhancers(Arrays.asList(tokenEnhancer(), accessTokenConverter()));
         endpoints.tokenStore(tokenStore())
                 .authenticationManager(authenticationManager)
-                .tokenEnhancer(tokenEnhancerChain);
+                .tokenEnhancer(tokenEnhancerChain)
+                .exceptionTranslator(new RswWebResponseExceptionTranslator());
     }
 
     @Bean
@@ -82,11 +109,52 @@ public class AuthServerJwtConfig extends AuthorizationServerConfigurerAdapter {
         return new JwtTokenStore(accessTokenConverter());
     }
 
+    /**
+     * Signs with the active asymmetric key from the keystore when one is configured, so resource servers can
+     * verify tokens locally against /.well-known/jwks.json; otherwise falls back to the shared HMAC signingKey.
+     * @return
+     */
     @Bean
     public JwtAccessTokenConverter accessTokenConverter() {
-        JwtAccessTokenConverter tokenConverter = new JwtAccessTokenConverter();
-        tokenConverter.setSigningKey(signingKey);
-        return tokenConverter;
+        JwtSigningKeys signingKeys = jwtSigningKeys();
+        if (! signingKeys.isEmpty()) {
+            return new RswJwtAccessTokenConverter(signingKeys);
+        }
+        return new RswJwtAccessTokenConverter(signingKey);
+    }
+
+    @Bean
+    public JwtSigningKeys jwtSigningKeys() {
+        if (! StringUtils.hasText(keyStoreLocation)) {
+            return JwtSigningKeys.none();
+        }
+        List<String> retiringAliases = new ArrayList<>();
+        for (String alias : retiringKeyAliases) {
+            if (StringUtils.hasText(alias)) {
+                retiringAliases.add(alias.trim());
+            }
+        }
+        return JwtSigningKeys.fromKeyStore(new DefaultResourceLoader().getResource(keyStoreLocation), keyStoreType,
+                keyStorePassword, keyPassword, activeKeyAlias, retiringAliases);
+    }
+
+    @Bean
+    public CheckTokenCache checkTokenCache() {
+        return new CheckTokenCache(checkTokenCacheMaxSize, checkTokenCacheMaxTtlSecs);
+    }
+
+    /**
+     * Caches /oauth/check_token responses; ordered just after the Spring Security filter chain so callers are
+     * still authorized on every request
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean checkTokenCacheFilter() {
+        FilterRegistrationBean registration = new FilterRegistrationBean(new CheckTokenCacheFilter(checkTokenCache()));
+        registration.addUrlPatterns("/oauth/check_token");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        registration.setEnabled(checkTokenCacheEnabled);
+        return registration;
     }
 
     @Bean
@@ -9,7 +9,7 @@ import org.springframework.security.oauth2.config.annotation.configurers.ClientD
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
-import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.TokenStore;
 
 /**
  * Created by DAlms on 10/16/16.
@@ -28,6 +28,9 @@ public class AuthServerOAuthConfig extends AuthorizationServerConfigurerAdapter
     @Qualifier("rswAuthenticationManager")
     private AuthenticationManager authenticationManager;
 
+    @Autowired
+    private TokenStore tokenStore;
+
     /**
      * The tokenKeyAccess permission (TokenKeyEndpoint) probably isn't pertinent for oauth2 tokens - only
      * JWTs which use a protected key for signing.  This is the /oauth/token_key endpoint.
@@ -48,14 +51,16 @@ public class AuthServerOAuthConfig extends AuthorizationServerConfigurerAdapter
     /**
      * By extending AuthorizationServerConfigurerAdapter, we must explicitly assert configuration that
      * otherwise is left to default.
+     * The token store is selected by auth.tokenStore.type - see TokenStoreConfig
      *
      * @param endpoints
      * @throws Exception
      */
     @Override
     public void configure(AuthorizationServerEndpointsConfigurer endpoints) throws Exception {
-        endpoints.tokenStore(new InMemoryTokenStore())
-                 .authenticationManager(authenticationManager);
+        endpoints.tokenStore(tokenStore)
+                 .authenticationManager(authenticationManager)
+                 .exceptionTranslator(new RswWebResponseExceptionTranslator());
     }
 
     /**
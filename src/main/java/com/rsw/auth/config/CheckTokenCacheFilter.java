@@ -0,0 +1,80 @@
+package com.rsw.auth.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rsw.auth.core.CheckTokenCache;
+import com.rsw.auth.core.CheckTokenCache.CachedResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves /oauth/check_token from a CheckTokenCache, skipping JWT decode, signature verification and claim map
+ * conversion for tokens already checked.  Registered after the Spring Security filter chain, so the calling
+ * client is still authenticated and authorized (ROLE_TRUSTED_CLIENT) on every request.
+ *
+ * Only successful (200) responses are cached, for no longer than the "exp" claim of the response.
+ */
+public class CheckTokenCacheFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CheckTokenCacheFilter.class);
+
+    private final CheckTokenCache checkTokenCache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public CheckTokenCacheFilter(CheckTokenCache checkTokenCache) {
+        this.checkTokenCache = checkTokenCache;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String token = request.getParameter("token");
+        if (token == null || token.isEmpty()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CachedResponse cached = checkTokenCache.get(token);
+        if (cached != null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(cached.getContentType());
+            response.setContentLength(cached.getBody().length);
+            response.getOutputStream().write(cached.getBody());
+            return;
+        }
+
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, responseWrapper);
+            if (responseWrapper.getStatusCode() == HttpServletResponse.SC_OK) {
+                byte[] body = responseWrapper.getContentAsByteArray();
+                checkTokenCache.put(token, body, responseWrapper.getContentType(), tokenExpiresAt(body));
+            }
+        } finally {
+            responseWrapper.copyBodyToResponse();
+        }
+    }
+
+    /**
+     * @param body
+     * @return the exp claim in epoch millis, or zero if absent
+     */
+    private long tokenExpiresAt(byte[] body) {
+        try {
+            JsonNode exp = objectMapper.readTree(body).path(AccessTokenConverter.EXP);
+            return (exp.canConvertToLong() ? exp.asLong() * 1000L : 0L);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to read exp from check_token response", e);
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.AuthMetrics;
+import com.rsw.auth.core.AuthMetrics.EndpointMetric;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Times the metered endpoints (token issuance per grant type, check_token, /user) into AuthMetrics.
+ * Registered ahead of the Spring Security filter chain, so client and user authentication are part of the
+ * measured latency; responses with a 4xx/5xx status, or an exception, count as failures.
+ */
+public class EndpointMetricsFilter extends OncePerRequestFilter {
+
+    private final AuthMetrics metrics;
+
+    public EndpointMetricsFilter(AuthMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getServletPath();
+        EndpointMetric metric = metrics.endpoint(path,
+                (AuthMetrics.TOKEN_PATH.equals(path) ? request.getParameter("grant_type") : null));
+        if (metric == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = (response.getStatus() >= HttpServletResponse.SC_BAD_REQUEST);
+        } finally {
+            metric.record(start, failed);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.rsw.auth.config;
 
+import com.rsw.auth.core.LoginEvents;
 import com.rsw.auth.domain.RswUser;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
@@ -22,7 +23,8 @@ public class JwtTokenEnhancer implements TokenEnhancer {
         }
 
         RswUser rswPrincipal = (RswUser) authentication.getPrincipal();
-        Map<String, Object> additionalInfo = new HashMap<>();
+        Object event = LoginEvents.begin(LoginEvents.Stage.ENHANCE_TOKEN);
+        Map<String, Object> additionalInfo = new HashMap<>(8);
 
         additionalInfo.put("username", rswPrincipal.getUsername());
         additionalInfo.put("firstname", rswPrincipal.getFirstName());
@@ -36,6 +38,7 @@ public class JwtTokenEnhancer implements TokenEnhancer {
         // additionalInfo.put("authorities", Arrays.asList("ROLE_USER", "ROLE_ADMIN", "ROLE_SA"));
 
         ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(additionalInfo);
+        LoginEvents.commit(event, rswPrincipal.getUsername());
 
         return accessToken;
     }
@@ -0,0 +1,82 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.AuthMetrics;
+import com.rsw.auth.core.JdbcPoolCollector;
+import com.rsw.auth.core.PasswordService;
+import com.rsw.auth.core.ReplicaRoutingDataSource;
+import com.rsw.auth.core.RswUserDetailsService;
+import com.rsw.auth.core.UserImportService;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.MetricsServlet;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prometheus metrics: SQL statement, BCrypt and endpoint latency (see AuthMetrics) plus JDBC pool usage per pool,
+ * exported in the Prometheus text format at /prometheus, for the scraper user only (see MetricsSecurityConfig).
+ * The registry is private to the application context rather than the static default one.
+ */
+@Configuration
+public class MetricsConfig {
+
+    public static final String METRICS_PATH = "/prometheus";
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * only present with read replicas - see ReplicaDataSourceConfig
+     */
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Bean
+    public CollectorRegistry collectorRegistry() {
+        CollectorRegistry registry = new CollectorRegistry(true);
+        if (replicaRoutingDataSource != null) {
+            Map<String, DataSourceProxy> pools = new LinkedHashMap<>();
+            replicaRoutingDataSource.getPools().forEach((name, pool) -> {
+                if (pool instanceof DataSourceProxy) {
+                    pools.put(name, (DataSourceProxy) pool);
+                }
+            });
+            new JdbcPoolCollector(pools, replicaRoutingDataSource).register(registry);
+        } else if (dataSource instanceof DataSourceProxy) {
+            new JdbcPoolCollector((DataSourceProxy) dataSource).register(registry);
+        }
+        return registry;
+    }
+
+    @Bean
+    public AuthMetrics authMetrics() {
+        return new AuthMetrics(collectorRegistry(), RswUserDetailsService.class, PasswordService.class,
+                UserImportService.class);
+    }
+
+    /**
+     * Ahead of the Spring Security filter chain, so authentication is included in endpoint latency
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean endpointMetricsFilter() {
+        FilterRegistrationBean registration = new FilterRegistrationBean(new EndpointMetricsFilter(authMetrics()));
+        registration.addUrlPatterns(AuthMetrics.TOKEN_PATH, AuthMetrics.CHECK_TOKEN_PATH,
+                AuthMetrics.CHECK_TOKENS_PATH, AuthMetrics.USER_PATH);
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return registration;
+    }
+
+    @Bean
+    public ServletRegistrationBean metricsServlet() {
+        return new ServletRegistrationBean(new MetricsServlet(collectorRegistry()), METRICS_PATH);
+    }
+}
@@ -0,0 +1,60 @@
+package com.rsw.auth.config;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+
+import java.util.UUID;
+
+/**
+ * Security for the Prometheus endpoint (MetricsConfig.METRICS_PATH): statement latencies, login failure counts and
+ * pool and replica state are not for anonymous callers.  The scraper authenticates with HTTP Basic as the single
+ * auth.security.metrics user, which holds ROLE_METRICS_SCRAPER; with no password configured, every scrape is refused.
+ *
+ * Ordered ahead of WebSecurityConfig (6), whose form login covers every other URI.  The authentication
+ * manager is local, so user and client credentials are never accepted here.
+ */
+@Configuration
+@Order(4)
+public class MetricsSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    public static final String SCRAPER_ROLE = "METRICS_SCRAPER";
+
+    @Value("${auth.security.metrics.username}")
+    private String username;
+    @Value("${auth.security.metrics.password}")
+    private String password;
+
+    /**
+     * The user is always registered, so the local authentication manager (and HTTP Basic) is always built; without
+     * a configured password it gets a random one, and requests are denied regardless
+     */
+    @Override
+    protected void configure(AuthenticationManagerBuilder authBuilder) throws Exception {
+        authBuilder.inMemoryAuthentication()
+                .withUser(username)
+                .password(isScrapingEnabled() ? password : UUID.randomUUID().toString())
+                .roles(SCRAPER_ROLE);
+    }
+
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.antMatcher(MetricsConfig.METRICS_PATH)
+                .authorizeRequests()
+                    .anyRequest().access(isScrapingEnabled() ? "hasRole('" + SCRAPER_ROLE + "')" : "denyAll")
+                .and().httpBasic()
+                    .realmName("metrics")
+                .and().sessionManagement()
+                    .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and().csrf().disable();
+    }
+
+    private boolean isScrapingEnabled() {
+        return StringUtils.isNotBlank(password);
+    }
+}
@@ -0,0 +1,118 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.ReplicaRoutingDataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read replicas (auth.replica.enabled): the application DataSource becomes a LazyConnectionDataSourceProxy over a
+ * ReplicaRoutingDataSource, which sends read-only transactions - user loading on the login path, userExists,
+ * searchUsers, getAllGroups - to the Postgres streaming replicas in auth.replica.urls, and everything else to
+ * the primary (spring.datasource).  Login read capacity then scales by adding replicas.
+ *
+ * The primary pool is built from spring.datasource as Spring Boot would (pool settings in spring.datasource.tomcat);
+ * replica pools use the same driver and, by default, the same credentials.  A replica more than
+ * auth.replica.maxLagMillis behind, or unreachable, is skipped until its next lag check.
+ *
+ * RswUserDetailsService pins every username it writes to the primary for maxLagMillis + lagCheckMillis, so a
+ * login right after a password change, disable or group update never loads (and caches) the user as it was before.
+ */
+@Configuration
+@ConditionalOnProperty(value = "auth.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Value("${auth.replica.urls}")
+    private String[] replicaUrls;
+    @Value("${auth.replica.username:${spring.datasource.username}}")
+    private String replicaUsername;
+    @Value("${auth.replica.password:${spring.datasource.password}}")
+    private String replicaPassword;
+    @Value("${auth.replica.maxActive}")
+    private Integer replicaMaxActive;
+    @Value("${auth.replica.maxWaitMillis}")
+    private Integer replicaMaxWaitMillis;
+    @Value("${auth.replica.maxLagMillis}")
+    private Long maxLagMillis;
+    @Value("${auth.replica.lagCheckMillis}")
+    private Long lagCheckMillis;
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    private final Map<String, DataSource> replicaPools = new LinkedHashMap<>();
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.tomcat")
+    public org.apache.tomcat.jdbc.pool.DataSource primaryDataSource() {
+        return (org.apache.tomcat.jdbc.pool.DataSource) dataSourceProperties.initializeDataSourceBuilder()
+                .type(org.apache.tomcat.jdbc.pool.DataSource.class)
+                .build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource() {
+        int replicaNumber = 0;
+        for (String url : replicaUrls) {
+            if (StringUtils.isNotBlank(url)) {
+                replicaPools.put("replica" + (++replicaNumber), replicaPool(url.trim()));
+            }
+        }
+        Assert.state(! replicaPools.isEmpty(), "auth.replica.enabled requires at least one auth.replica.urls entry");
+        return new ReplicaRoutingDataSource(primaryDataSource(), replicaPools, maxLagMillis, lagCheckMillis);
+    }
+
+    /**
+     * The application DataSource - also used by the transaction manager, so a transaction's connection is the
+     * routed one.  The routing decision is deferred to the first statement, when the transaction is known to be
+     * read-only; the defaults below spare the proxy a connection at startup to discover them.
+     * @return
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource() {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource());
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return dataSource;
+    }
+
+    @PreDestroy
+    public void closeReplicaPools() {
+        for (DataSource pool : replicaPools.values()) {
+            if (pool instanceof DataSourceProxy) {
+                ((DataSourceProxy) pool).close();
+            }
+        }
+    }
+
+    private DataSource replicaPool(String url) {
+        org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource();
+        pool.setDriverClassName(dataSourceProperties.determineDriverClassName());
+        pool.setUrl(url);
+        pool.setUsername(replicaUsername);
+        pool.setPassword(replicaPassword);
+        pool.setMaxActive(replicaMaxActive);
+        pool.setMaxIdle(replicaMaxActive);
+        pool.setMaxWait(replicaMaxWaitMillis);
+        pool.setDefaultReadOnly(true);
+        pool.setTestOnBorrow(true);
+        pool.setValidationQuery("select 1");
+        return pool;
+    }
+}
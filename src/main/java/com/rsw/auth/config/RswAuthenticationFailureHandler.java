@@ -0,0 +1,35 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.exception.PasswordHashingRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Form login failure handling as the default (redirect to the failure URL), except that a saturated password
+ * hashing pool is reported as 503 with a Retry-After header, as on the token endpoint
+ * (RswWebResponseExceptionTranslator) and the REST controllers (RestExceptionHandler)
+ */
+public class RswAuthenticationFailureHandler extends SimpleUrlAuthenticationFailureHandler {
+
+    public RswAuthenticationFailureHandler(String defaultFailureUrl) {
+        super(defaultFailureUrl);
+    }
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+                                        AuthenticationException exception) throws IOException, ServletException {
+        PasswordHashingRejectedException rejected = PasswordHashingRejectedException.findIn(exception);
+        if (rejected == null) {
+            super.onAuthenticationFailure(request, response, exception);
+            return;
+        }
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.getRetryAfterSecs()));
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.getMessage());
+    }
+}
@@ -0,0 +1,201 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.EcdsaSignatures;
+import com.rsw.auth.core.JwtEncoder;
+import com.rsw.auth.core.JwtSigningKeys;
+import com.rsw.auth.core.JwtSigningKeys.SigningKey;
+import com.rsw.auth.core.LoginEvents;
+import com.rsw.auth.core.ServerTimings;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.util.*;
+
+/**
+ * JwtAccessTokenConverter signing either with the active asymmetric key of a JwtSigningKeys set
+ * (RS256 or ES256/384/512, with the key id in the "kid" header), or with a shared HMAC key.
+ * Asymmetric tokens are verified against the key named by their kid, so tokens signed by a retiring key stay
+ * valid until they expire.  Resource servers verify them locally with the public keys from
+ * /.well-known/jwks.json, rather than calling /oauth/check_token.
+ *
+ * Tokens are encoded by JwtEncoder, which streams the claim set straight to a reusable buffer and signs with
+ * per-thread signer state, instead of building a claims map, a JSON String and a new signer per token.
+ */
+public class RswJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64URL_DECODER = Base64.getUrlDecoder();
+
+    private final JwtSigningKeys signingKeys;
+    private final JwtEncoder encoder;
+    private final JsonParser jsonParser = JsonParserFactory.create();
+
+    /**
+     * @param signingKeys asymmetric keys
+     */
+    public RswJwtAccessTokenConverter(JwtSigningKeys signingKeys) {
+        Assert.isTrue(! signingKeys.isEmpty(), "An active JWT signing key is required");
+        this.signingKeys = signingKeys;
+        this.encoder = JwtEncoder.forKey(signingKeys.getActiveKey());
+    }
+
+    /**
+     * @param hmacSigningKey shared HMAC SHA-256 key
+     */
+    public RswJwtAccessTokenConverter(String hmacSigningKey) {
+        this.signingKeys = JwtSigningKeys.none();
+        this.encoder = JwtEncoder.forHmac(hmacSigningKey);
+        setSigningKey(hmacSigningKey);
+    }
+
+    /**
+     * Recorded as a SIGN_TOKEN login event, and in the request's ServerTimings sign phase
+     */
+    @Override
+    protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        Object event = LoginEvents.begin(LoginEvents.Stage.SIGN_TOKEN);
+        long start = System.nanoTime();
+        try {
+            return encodeAndSign(accessToken, authentication);
+        } finally {
+            ServerTimings.add(ServerTimings.Phase.SIGN, System.nanoTime() - start);
+            LoginEvents.commit(event, authentication.getName());
+        }
+    }
+
+    /**
+     * The lean encoder writes the claim set of DefaultAccessTokenConverter; any other converter goes through
+     * the claims map
+     */
+    private String encodeAndSign(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        if (getAccessTokenConverter().getClass() == DefaultAccessTokenConverter.class) {
+            return encoder.encode(accessToken, authentication);
+        }
+        if (signingKeys.isEmpty()) {
+            return super.encode(accessToken, authentication);
+        }
+        SigningKey key = signingKeys.getActiveKey();
+        String content;
+        try {
+            content = jsonParser.formatMap(getAccessTokenConverter().convertAccessToken(accessToken, authentication));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+        String signingInput = key.getHeaderSegment() + "." +
+                BASE64URL.encodeToString(content.getBytes(StandardCharsets.UTF_8));
+        return signingInput + "." + BASE64URL.encodeToString(sign(key, signingInput));
+    }
+
+    /**
+     * Verification is recorded in the request's ServerTimings sign phase
+     */
+    @Override
+    protected Map<String, Object> decode(String token) {
+        long start = System.nanoTime();
+        try {
+            return verifyAndDecode(token);
+        } finally {
+            ServerTimings.add(ServerTimings.Phase.SIGN, System.nanoTime() - start);
+        }
+    }
+
+    private Map<String, Object> verifyAndDecode(String token) {
+        if (signingKeys.isEmpty()) {
+            return super.decode(token);
+        }
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        if (firstDot < 0 || lastDot == firstDot) {
+            throw new InvalidTokenException("Malformed JWT");
+        }
+        try {
+            Map<String, Object> header = jsonParser.parseMap(
+                    new String(BASE64URL_DECODER.decode(token.substring(0, firstDot)), StandardCharsets.UTF_8));
+            Object kid = header.get("kid");
+            SigningKey key = (kid == null ? signingKeys.getActiveKey() : signingKeys.getVerificationKey(kid.toString()));
+            if (key == null) {
+                throw new InvalidTokenException("Unknown JWT key id " + kid);
+            }
+            // the algorithm is fixed by the key, never taken from the token
+            if (! key.getAlgorithm().equals(header.get("alg"))) {
+                throw new InvalidTokenException("JWT algorithm does not match key " + key.getKid());
+            }
+            byte[] signature = BASE64URL_DECODER.decode(token.substring(lastDot + 1));
+            if (! verify(key, token.substring(0, lastDot), signature)) {
+                throw new InvalidTokenException("Invalid JWT signature");
+            }
+
+            Map<String, Object> claims = jsonParser.parseMap(new String(
+                    BASE64URL_DECODER.decode(token.substring(firstDot + 1, lastDot)), StandardCharsets.UTF_8));
+            if (claims.get(AccessTokenConverter.EXP) instanceof Integer) {
+                claims.put(AccessTokenConverter.EXP, ((Integer) claims.get(AccessTokenConverter.EXP)).longValue());
+            }
+            return claims;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    /**
+     * The active public key, for /oauth/token_key
+     * @return
+     */
+    @Override
+    public Map<String, String> getKey() {
+        if (signingKeys.isEmpty()) {
+            return super.getKey();
+        }
+        SigningKey key = signingKeys.getActiveKey();
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("alg", key.getJcaAlgorithm());
+        result.put("kid", key.getKid());
+        result.put("value", "-----BEGIN PUBLIC KEY-----\n" +
+                Base64.getMimeEncoder().encodeToString(key.getPublicKey().getEncoded()) +
+                "\n-----END PUBLIC KEY-----");
+        return result;
+    }
+
+    @Override
+    public boolean isPublic() {
+        return ! signingKeys.isEmpty() || super.isPublic();
+    }
+
+    private static byte[] sign(SigningKey key, String signingInput) {
+        try {
+            Signature signature = Signature.getInstance(key.getJcaAlgorithm());
+            signature.initSign(key.getPrivateKey());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            byte[] signed = signature.sign();
+            return (key.isEllipticCurve() ? EcdsaSignatures.derToJose(signed, key.getEcSignatureBytes()) : signed);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign JWT with key " + key.getKid(), e);
+        }
+    }
+
+    private static boolean verify(SigningKey key, String signingInput, byte[] signed) {
+        try {
+            if (key.isEllipticCurve()) {
+                if (signed.length != key.getEcSignatureBytes()) {
+                    return false;
+                }
+                signed = EcdsaSignatures.joseToDer(signed);
+            }
+            Signature signature = Signature.getInstance(key.getJcaAlgorithm());
+            signature.initVerify(key.getPublicKey());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signature.verify(signed);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
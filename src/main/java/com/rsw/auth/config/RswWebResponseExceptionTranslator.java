@@ -0,0 +1,46 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.exception.PasswordHashingRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+
+/**
+ * Translates token endpoint exceptions as the default translator does, except that a saturated password hashing
+ * pool is reported as 503 temporarily_unavailable with a Retry-After header (instead of a 401)
+ */
+public class RswWebResponseExceptionTranslator extends DefaultWebResponseExceptionTranslator {
+
+    @Override
+    public ResponseEntity<OAuth2Exception> translate(Exception e) throws Exception {
+        PasswordHashingRejectedException rejected = PasswordHashingRejectedException.findIn(e);
+        if (rejected == null) {
+            return super.translate(e);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.getRetryAfterSecs()));
+        headers.set(HttpHeaders.CACHE_CONTROL, "no-store");
+        headers.set(HttpHeaders.PRAGMA, "no-cache");
+        return new ResponseEntity<>(new TemporarilyUnavailableException(rejected.getMessage()), headers,
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private static class TemporarilyUnavailableException extends OAuth2Exception {
+        TemporarilyUnavailableException(String msg) {
+            super(msg);
+        }
+
+        @Override
+        public String getOAuth2ErrorCode() {
+            return "temporarily_unavailable";
+        }
+
+        @Override
+        public int getHttpErrorCode() {
+            return HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+    }
+}
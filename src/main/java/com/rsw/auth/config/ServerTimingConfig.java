@@ -0,0 +1,39 @@
+package com.rsw.auth.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rsw.auth.core.AuthMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+/**
+ * Opt-in Server-Timing response header (auth.serverTiming.enabled) on the token, check_token and user endpoints,
+ * so gateways and load tests can attribute latency to db, hash, sign and serialize time without a profiler.
+ * The filter runs ahead of the security filter chain, so client and user authentication are included.
+ */
+@Configuration
+@ConditionalOnProperty(value = "auth.serverTiming.enabled", havingValue = "true")
+public class ServerTimingConfig {
+
+    @Bean
+    public FilterRegistrationBean serverTimingFilter() {
+        FilterRegistrationBean registration = new FilterRegistrationBean(new ServerTimingFilter());
+        registration.addUrlPatterns(AuthMetrics.TOKEN_PATH, AuthMetrics.CHECK_TOKEN_PATH, AuthMetrics.USER_PATH,
+                "/api/admin/user/*");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 2);
+        return registration;
+    }
+
+    /**
+     * Replaces Spring Boot's default Jackson converter, so JSON serialization is timed
+     * @param objectMapper
+     * @return
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new TimedJackson2HttpMessageConverter(objectMapper);
+    }
+}
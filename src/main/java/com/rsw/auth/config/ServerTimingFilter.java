@@ -0,0 +1,38 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.ServerTimings;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Adds a Server-Timing header breaking the request down into db, hash, sign and serialize time (see ServerTimings).
+ * The response body is buffered, so the header can still be set once serialization has been timed; it is then
+ * copied to the response.  Opt-in (auth.serverTiming.enabled), since buffering costs a copy per response.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        ServerTimings timings = ServerTimings.start();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, responseWrapper);
+        } finally {
+            timings.stop();
+            if (! response.isCommitted()) {
+                response.setHeader(SERVER_TIMING_HEADER, timings.toHeader(System.nanoTime() - start));
+            }
+            responseWrapper.copyBodyToResponse();
+        }
+    }
+}
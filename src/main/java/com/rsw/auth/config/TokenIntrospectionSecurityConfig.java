@@ -0,0 +1,66 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.TokenIntrospectionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.ClientDetailsUserDetailsService;
+import org.springframework.security.oauth2.provider.endpoint.CheckTokenEndpoint;
+
+/**
+ * Security for the batch introspection endpoint, /oauth/check_tokens: like /oauth/check_token, the caller
+ * authenticates as an OAuth2 client (HTTP Basic against the client details) and needs ROLE_TRUSTED_CLIENT.
+ *
+ * Ordered ahead of WebSecurityConfig (6), whose form login covers every other URI.  The authentication
+ * manager is local, so user credentials are never accepted here.
+ */
+@Configuration
+@Order(5)
+public class TokenIntrospectionSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    @Value("${auth.security.introspection.threads}")
+    private Integer threads;
+    @Value("${auth.security.introspection.queueCapacity}")
+    private Integer queueCapacity;
+    @Value("${auth.security.introspection.maxBatchSize}")
+    private Integer maxBatchSize;
+
+    @Autowired
+    private ClientDetailsService clientDetailsService;
+
+    @Autowired
+    private CheckTokenEndpoint checkTokenEndpoint;
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder authBuilder) throws Exception {
+        authBuilder.userDetailsService(new ClientDetailsUserDetailsService(clientDetailsService));
+    }
+
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.antMatcher("/oauth/check_tokens")
+                .authorizeRequests()
+                    .anyRequest().hasAuthority("ROLE_TRUSTED_CLIENT")
+                .and().httpBasic()
+                    .realmName("oauth2/client")
+                .and().sessionManagement()
+                    .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and().csrf().disable();
+    }
+
+    /**
+     * Checks each token exactly as /oauth/check_token does, on its own bounded pool
+     * @return
+     */
+    @Bean
+    public TokenIntrospectionService tokenIntrospectionService() {
+        return new TokenIntrospectionService(checkTokenEndpoint::checkToken, threads, queueCapacity, maxBatchSize);
+    }
+}
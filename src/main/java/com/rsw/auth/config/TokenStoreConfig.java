@@ -0,0 +1,79 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.ExpiringJdbcTokenStore;
+import com.rsw.auth.core.ShardedTokenStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.store.redis.RedisTokenStore;
+
+import javax.sql.DataSource;
+
+/**
+ * TokenStore for the oauth2 (by reference) token type, selected by auth.tokenStore.type:
+ *
+ *  memory  - InMemoryTokenStore; single instance only, tokens are lost on restart
+ *  sharded - ShardedTokenStore; single instance only, lock-striped with proactive expiry and bounded size
+ *  redis  - RedisTokenStore on the Redis connection factory; shared by all replicas.  Each token write is a
+ *           single pipelined round trip, and the access/refresh keys and the client and user indexes carry the
+ *           token's own TTL, so Redis expires them without any sweeping
+ *  jdbc   - ExpiringJdbcTokenStore on the auth datasource (schema in sql/0004-oauth-token-store.sql); shared by
+ *           all replicas.  Lookups by token, client, client+user and user are indexed; expired tokens are deleted
+ *           every jdbcReapIntervalMillis, at most jdbcReapBatchSize rows per table at a time
+ *
+ * JWT tokens ("by value") need no store - see AuthServerJwtConfig
+ */
+@Configuration
+@ConditionalOnProperty(value = "auth.tokenType", havingValue = "oauth2")
+public class TokenStoreConfig {
+
+    @Value("${auth.tokenStore.type:memory}")
+    private String tokenStoreType;
+
+    @Value("${auth.tokenStore.shards:16}")
+    private Integer shards;
+
+    @Value("${auth.tokenStore.maxTokens:100000}")
+    private Integer maxTokens;
+
+    @Value("${auth.tokenStore.reapIntervalMillis:1000}")
+    private Long reapIntervalMillis;
+
+    @Value("${auth.tokenStore.redisPrefix:rsw-auth:}")
+    private String redisPrefix;
+
+    @Value("${auth.tokenStore.jdbcReapBatchSize:1000}")
+    private Integer jdbcReapBatchSize;
+
+    @Autowired(required = false)
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Bean
+    public TokenStore tokenStore() {
+        switch (tokenStoreType) {
+            case "redis":
+                if (redisConnectionFactory == null) {
+                    throw new IllegalStateException("auth.tokenStore.type=redis requires a Redis connection factory");
+                }
+                RedisTokenStore redisTokenStore = new RedisTokenStore(redisConnectionFactory);
+                redisTokenStore.setPrefix(redisPrefix);
+                return redisTokenStore;
+            case "jdbc":
+                return new ExpiringJdbcTokenStore(dataSource, jdbcReapBatchSize);
+            case "sharded":
+                return new ShardedTokenStore(shards, maxTokens, reapIntervalMillis);
+            case "memory":
+                return new InMemoryTokenStore();
+            default:
+                throw new IllegalStateException("Unsupported auth.tokenStore.type: " + tokenStoreType);
+        }
+    }
+}
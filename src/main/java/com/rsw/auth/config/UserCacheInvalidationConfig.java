@@ -0,0 +1,61 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.ClusteredUserCache;
+import com.rsw.auth.core.GroupAuthorityCache;
+import com.rsw.auth.core.ReplicaRoutingDataSource;
+import com.rsw.auth.core.UserCacheInvalidationChannel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.userdetails.UserCache;
+
+/**
+ * When running multiple replicas (cloud profile), user cache invalidations are broadcast over Redis pub/sub,
+ * using the same Redis instance that backs the HttpSession (see HttpSessionConfig).
+ * WebSecurityConfig wraps the local user cache in a ClusteredUserCache whenever the invalidation channel
+ * bean is present.  Group authority refreshes requested on one node are broadcast on the same channel.
+ * With read replicas, users invalidated by another node are also pinned to the primary here, as they are on the
+ * node that wrote them.
+ */
+@Configuration
+@Profile(value = "cloud")
+public class UserCacheInvalidationConfig {
+
+    @Value("${auth.security.user.cache.invalidationChannel}")
+    private String invalidationChannel;
+
+    /**
+     * only present with read replicas - see ReplicaDataSourceConfig
+     */
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Bean
+    public UserCacheInvalidationChannel userCacheInvalidationChannel(RedisConnectionFactory connectionFactory) {
+        return new UserCacheInvalidationChannel(new StringRedisTemplate(connectionFactory), invalidationChannel);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer userCacheListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                    UserCacheInvalidationChannel channel,
+                                                                    @Qualifier("rswUserCache") UserCache userCache,
+                                                                    GroupAuthorityCache groupAuthorityCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        if (userCache instanceof ClusteredUserCache) {
+            ((ClusteredUserCache) userCache).subscribe(container);
+        }
+        channel.subscribe(container, UserCacheInvalidationChannel.TYPE_GROUPS, key -> groupAuthorityCache.refresh());
+        if (replicaRoutingDataSource != null) {
+            channel.subscribe(container, UserCacheInvalidationChannel.TYPE_USER,
+                    replicaRoutingDataSource::pinToPrimary);
+        }
+        return container;
+    }
+}
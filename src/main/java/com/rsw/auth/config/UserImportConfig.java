@@ -0,0 +1,58 @@
+package com.rsw.auth.config;
+
+import com.rsw.auth.core.AuthMetrics;
+import com.rsw.auth.core.BoundedPasswordEncoder;
+import com.rsw.auth.core.GroupAuthorityCache;
+import com.rsw.auth.core.PasswordService;
+import com.rsw.auth.core.UserImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bulk user import (POST /api/admin/users/import).  Import hashing runs on its own pool, bypassing the bounded
+ * login hashing pool, so an import can't get logins rejected - but it does compete with them for CPU, so size
+ * auth.security.userImport.threads below the core count on nodes serving traffic.
+ */
+@Configuration
+public class UserImportConfig {
+
+    @Value("${auth.security.userImport.threads}")
+    private Integer threads;
+    @Value("${auth.security.userImport.chunkSize}")
+    private Integer chunkSize;
+
+    @Autowired
+    @Qualifier("rswJdbcTemplate")
+    private JdbcTemplate rswJdbcTemplate;
+
+    @Autowired
+    @Qualifier("rswPasswordEncoder")
+    private PasswordEncoder rswPasswordEncoder;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PasswordService passwordService;
+
+    @Autowired
+    private GroupAuthorityCache groupAuthorityCache;
+
+    @Autowired
+    private AuthMetrics authMetrics;
+
+    @Bean
+    public UserImportService userImportService() {
+        PasswordEncoder hashEncoder = (rswPasswordEncoder instanceof BoundedPasswordEncoder ?
+                ((BoundedPasswordEncoder) rswPasswordEncoder).getDelegate() : rswPasswordEncoder);
+        return new UserImportService(rswJdbcTemplate, new TransactionTemplate(transactionManager), passwordService,
+                hashEncoder, groupAuthorityCache, authMetrics, threads, chunkSize);
+    }
+}
@@ -1,26 +1,40 @@
 package com.rsw.auth.config;
 
+import com.rsw.auth.core.AdaptiveBCryptPasswordEncoder;
+import com.rsw.auth.core.AuthMetrics;
+import com.rsw.auth.core.BoundedPasswordEncoder;
+import com.rsw.auth.core.ClusteredUserCache;
+import com.rsw.auth.core.GroupAuthorityCache;
+import com.rsw.auth.core.MeteredJdbcTemplate;
+import com.rsw.auth.core.MeteredPasswordEncoder;
+import com.rsw.auth.core.PasswordHashingExecutor;
 import com.rsw.auth.core.PasswordService;
+import com.rsw.auth.core.ReplicaRoutingDataSource;
+import com.rsw.auth.core.RswAuthenticationProvider;
+import com.rsw.auth.core.RswUserCache;
 import com.rsw.auth.core.RswUserDetailsService;
+import com.rsw.auth.core.UserCacheInvalidationChannel;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
 import org.springframework.security.crypto.password.StandardPasswordEncoder;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.web.authentication.LoginUrlAuthenticationEntryPoint;
 
 import javax.sql.DataSource;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Created by DAlms on 10/18/16.
@@ -48,23 +62,65 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     private Integer passwordExpireDays;
     @Value("${auth.security.password.recycleSpan}")
     private Integer passwordRecycleSpan;
+    @Value("${auth.security.password.hashing.threads}")
+    private Integer hashingThreads;
+    @Value("${auth.security.password.hashing.queueCapacity}")
+    private Integer hashingQueueCapacity;
+    @Value("${auth.security.password.hashing.retryAfterSecs}")
+    private Integer hashingRetryAfterSecs;
+    @Value("${auth.security.password.hashing.strength}")
+    private Integer hashingStrength;
+    @Value("${auth.security.password.hashing.calibrate}")
+    private boolean hashingCalibrate;
+    @Value("${auth.security.password.hashing.targetMillis}")
+    private Long hashingTargetMillis;
+    @Value("${auth.security.password.hashing.minStrength}")
+    private Integer hashingMinStrength;
+    @Value("${auth.security.password.hashing.maxStrength}")
+    private Integer hashingMaxStrength;
+    @Value("${auth.security.user.singleQueryLoad}")
+    private boolean userSingleQueryLoad;
+    @Value("${auth.security.user.exportFetchSize}")
+    private Integer userExportFetchSize;
+    @Value("${auth.security.user.cache.enabled}")
+    private boolean userCacheEnabled;
+    @Value("${auth.security.user.cache.maxSize}")
+    private Integer userCacheMaxSize;
+    @Value("${auth.security.user.cache.ttlSecs}")
+    private Integer userCacheTtlSecs;
 
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    private AuthMetrics authMetrics;
+
+    /**
+     * only present in the cloud profile - see UserCacheInvalidationConfig
+     */
+    @Autowired(required = false)
+    private UserCacheInvalidationChannel userCacheInvalidationChannel;
+
+    /**
+     * only present with read replicas - see ReplicaDataSourceConfig
+     */
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
     @Autowired
     public void configureGlobal(AuthenticationManagerBuilder authBuilder) throws Exception {
-        authBuilder.userDetailsService(rswUserService()).passwordEncoder(rswPasswordEncoder());
+        authBuilder.authenticationProvider(rswAuthenticationProvider());
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http.antMatcher("/**")
                 .authorizeRequests()
-                    .antMatchers("/login", "/webjars/**").permitAll()
+                    .antMatchers("/login", "/webjars/**", "/.well-known/jwks.json").permitAll()
                     .antMatchers("/j_spring_security_check").anonymous()
                     .anyRequest().authenticated()
                 .and().formLogin()
+                    .failureHandler(new RswAuthenticationFailureHandler("/login?error"))
                 .and().exceptionHandling()
                     .authenticationEntryPoint(new LoginUrlAuthenticationEntryPoint("/login"))
                 .and().csrf().disable();
@@ -78,17 +134,64 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     /**
      * TODO: use NamedParameterJdbcTemplate
+     * Every statement is timed into AuthMetrics, labelled by its DEF_* constant
      * @return
      * @throws Exception
      */
     @Bean(name = "rswJdbcTemplate")
     public JdbcTemplate rswJdbcTemplate() throws Exception {
-        return new JdbcTemplate(dataSource);
+        return new MeteredJdbcTemplate(dataSource, authMetrics);
+    }
+
+    /**
+     * Dedicated, bounded pool for BCrypt work - see PasswordHashingExecutor
+     * @return
+     */
+    @Bean
+    PasswordHashingExecutor passwordHashingExecutor() {
+        return new PasswordHashingExecutor(hashingThreads, hashingQueueCapacity, hashingRetryAfterSecs);
     }
 
+    /**
+     * BCrypt at a target strength - either fixed, or calibrated at startup to the latency budget on this hardware.
+     * Stored hashes of a different strength are re-hashed after the next successful login.
+     * Hashing time (excluding the wait for a hashing thread) is recorded in AuthMetrics.
+     * @return
+     */
     @Bean(name = "rswPasswordEncoder")
-    PasswordEncoder rswPasswordEncoder() {
-        return new BCryptPasswordEncoder(10);
+    BoundedPasswordEncoder rswPasswordEncoder() {
+        int strength = (hashingCalibrate ?
+                AdaptiveBCryptPasswordEncoder.calibrate(hashingMinStrength, hashingMaxStrength, hashingTargetMillis) :
+                hashingStrength);
+        return new BoundedPasswordEncoder(
+                new MeteredPasswordEncoder(new AdaptiveBCryptPasswordEncoder(strength), authMetrics),
+                passwordHashingExecutor());
+    }
+
+    /**
+     * Background re-hashing of passwords stored with an outdated strength; a single thread, and upgrades are
+     * dropped when it falls behind (they are retried on a later login)
+     * @return
+     */
+    @Bean
+    ThreadPoolTaskExecutor passwordUpgradeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(hashingQueueCapacity);
+        executor.setThreadNamePrefix("password-upgrade-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    @Bean
+    RswAuthenticationProvider rswAuthenticationProvider() throws Exception {
+        RswAuthenticationProvider authenticationProvider = new RswAuthenticationProvider();
+        authenticationProvider.setRswUserService(rswUserService());
+        authenticationProvider.setPasswordEncoder(rswPasswordEncoder());
+        authenticationProvider.setUpgradeExecutor(passwordUpgradeExecutor());
+        return authenticationProvider;
     }
 
     @Bean
@@ -97,19 +200,56 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         passwordService.setAuthenticationManager(authenticationManagerBean());
         passwordService.setJdbcTemplate(rswJdbcTemplate());
         passwordService.setPasswordEncoder(rswPasswordEncoder());
+        passwordService.setHashingExecutor(passwordHashingExecutor(), rswPasswordEncoder().getDelegate());
         passwordService.setPasswordExpiryDays(passwordExpireDays);
         passwordService.setPasswordRecycleSpan(passwordRecycleSpan);
         passwordService.setPasswordFormatRegEx(passwordPattern);
         return passwordService;
     }
 
+    /**
+     * Bounded, TTL-based user cache in front of RswUserDetailsService; RswUserDetailsService invalidates
+     * entries on every write path.  When an invalidation channel is available, invalidations are also
+     * broadcast to the other replicas.
+     * @return
+     */
+    @Bean
+    UserCache rswUserCache() {
+        if (! userCacheEnabled) {
+            return new NullUserCache();
+        }
+        RswUserCache localCache = new RswUserCache(userCacheMaxSize, userCacheTtlSecs);
+        if (userCacheInvalidationChannel == null) {
+            return localCache;
+        }
+        return new ClusteredUserCache(localCache, userCacheInvalidationChannel);
+    }
+
+    /**
+     * In-memory group to authorities snapshot, loaded at startup and refreshed on a schedule
+     * @return
+     * @throws Exception
+     */
+    @Bean
+    GroupAuthorityCache groupAuthorityCache() throws Exception {
+        GroupAuthorityCache groupAuthorityCache = new GroupAuthorityCache();
+        groupAuthorityCache.setJdbcTemplate(rswJdbcTemplate())
+                .setInvalidationChannel(userCacheInvalidationChannel);
+        return groupAuthorityCache;
+    }
+
     @Bean
     RswUserDetailsService rswUserService() throws Exception {
         RswUserDetailsService userDetailsService = new RswUserDetailsService();
-        userDetailsService.setDataSource(dataSource);
+        userDetailsService.setJdbcTemplate(rswJdbcTemplate());
         userDetailsService.setPasswordService(passwordService());
         userDetailsService.setEnableAuthorities(false);
         userDetailsService.setEnableGroups(true);
+        userDetailsService.setSingleQueryLoad(userSingleQueryLoad);
+        userDetailsService.setExportFetchSize(userExportFetchSize);
+        userDetailsService.setUserCache(rswUserCache());
+        userDetailsService.setGroupAuthorityCache(groupAuthorityCache());
+        userDetailsService.setReplicaRoutingDataSource(replicaRoutingDataSource);
         return userDetailsService;
     }
 
@@ -1,18 +1,42 @@
 package com.rsw.auth.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rsw.auth.core.CheckTokenCache;
+import com.rsw.auth.core.PasswordHashingExecutor;
 import com.rsw.auth.core.RswUserDetailsService;
+import com.rsw.auth.core.UserExportWriter;
+import com.rsw.auth.core.UserImportReader;
+import com.rsw.auth.core.UserImportService;
 import com.rsw.auth.domain.RswGroup;
 import com.rsw.auth.domain.RswUser;
+import com.rsw.auth.domain.UserSearch;
+import com.rsw.auth.domain.UserSearchPage;
+import com.rsw.auth.exception.EntityNotFoundException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by DAlms on 11/28/16.
@@ -21,11 +45,24 @@ import java.util.List;
 @RequestMapping("/api/admin")
 public class AdminController {
 
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final String CSV_MEDIA_TYPE = "text/csv";
+
     private RswUserDetailsService rswUserService;
+    private PasswordHashingExecutor passwordHashingExecutor;
+    private ObjectProvider<CheckTokenCache> checkTokenCache;
+    private UserImportService userImportService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Autowired
-    public AdminController(@Qualifier("rswUserService") RswUserDetailsService rswUserService) {
+    public AdminController(@Qualifier("rswUserService") RswUserDetailsService rswUserService,
+                           PasswordHashingExecutor passwordHashingExecutor,
+                           ObjectProvider<CheckTokenCache> checkTokenCache,
+                           UserImportService userImportService) {
         this.rswUserService = rswUserService;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.checkTokenCache = checkTokenCache;
+        this.userImportService = userImportService;
     }
 
     @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
@@ -34,4 +71,189 @@ public class AdminController {
         return (RswUser) rswUserService.loadUserByUsername(userName);
     }
 
+    /**
+     * Bulk user import, streamed: the request body is NDJSON (application/x-ndjson) or CSV (text/csv) - see
+     * UserImportReader.  The response is NDJSON written as the import runs: a line per failed row
+     * ({"line", "username", "error"}), a progress line per chunk ({"read", "imported", "failed",
+     * "elapsedMillis", "importedPerSecond"}), and the final totals with "done": true.
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/users/import", method = RequestMethod.POST,
+            consumes = {NDJSON_MEDIA_TYPE, CSV_MEDIA_TYPE})
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserImportReader.Format format = (MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(CSV_MEDIA_TYPE)) ?
+                UserImportReader.Format.CSV : UserImportReader.Format.NDJSON);
+        Charset charset = (request.getCharacterEncoding() != null ?
+                Charset.forName(request.getCharacterEncoding()) : StandardCharsets.UTF_8);
+
+        response.setContentType(NDJSON_MEDIA_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        final Writer out = response.getWriter();
+        try (UserImportReader reader = new UserImportReader(new InputStreamReader(request.getInputStream(), charset),
+                format)) {
+            UserImportService.Progress totals = userImportService.importUsers(reader, new UserImportService.Listener() {
+                @Override
+                public void rowFailed(long line, String username, String error) {
+                    Map<String, Object> failure = new LinkedHashMap<>();
+                    failure.put("line", line);
+                    failure.put("username", username);
+                    failure.put("error", error);
+                    writeLine(out, failure);
+                }
+
+                @Override
+                public void chunkWritten(UserImportService.Progress progress) {
+                    writeLine(out, importProgress(progress));
+                    flush(out);
+                }
+            });
+            Map<String, Object> done = importProgress(totals);
+            done.put("done", true);
+            writeLine(out, done);
+        }
+        out.flush();
+    }
+
+    /**
+     * Users matching case-insensitive prefixes, a page at a time in (lastName, username) order; pass the previous
+     * page's nextLastName and nextUsername as afterLastName and afterUsername to get the next page
+     * @return
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/users", method = RequestMethod.GET)
+    public UserSearchPage searchUsers(@RequestParam(value = "lastName", required = false) String lastName,
+                                      @RequestParam(value = "email", required = false) String email,
+                                      @RequestParam(value = "username", required = false) String username,
+                                      @RequestParam(value = "afterLastName", required = false) String afterLastName,
+                                      @RequestParam(value = "afterUsername", required = false) String afterUsername,
+                                      @RequestParam(value = "pageSize", defaultValue = "50") int pageSize) {
+        return rswUserService.searchUsers(new UserSearch()
+                .setLastNamePrefix(lastName)
+                .setEmailPrefix(email)
+                .setUsernamePrefix(username)
+                .setAfterLastName(afterLastName)
+                .setAfterUsername(afterUsername)
+                .setPageSize(pageSize));
+    }
+
+    /**
+     * Every user as NDJSON, streamed from a database cursor - see UserExportWriter
+     * @param response
+     * @throws IOException
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/users/export", method = RequestMethod.GET, produces = NDJSON_MEDIA_TYPE)
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_MEDIA_TYPE);
+        UserExportWriter writer = new UserExportWriter(response.getOutputStream());
+        rswUserService.exportUsers(writer);
+        writer.flush();
+    }
+
+    /**
+     * Password hashing pool saturation and cumulative hash latency
+     * @return
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/stats/hashing", method = RequestMethod.GET)
+    public Map<String, Object> getHashingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hashCount = passwordHashingExecutor.getHashCount();
+        stats.put("poolSize", passwordHashingExecutor.getPoolSize());
+        stats.put("active", passwordHashingExecutor.getActiveCount());
+        stats.put("queueDepth", passwordHashingExecutor.getQueueDepth());
+        stats.put("queueCapacity", passwordHashingExecutor.getQueueCapacity());
+        stats.put("rejected", passwordHashingExecutor.getRejectedCount());
+        stats.put("hashCount", hashCount);
+        stats.put("avgHashMillis", hashCount == 0 ? 0.0 :
+                passwordHashingExecutor.getHashNanos() / 1e6 / hashCount);
+        stats.put("avgQueueWaitMillis", hashCount == 0 ? 0.0 :
+                passwordHashingExecutor.getQueueWaitNanos() / 1e6 / hashCount);
+        return stats;
+    }
+
+    /**
+     * Reload the group to authorities mapping on every node, e.g. after editing group_authorities
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/groups/refresh", method = RequestMethod.POST)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void refreshGroups() {
+        rswUserService.refreshGroupAuthorities();
+    }
+
+    /**
+     * check_token response cache effectiveness (JWT token type only)
+     * @return
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/stats/checkToken", method = RequestMethod.GET)
+    public Map<String, Object> getCheckTokenCacheStats() {
+        CheckTokenCache cache = requireCheckTokenCache();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("hits", cache.getHitCount());
+        stats.put("misses", cache.getMissCount());
+        stats.put("hitRatio", cache.getHitRatio());
+        stats.put("evictions", cache.getEvictionCount());
+        stats.put("revocations", cache.getRevocationCount());
+        return stats;
+    }
+
+    /**
+     * Stop serving a cached check_token response for this token on this node
+     * @param token
+     */
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/checkToken/revoke", method = RequestMethod.POST)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void revokeCheckToken(@RequestParam("token") String token) {
+        requireCheckTokenCache().revoke(token);
+    }
+
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @RequestMapping(value = "/checkToken/clear", method = RequestMethod.POST)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void clearCheckTokenCache() {
+        requireCheckTokenCache().clear();
+    }
+
+    private static Map<String, Object> importProgress(UserImportService.Progress progress) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("read", progress.getRead());
+        stats.put("imported", progress.getImported());
+        stats.put("failed", progress.getFailed());
+        stats.put("elapsedMillis", progress.getElapsedMillis());
+        stats.put("importedPerSecond", Math.round(progress.getImportedPerSecond() * 10) / 10.0);
+        return stats;
+    }
+
+    private void writeLine(Writer out, Map<String, Object> line) {
+        try {
+            out.write(objectMapper.writeValueAsString(line));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(Writer out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private CheckTokenCache requireCheckTokenCache() {
+        CheckTokenCache cache = checkTokenCache.getIfAvailable();
+        if (cache == null) {
+            throw new EntityNotFoundException("checkTokenCache");
+        }
+        return cache;
+    }
 }
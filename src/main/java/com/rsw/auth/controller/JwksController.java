@@ -0,0 +1,70 @@
+package com.rsw.auth.controller;
+
+import com.rsw.auth.core.JwtSigningKeys;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the JWT verification keys as a JSON Web Key Set, so resource servers verify tokens locally
+ * instead of calling /oauth/check_token.  The body is serialized once per key set; clients revalidate with
+ * If-None-Match and get a 304 until the keys change.
+ */
+@RestController
+@ConditionalOnProperty(value = "auth.tokenType", havingValue = "jwt")
+public class JwksController {
+
+    private JwtSigningKeys signingKeys;
+    private CacheControl cacheControl;
+
+    @Autowired
+    public JwksController(JwtSigningKeys signingKeys,
+                          @Value("${auth.security.jwt.jwks.maxAgeSecs:300}") long maxAgeSecs) {
+        this.signingKeys = signingKeys;
+        this.cacheControl = CacheControl.maxAge(maxAgeSecs, TimeUnit.SECONDS).cachePublic();
+    }
+
+    @RequestMapping(value = "/.well-known/jwks.json", method = RequestMethod.GET)
+    public ResponseEntity<byte[]> getKeySet(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = signingKeys.getJwksETag();
+        if (matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(signingKeys.getJwks());
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,48 @@
+package com.rsw.auth.controller;
+
+import com.rsw.auth.core.TokenIntrospectionService;
+import com.rsw.auth.domain.TokenIntrospectionRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch counterpart of /oauth/check_token for trusted clients (e.g. the gateway) that validate many tokens at
+ * once.  Secured by TokenIntrospectionSecurityConfig: client credentials via HTTP Basic, ROLE_TRUSTED_CLIENT.
+ *
+ * Request:  {"tokens": ["...", "..."]}
+ * Response: {"results": [{"active": true, ...check_token claims}, {"active": false, "error": "invalid_token", ...}]}
+ */
+@RestController
+public class TokenIntrospectionController {
+
+    private TokenIntrospectionService tokenIntrospectionService;
+
+    @Autowired
+    public TokenIntrospectionController(TokenIntrospectionService tokenIntrospectionService) {
+        this.tokenIntrospectionService = tokenIntrospectionService;
+    }
+
+    @RequestMapping(value = "/oauth/check_tokens", method = RequestMethod.POST)
+    public ResponseEntity<Map<String, Object>> checkTokens(@RequestBody TokenIntrospectionRequest request) {
+        List<String> tokens = (request.getTokens() == null ? Collections.<String>emptyList() : request.getTokens());
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (tokens.size() > tokenIntrospectionService.getMaxBatchSize()) {
+            body.put("error", "invalid_request");
+            body.put("error_description",
+                    "At most " + tokenIntrospectionService.getMaxBatchSize() + " tokens per batch");
+            return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+        }
+        body.put("results", tokenIntrospectionService.introspect(tokens));
+        return new ResponseEntity<>(body, HttpStatus.OK);
+    }
+}
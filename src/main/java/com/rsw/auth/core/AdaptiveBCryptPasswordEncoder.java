@@ -0,0 +1,112 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt encoder with a target strength (cost), which flags stored hashes of any other cost for upgrade.
+ * The algorithm version and cost are recorded in every BCrypt hash ($2a$10$...), so no extra column is needed,
+ * and matching works for hashes of any cost.
+ *
+ * The target strength may be fixed, or calibrated at startup (see calibrate) to the highest cost that hashes
+ * within a latency budget on the current hardware.
+ */
+public class AdaptiveBCryptPasswordEncoder implements UpgradablePasswordEncoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBCryptPasswordEncoder.class);
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+    private static final int MIN_BCRYPT_STRENGTH = 4;
+    private static final int MAX_BCRYPT_STRENGTH = 31;
+    private static final int CALIBRATION_SAMPLES = 3;
+    private static final String CALIBRATION_PASSWORD = "calibrate-P@ssw0rd";
+
+    private final int strength;
+    private final BCryptPasswordEncoder encoder;
+
+    public AdaptiveBCryptPasswordEncoder(int strength) {
+        Assert.isTrue(strength >= MIN_BCRYPT_STRENGTH && strength <= MAX_BCRYPT_STRENGTH,
+                "BCrypt strength must be between 4 and 31");
+        this.strength = strength;
+        this.encoder = new BCryptPasswordEncoder(strength);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return encoder.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return encoder.matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int hashStrength = getStrength(encodedPassword);
+        return hashStrength > 0 && hashStrength != strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    /**
+     * @param encodedPassword
+     * @return the cost recorded in a BCrypt hash, or -1 if not a BCrypt hash
+     */
+    public static int getStrength(String encodedPassword) {
+        if (encodedPassword == null) {
+            return -1;
+        }
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        return (matcher.find() ? Integer.parseInt(matcher.group(1)) : -1);
+    }
+
+    /**
+     * Finds the highest strength between minStrength and maxStrength whose hash time stays within the budget.
+     * Each increment doubles the cost, so strengths are measured upward from minStrength until the next one
+     * would exceed the budget.  minStrength is returned even if it exceeds the budget.
+     * @param minStrength
+     * @param maxStrength
+     * @param targetMillis latency budget for one hash
+     * @return
+     */
+    public static int calibrate(int minStrength, int maxStrength, long targetMillis) {
+        Assert.isTrue(minStrength <= maxStrength, "minStrength must not exceed maxStrength");
+        // warm up
+        new BCryptPasswordEncoder(MIN_BCRYPT_STRENGTH).encode(CALIBRATION_PASSWORD);
+
+        int strength = minStrength;
+        long millis = measureMillis(strength);
+        while (strength < maxStrength && millis * 2 <= targetMillis) {
+            strength++;
+            long nextMillis = measureMillis(strength);
+            if (nextMillis > targetMillis) {
+                strength--;
+                break;
+            }
+            millis = nextMillis;
+        }
+        LOGGER.info("BCrypt strength calibrated to {} (~{} ms per hash, budget {} ms)", strength, millis, targetMillis);
+        return strength;
+    }
+
+    private static long measureMillis(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long[] samples = new long[CALIBRATION_SAMPLES];
+        for (int ix = 0; ix < samples.length; ix++) {
+            long start = System.nanoTime();
+            encoder.encode(CALIBRATION_PASSWORD);
+            samples[ix] = (System.nanoTime() - start) / 1000000L;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+}
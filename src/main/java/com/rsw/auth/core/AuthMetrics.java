@@ -0,0 +1,178 @@
+package com.rsw.auth.core;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency histograms and failure counters for the auth hot paths, exported in Prometheus format:
+ * <pre>
+ *   rsw_auth_sql_seconds{statement}                     each DEF_* SQL constant, "other" for any other SQL
+ *   rsw_auth_bcrypt_seconds{operation}                  encode, matches
+ *   rsw_auth_endpoint_seconds{endpoint,grant_type}      token (per grant type), check_token, check_tokens, user
+ *   rsw_auth_endpoint_failures_total{endpoint,grant_type}
+ * </pre>
+ * Every label combination is resolved once, up front, so recording is a map lookup on a constant String (its hash
+ * is cached) plus a lock-free histogram update - nothing is allocated per observation.
+ */
+public class AuthMetrics {
+
+    public static final String OTHER = "other";
+    public static final String TOKEN_PATH = "/oauth/token";
+    public static final String CHECK_TOKEN_PATH = "/oauth/check_token";
+    public static final String CHECK_TOKENS_PATH = "/oauth/check_tokens";
+    public static final String USER_PATH = "/user";
+
+    private static final String[] GRANT_TYPES =
+            {"password", "authorization_code", "implicit", "client_credentials", "refresh_token"};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, Histogram.Child> statements;
+    private final Histogram.Child otherStatement;
+    private final Histogram.Child bcryptEncode;
+    private final Histogram.Child bcryptMatches;
+    private final Map<String, EndpointMetric> tokenGrants;
+    private final EndpointMetric otherTokenGrant;
+    private final Map<String, EndpointMetric> endpoints;
+
+    /**
+     * @param registry
+     * @param statementSources classes declaring the static DEF_* SQL constants to label statements by
+     */
+    public AuthMetrics(CollectorRegistry registry, Class<?>... statementSources) {
+        Histogram sqlSeconds = Histogram.build()
+                .name("rsw_auth_sql_seconds").help("SQL statement latency, by statement constant")
+                .labelNames("statement")
+                .buckets(0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1)
+                .register(registry);
+        Histogram bcryptSeconds = Histogram.build()
+                .name("rsw_auth_bcrypt_seconds").help("BCrypt hashing latency, excluding queueing")
+                .labelNames("operation")
+                .buckets(0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5)
+                .register(registry);
+        Histogram endpointSeconds = Histogram.build()
+                .name("rsw_auth_endpoint_seconds").help("Endpoint latency, including authentication")
+                .labelNames("endpoint", "grant_type")
+                .buckets(0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5)
+                .register(registry);
+        Counter endpointFailures = Counter.build()
+                .name("rsw_auth_endpoint_failures_total").help("Endpoint requests answered with an error status")
+                .labelNames("endpoint", "grant_type")
+                .register(registry);
+
+        Map<String, Histogram.Child> statementTimers = new HashMap<>();
+        for (Map.Entry<String, String> statement : statementNames(statementSources).entrySet()) {
+            statementTimers.put(statement.getKey(), sqlSeconds.labels(statement.getValue()));
+        }
+        this.statements = Collections.unmodifiableMap(statementTimers);
+        this.otherStatement = sqlSeconds.labels(OTHER);
+        this.bcryptEncode = bcryptSeconds.labels("encode");
+        this.bcryptMatches = bcryptSeconds.labels("matches");
+
+        Map<String, EndpointMetric> grants = new HashMap<>();
+        for (String grantType : GRANT_TYPES) {
+            grants.put(grantType, new EndpointMetric(endpointSeconds, endpointFailures, "token", grantType));
+        }
+        this.tokenGrants = Collections.unmodifiableMap(grants);
+        this.otherTokenGrant = new EndpointMetric(endpointSeconds, endpointFailures, "token", OTHER);
+
+        Map<String, EndpointMetric> others = new HashMap<>();
+        others.put(CHECK_TOKEN_PATH, new EndpointMetric(endpointSeconds, endpointFailures, "check_token", ""));
+        others.put(CHECK_TOKENS_PATH, new EndpointMetric(endpointSeconds, endpointFailures, "check_tokens", ""));
+        others.put(USER_PATH, new EndpointMetric(endpointSeconds, endpointFailures, "user", ""));
+        this.endpoints = Collections.unmodifiableMap(others);
+    }
+
+    /**
+     * @param sql
+     * @return the timer for a DEF_* statement, or the "other" timer
+     */
+    public Histogram.Child sqlStatement(String sql) {
+        Histogram.Child timer = (sql == null ? null : statements.get(sql));
+        return (timer == null ? otherStatement : timer);
+    }
+
+    public Histogram.Child bcryptEncode() {
+        return bcryptEncode;
+    }
+
+    public Histogram.Child bcryptMatches() {
+        return bcryptMatches;
+    }
+
+    /**
+     * @param path servlet path
+     * @param grantType grant_type parameter of a token request
+     * @return the endpoint's metric, or null if the endpoint is not metered
+     */
+    public EndpointMetric endpoint(String path, String grantType) {
+        if (TOKEN_PATH.equals(path)) {
+            EndpointMetric grant = (grantType == null ? null : tokenGrants.get(grantType));
+            return (grant == null ? otherTokenGrant : grant);
+        }
+        return endpoints.get(path);
+    }
+
+    /**
+     * @param timer
+     * @param startNanos System.nanoTime() at the start of the operation
+     */
+    public static void observeSince(Histogram.Child timer, long startNanos) {
+        observe(timer, System.nanoTime() - startNanos);
+    }
+
+    public static void observe(Histogram.Child timer, long elapsedNanos) {
+        timer.observe(elapsedNanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * DEF_* String constants of the given classes, by SQL text, labelled by the constant name without the DEF_
+     * prefix (DEF_CREATE_USER_SQL becomes create_user_sql)
+     */
+    static Map<String, String> statementNames(Class<?>... statementSources) {
+        Map<String, String> names = new HashMap<>();
+        for (Class<?> source : statementSources) {
+            for (Field field : source.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers) &&
+                        field.getType() == String.class && field.getName().startsWith("DEF_")) {
+                    try {
+                        field.setAccessible(true);
+                        names.put((String) field.get(null),
+                                field.getName().substring(4).toLowerCase(Locale.ROOT));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException("Unable to read " + field, e);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Pre-resolved latency and failure series of one endpoint (and grant type)
+     */
+    public static final class EndpointMetric {
+        private final Histogram.Child latency;
+        private final Counter.Child failures;
+
+        EndpointMetric(Histogram latency, Counter failures, String endpoint, String grantType) {
+            this.latency = latency.labels(endpoint, grantType);
+            this.failures = failures.labels(endpoint, grantType);
+        }
+
+        public void record(long startNanos, boolean failed) {
+            observeSince(latency, startNanos);
+            if (failed) {
+                failures.inc();
+            }
+        }
+    }
+}
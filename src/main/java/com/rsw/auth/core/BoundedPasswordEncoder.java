@@ -0,0 +1,80 @@
+package com.rsw.auth.core;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * PasswordEncoder that runs the (deliberately expensive) delegate encoder on the PasswordHashingExecutor,
+ * so hashing is bounded by the executor's threads and queue rather than by the servlet thread pool.
+ * The caller's wait, queueing included, is the request's ServerTimings hash phase.
+ */
+public class BoundedPasswordEncoder implements UpgradablePasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final PasswordHashingExecutor hashingExecutor;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor hashingExecutor) {
+        this.delegate = delegate;
+        this.hashingExecutor = hashingExecutor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return hashingExecutor.execute(() -> delegate.encode(rawPassword));
+        } finally {
+            ServerTimings.add(ServerTimings.Phase.HASH, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        try {
+            return hashingExecutor.execute(() -> delegate.matches(rawPassword, encodedPassword));
+        } finally {
+            ServerTimings.add(ServerTimings.Phase.HASH, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Cheap (no hashing) - evaluated on the calling thread
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate instanceof UpgradablePasswordEncoder &&
+                ((UpgradablePasswordEncoder) delegate).upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Compares the raw password against each of the encoded passwords in parallel on the hashing pool,
+     * stopping (and cancelling the remaining comparisons) at the first match
+     * @param rawPassword
+     * @param encodedPasswords
+     * @return true if the raw password matches any of the encoded passwords
+     */
+    public boolean matchesAny(CharSequence rawPassword, List<String> encodedPasswords) {
+        List<Callable<Boolean>> comparisons = new ArrayList<>(encodedPasswords.size());
+        for (String encodedPassword : encodedPasswords) {
+            comparisons.add(() -> delegate.matches(rawPassword, encodedPassword));
+        }
+        long start = System.nanoTime();
+        try {
+            return hashingExecutor.anyMatch(comparisons);
+        } finally {
+            ServerTimings.add(ServerTimings.Phase.HASH, System.nanoTime() - start);
+        }
+    }
+
+    public PasswordEncoder getDelegate() {
+        return delegate;
+    }
+
+    public PasswordHashingExecutor getHashingExecutor() {
+        return hashingExecutor;
+    }
+}
@@ -0,0 +1,181 @@
+package com.rsw.auth.core;
+
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache of /oauth/check_token response bodies, keyed by the SHA-256 of the token so raw tokens are
+ * never held in memory.
+ *
+ * An entry lives no longer than maxTtl, and never beyond the token's own expiry.  Least recently used entries
+ * are evicted once maxSize is reached.  revoke/clear drop entries for tokens that must stop validating early.
+ *
+ * Hit, miss, eviction (capacity or TTL) and revocation counts are kept for monitoring.
+ */
+public class CheckTokenCache {
+
+    private final int maxSize;
+    private final long maxTtlMillis;
+    private final Map<String, CachedResponse> responses;
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(CheckTokenCache::newDigest);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder revocations = new LongAdder();
+
+    public CheckTokenCache(int maxSize, long maxTtlSecs) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.isTrue(maxTtlSecs > 0, "maxTtlSecs must be positive");
+        this.maxSize = maxSize;
+        this.maxTtlMillis = maxTtlSecs * 1000L;
+        this.responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                if (size() > CheckTokenCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param token
+     * @return the cached response, or null
+     */
+    public CachedResponse get(String token) {
+        String key = key(token);
+        CachedResponse cached;
+        synchronized (responses) {
+            cached = responses.get(key);
+            if (cached != null && cached.expiresAt <= System.currentTimeMillis()) {
+                responses.remove(key);
+                evictions.increment();
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * @param token
+     * @param body check_token response body
+     * @param contentType
+     * @param tokenExpiresAt token expiry in epoch millis, or zero if unknown
+     */
+    public void put(String token, byte[] body, String contentType, long tokenExpiresAt) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + maxTtlMillis;
+        if (tokenExpiresAt > 0) {
+            expiresAt = Math.min(expiresAt, tokenExpiresAt);
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+        CachedResponse cached = new CachedResponse(body, contentType, expiresAt);
+        String key = key(token);
+        synchronized (responses) {
+            responses.put(key, cached);
+        }
+    }
+
+    /**
+     * Drop the cached response for a revoked token
+     * @param token
+     */
+    public void revoke(String token) {
+        String key = key(token);
+        synchronized (responses) {
+            if (responses.remove(key) != null) {
+                revocations.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (responses) {
+            revocations.add(responses.size());
+            responses.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return (total == 0 ? 0.0 : (double) hitCount / total);
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getRevocationCount() {
+        return revocations.sum();
+    }
+
+    private String key(String token) {
+        MessageDigest messageDigest = digest.get();
+        messageDigest.reset();
+        return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class CachedResponse {
+        private final byte[] body;
+        private final String contentType;
+        private final long expiresAt;
+
+        CachedResponse(byte[] body, String contentType, long expiresAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.expiresAt = expiresAt;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.rsw.auth.core;
+
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * UserCache decorator that keeps a node-local cache coherent across auth server replicas.
+ * Every removal evicts locally and is broadcast on the invalidation channel; invalidations received from other
+ * nodes evict locally only.
+ */
+public class ClusteredUserCache implements UserCache {
+
+    private final UserCache localCache;
+    private final UserCacheInvalidationChannel invalidationChannel;
+
+    public ClusteredUserCache(UserCache localCache, UserCacheInvalidationChannel invalidationChannel) {
+        this.localCache = localCache;
+        this.invalidationChannel = invalidationChannel;
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        return localCache.getUserFromCache(username);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        localCache.putUserInCache(user);
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        localCache.removeUserFromCache(username);
+        invalidationChannel.publish(UserCacheInvalidationChannel.TYPE_USER, username);
+    }
+
+    /**
+     * Clear this node's cache and every other node's
+     */
+    public void removeAll() {
+        clearLocal();
+        invalidationChannel.publish(UserCacheInvalidationChannel.TYPE_ALL, null);
+    }
+
+    /**
+     * Start applying invalidations published by other nodes to the local cache
+     * @param container
+     */
+    public void subscribe(RedisMessageListenerContainer container) {
+        invalidationChannel.subscribe(container, UserCacheInvalidationChannel.TYPE_USER,
+                localCache::removeUserFromCache);
+        invalidationChannel.subscribe(container, UserCacheInvalidationChannel.TYPE_ALL, key -> clearLocal());
+    }
+
+    public UserCache getLocalCache() {
+        return localCache;
+    }
+
+    private void clearLocal() {
+        if (localCache instanceof RswUserCache) {
+            ((RswUserCache) localCache).clear();
+        }
+    }
+}
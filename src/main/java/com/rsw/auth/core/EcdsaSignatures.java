@@ -0,0 +1,80 @@
+package com.rsw.auth.core;
+
+/**
+ * ECDSA signature format conversion: JCA produces and verifies ASN.1 DER, SEQUENCE { INTEGER r, INTEGER s },
+ * while JWS (RFC 7518 3.4) requires the fixed length concatenation R || S
+ */
+public final class EcdsaSignatures {
+
+    private EcdsaSignatures() {
+    }
+
+    /**
+     * @param der JCA signature
+     * @param joseLength R || S length, twice the curve's coordinate size
+     * @return
+     */
+    public static byte[] derToJose(byte[] der, int joseLength) {
+        int offset = (der[1] & 0x80) != 0 ? 3 : 2;
+        int rLength = der[offset + 1];
+        int rOffset = offset + 2;
+        int sLength = der[rOffset + rLength + 1];
+        int sOffset = rOffset + rLength + 2;
+        int half = joseLength / 2;
+        byte[] jose = new byte[joseLength];
+        copyUnsigned(der, rOffset, rLength, jose, 0, half);
+        copyUnsigned(der, sOffset, sLength, jose, half, half);
+        return jose;
+    }
+
+    /**
+     * @param jose R || S signature
+     * @return the equivalent DER signature for JCA verification
+     */
+    public static byte[] joseToDer(byte[] jose) {
+        int half = jose.length / 2;
+        byte[] r = derInteger(jose, 0, half);
+        byte[] s = derInteger(jose, half, half);
+        int contentLength = r.length + s.length;
+        byte[] der;
+        int pos;
+        if (contentLength < 0x80) {
+            der = new byte[2 + contentLength];
+            der[0] = 0x30;
+            der[1] = (byte) contentLength;
+            pos = 2;
+        } else {
+            der = new byte[3 + contentLength];
+            der[0] = 0x30;
+            der[1] = (byte) 0x81;
+            der[2] = (byte) contentLength;
+            pos = 3;
+        }
+        System.arraycopy(r, 0, der, pos, r.length);
+        System.arraycopy(s, 0, der, pos + r.length, s.length);
+        return der;
+    }
+
+    private static void copyUnsigned(byte[] src, int offset, int length, byte[] dest, int destOffset, int size) {
+        // drop the sign byte, left pad to the coordinate size
+        while (length > size && src[offset] == 0) {
+            offset++;
+            length--;
+        }
+        System.arraycopy(src, offset, dest, destOffset + size - length, length);
+    }
+
+    private static byte[] derInteger(byte[] src, int offset, int length) {
+        while (length > 1 && src[offset] == 0) {
+            offset++;
+            length--;
+        }
+        boolean signPad = (src[offset] & 0x80) != 0;
+        int valueLength = length + (signPad ? 1 : 0);
+        byte[] integer = new byte[2 + valueLength];
+        integer[0] = 0x02;
+        integer[1] = (byte) valueLength;
+        System.arraycopy(src, offset, integer, 2 + (signPad ? 1 : 0), length);
+        return integer;
+    }
+}
@@ -0,0 +1,138 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * JdbcTokenStore that also records each token's expiry (schema in sql/0004-oauth-token-store.sql), so expired
+ * tokens are removed on a schedule rather than only when they are next read - tokens that are never presented
+ * again would otherwise stay in the tables forever.
+ *
+ * Each run deletes at most batchSize expired rows per table through the expiry index, so a backlog is worked off
+ * over several runs instead of in one long delete.  Tokens without an expiration never expire, and are kept.
+ *
+ * Storing an access token is one upsert (Postgres 9.5+), where JdbcTokenStore reads, deletes and inserts in three
+ * round trips.  Writes are not pipelined across tokens - only the Redis store does that.
+ */
+public class ExpiringJdbcTokenStore extends JdbcTokenStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpiringJdbcTokenStore.class);
+
+    private static final String DEF_UPSERT_ACCESS_TOKEN_SQL =
+            "insert into oauth_access_token " +
+                "(token_id, token, authentication_id, user_name, client_id, authentication, refresh_token, expiry) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?) " +
+                "on conflict (token_id) do update set token = excluded.token, " +
+                " authentication_id = excluded.authentication_id, user_name = excluded.user_name, " +
+                " client_id = excluded.client_id, authentication = excluded.authentication, " +
+                " refresh_token = excluded.refresh_token, expiry = excluded.expiry";
+    private static final String DEF_INSERT_REFRESH_TOKEN_SQL =
+            "insert into oauth_refresh_token (token_id, token, authentication, expiry) values (?, ?, ?, ?)";
+    private static final String DEF_DELETE_EXPIRED_ACCESS_TOKENS_SQL =
+            "delete from oauth_access_token where ctid = any(array(" +
+                "select ctid from oauth_access_token where expiry < now() limit ?))";
+    private static final String DEF_DELETE_EXPIRED_REFRESH_TOKENS_SQL =
+            "delete from oauth_refresh_token where ctid = any(array(" +
+                "select ctid from oauth_refresh_token where expiry < now() limit ?))";
+
+    private static final int[] ACCESS_TOKEN_TYPES = {Types.VARCHAR, Types.BINARY, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.BINARY, Types.VARCHAR, Types.TIMESTAMP};
+    private static final int[] REFRESH_TOKEN_TYPES = {Types.VARCHAR, Types.BINARY, Types.BINARY, Types.TIMESTAMP};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+    /**
+     * @param dataSource
+     * @param batchSize maximum rows deleted per table on each removeExpiredTokens run
+     */
+    public ExpiringJdbcTokenStore(DataSource dataSource, int batchSize) {
+        super(dataSource);
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+        super.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+    }
+
+    /**
+     * As JdbcTokenStore, with the token's expiration, replacing a stored token of the same value in the same
+     * statement
+     */
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        String refreshToken = (token.getRefreshToken() != null ? token.getRefreshToken().getValue() : null);
+        jdbcTemplate.update(DEF_UPSERT_ACCESS_TOKEN_SQL, new Object[] {
+                extractTokenKey(token.getValue()),
+                serializeAccessToken(token),
+                authenticationKeyGenerator.extractKey(authentication),
+                (authentication.isClientOnly() ? null : authentication.getName()),
+                authentication.getOAuth2Request().getClientId(),
+                serializeAuthentication(authentication),
+                extractTokenKey(refreshToken),
+                toTimestamp(token.getExpiration())
+        }, ACCESS_TOKEN_TYPES);
+    }
+
+    /**
+     * As JdbcTokenStore, with the token's expiration if it has one
+     */
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        Date expiration = (refreshToken instanceof ExpiringOAuth2RefreshToken ?
+                ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() : null);
+        jdbcTemplate.update(DEF_INSERT_REFRESH_TOKEN_SQL, new Object[] {
+                extractTokenKey(refreshToken.getValue()),
+                serializeRefreshToken(refreshToken),
+                serializeAuthentication(authentication),
+                toTimestamp(expiration)
+        }, REFRESH_TOKEN_TYPES);
+    }
+
+    @Scheduled(fixedDelayString = "${auth.tokenStore.jdbcReapIntervalMillis}",
+            initialDelayString = "${auth.tokenStore.jdbcReapIntervalMillis}")
+    public void scheduledRemoveExpiredTokens() {
+        try {
+            removeExpiredTokens();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Expired token removal failed - retrying on the next run", e);
+        }
+    }
+
+    /**
+     * Delete up to batchSize expired access tokens and batchSize expired refresh tokens
+     * @return number of tokens deleted
+     */
+    public int removeExpiredTokens() {
+        int accessTokens = jdbcTemplate.update(DEF_DELETE_EXPIRED_ACCESS_TOKENS_SQL, batchSize);
+        int refreshTokens = jdbcTemplate.update(DEF_DELETE_EXPIRED_REFRESH_TOKENS_SQL, batchSize);
+        if (accessTokens + refreshTokens > 0) {
+            LOGGER.debug("Removed {} expired access tokens and {} expired refresh tokens", accessTokens, refreshTokens);
+        }
+        return accessTokens + refreshTokens;
+    }
+
+    private static Timestamp toTimestamp(Date date) {
+        return (date != null ? new Timestamp(date.getTime()) : null);
+    }
+}
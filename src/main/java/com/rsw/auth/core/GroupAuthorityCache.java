@@ -0,0 +1,205 @@
+package com.rsw.auth.core;
+
+import com.rsw.auth.domain.RswGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory snapshot of the groups and group_authorities tables, so that user loading only needs the user's
+ * group memberships, and authorities are expanded in memory.
+ *
+ * The snapshot (RswGroup -> authorities, RswGroup -> group id) is immutable and swapped atomically on refresh.
+ * GrantedAuthority instances are interned, so every user shares the same instances rather than allocating
+ * a SimpleGrantedAuthority per authority per login.
+ *
+ * Loaded at startup, refreshed on a fixed delay (auth.security.groups.refreshMillis) or on demand
+ * (refreshAllNodes, which also broadcasts on the invalidation channel when running clustered).
+ * Change listeners are notified when a refresh actually changes the snapshot (e.g. to clear user caches
+ * holding previously expanded authorities).
+ */
+public class GroupAuthorityCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupAuthorityCache.class);
+
+    private static final String DEF_GROUP_AUTHORITIES_SQL =
+            "select g.id, g.group_name, ga.authority " +
+                " from groups g " +
+                " left join group_authorities ga on g.id = ga.group_id " +
+                " order by g.id";
+
+    private JdbcTemplate jdbcTemplate;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap());
+    private final ConcurrentMap<String, GrantedAuthority> internedAuthorities = new ConcurrentHashMap<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private UserCacheInvalidationChannel invalidationChannel;
+
+    @PostConstruct
+    public void onPostConstruct() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${auth.security.groups.refreshMillis}",
+            initialDelayString = "${auth.security.groups.refreshMillis}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Group authorities refresh failed - keeping previous snapshot", e);
+        }
+    }
+
+    /**
+     * Reload the snapshot from the database
+     * @return true if the snapshot changed
+     */
+    public boolean refresh() {
+        Map<RswGroup, Set<GrantedAuthority>> authorities = new EnumMap<>(RswGroup.class);
+        Map<RswGroup, Integer> groupIds = new EnumMap<>(RswGroup.class);
+
+        jdbcTemplate.query(DEF_GROUP_AUTHORITIES_SQL, rs -> {
+            String groupName = rs.getString("group_name");
+            RswGroup group = toGroup(groupName);
+            if (group == null) {
+                return;
+            }
+            groupIds.put(group, rs.getInt("id"));
+            Set<GrantedAuthority> groupAuthorities = authorities.computeIfAbsent(group, g -> new LinkedHashSet<>());
+            String authority = rs.getString("authority");
+            if (authority != null) {
+                groupAuthorities.add(intern(authority));
+            }
+        });
+
+        for (Map.Entry<RswGroup, Set<GrantedAuthority>> entry : authorities.entrySet()) {
+            entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+        }
+        Snapshot newSnapshot = new Snapshot(Collections.unmodifiableMap(authorities),
+                Collections.unmodifiableMap(groupIds));
+        Snapshot oldSnapshot = snapshot;
+        snapshot = newSnapshot;
+
+        boolean changed = ! newSnapshot.equals(oldSnapshot);
+        if (changed) {
+            LOGGER.info("Group authorities loaded: {}", newSnapshot.authorities);
+            changeListeners.forEach(Runnable::run);
+        }
+        return changed;
+    }
+
+    /**
+     * Reload on this node, and ask every other node to reload when an invalidation channel is configured
+     * @return true if the snapshot changed on this node
+     */
+    public boolean refreshAllNodes() {
+        boolean changed = refresh();
+        if (invalidationChannel != null) {
+            invalidationChannel.publish(UserCacheInvalidationChannel.TYPE_GROUPS, null);
+        }
+        return changed;
+    }
+
+    /**
+     * @param group
+     * @return immutable set of authorities granted to the group (empty if none or unknown group)
+     */
+    public Set<GrantedAuthority> getAuthorities(RswGroup group) {
+        Set<GrantedAuthority> authorities = snapshot.authorities.get(group);
+        return (authorities != null ? authorities : Collections.emptySet());
+    }
+
+    /**
+     * Adds the authorities of every group to the target collection
+     * @param groups
+     * @param target
+     */
+    public void expandAuthorities(Collection<RswGroup> groups, Collection<GrantedAuthority> target) {
+        Map<RswGroup, Set<GrantedAuthority>> authorities = snapshot.authorities;
+        for (RswGroup group : groups) {
+            Set<GrantedAuthority> groupAuthorities = authorities.get(group);
+            if (groupAuthorities != null) {
+                target.addAll(groupAuthorities);
+            }
+        }
+    }
+
+    /**
+     * @param group
+     * @return database id of the group, or null if the group is not defined in the groups table
+     */
+    public Integer getGroupId(RswGroup group) {
+        return snapshot.groupIds.get(group);
+    }
+
+    /**
+     * Shared GrantedAuthority instance for the authority name
+     * @param authority
+     * @return
+     */
+    public GrantedAuthority intern(String authority) {
+        GrantedAuthority interned = internedAuthorities.get(authority);
+        if (interned == null) {
+            interned = internedAuthorities.computeIfAbsent(authority, SimpleGrantedAuthority::new);
+        }
+        return interned;
+    }
+
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public GroupAuthorityCache setInvalidationChannel(UserCacheInvalidationChannel invalidationChannel) {
+        this.invalidationChannel = invalidationChannel;
+        return this;
+    }
+
+    public GroupAuthorityCache setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        return this;
+    }
+
+    private static RswGroup toGroup(String groupName) {
+        try {
+            return RswGroup.valueOf(groupName);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Ignoring group '{}' - not defined in RswGroup", groupName);
+            return null;
+        }
+    }
+
+    private static class Snapshot {
+        private final Map<RswGroup, Set<GrantedAuthority>> authorities;
+        private final Map<RswGroup, Integer> groupIds;
+
+        Snapshot(Map<RswGroup, Set<GrantedAuthority>> authorities, Map<RswGroup, Integer> groupIds) {
+            this.authorities = authorities;
+            this.groupIds = groupIds;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Snapshot)) {
+                return false;
+            }
+            Snapshot that = (Snapshot) o;
+            return authorities.equals(that.authorities) && groupIds.equals(that.groupIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * authorities.hashCode() + groupIds.hashCode();
+        }
+    }
+}
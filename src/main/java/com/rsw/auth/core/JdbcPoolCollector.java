@@ -0,0 +1,86 @@
+package com.rsw.auth.core;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tomcat JDBC pool usage, read from the pools at scrape time and labelled by pool: connections in use, idle, the
+ * configured maximum, and threads waiting for a connection.
+ *
+ * With read replicas (see ReplicaRoutingDataSource), also the connections routed to each pool, each replica's
+ * replay lag and availability, and the read-only connections that fell back to the primary.
+ */
+public class JdbcPoolCollector extends Collector {
+
+    private static final List<String> POOL_LABEL = Collections.singletonList("pool");
+
+    private final Map<String, DataSourceProxy> pools;
+    private final ReplicaRoutingDataSource routingDataSource;
+
+    public JdbcPoolCollector(DataSourceProxy pool) {
+        this(Collections.singletonMap(ReplicaRoutingDataSource.PRIMARY, pool), null);
+    }
+
+    /**
+     * @param pools by pool name
+     * @param routingDataSource null without read replicas
+     */
+    public JdbcPoolCollector(Map<String, DataSourceProxy> pools, ReplicaRoutingDataSource routingDataSource) {
+        this.pools = pools;
+        this.routingDataSource = routingDataSource;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> samples = new ArrayList<>(9);
+        GaugeMetricFamily active = new GaugeMetricFamily("rsw_auth_jdbc_pool_active_connections",
+                "Connections in use", POOL_LABEL);
+        GaugeMetricFamily idle = new GaugeMetricFamily("rsw_auth_jdbc_pool_idle_connections",
+                "Idle connections", POOL_LABEL);
+        GaugeMetricFamily max = new GaugeMetricFamily("rsw_auth_jdbc_pool_max_connections",
+                "Maximum active connections", POOL_LABEL);
+        GaugeMetricFamily waiting = new GaugeMetricFamily("rsw_auth_jdbc_pool_waiting_threads",
+                "Threads waiting for a connection", POOL_LABEL);
+        for (Map.Entry<String, DataSourceProxy> entry : pools.entrySet()) {
+            List<String> pool = Collections.singletonList(entry.getKey());
+            active.addMetric(pool, entry.getValue().getActive());
+            idle.addMetric(pool, entry.getValue().getIdle());
+            max.addMetric(pool, entry.getValue().getMaxActive());
+            waiting.addMetric(pool, entry.getValue().getWaitCount());
+        }
+        samples.add(active);
+        samples.add(idle);
+        samples.add(max);
+        samples.add(waiting);
+
+        if (routingDataSource != null) {
+            CounterMetricFamily routed = new CounterMetricFamily("rsw_auth_jdbc_pool_routed_connections_total",
+                    "Connections routed to the pool", POOL_LABEL);
+            routingDataSource.getConnectionCounts().forEach((pool, count) ->
+                    routed.addMetric(Collections.singletonList(pool), count));
+            GaugeMetricFamily lag = new GaugeMetricFamily("rsw_auth_jdbc_replica_lag_seconds",
+                    "Replica replay lag at the last check, NaN if the check failed", POOL_LABEL);
+            routingDataSource.getReplicaLagSeconds().forEach((pool, seconds) ->
+                    lag.addMetric(Collections.singletonList(pool), seconds));
+            GaugeMetricFamily available = new GaugeMetricFamily("rsw_auth_jdbc_replica_available",
+                    "1 if the replica receives read-only connections", POOL_LABEL);
+            routingDataSource.getReplicaLagSeconds().keySet().forEach(pool ->
+                    available.addMetric(Collections.singletonList(pool),
+                            routingDataSource.isReplicaAvailable(pool) ? 1 : 0));
+            samples.add(routed);
+            samples.add(lag);
+            samples.add(available);
+            samples.add(new CounterMetricFamily("rsw_auth_jdbc_replica_fallbacks_total",
+                    "Read-only connections taken from the primary because no replica was available",
+                    routingDataSource.getFallbackCount()));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,310 @@
+package com.rsw.auth.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.UserAuthenticationConverter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.util.*;
+
+/**
+ * Allocation-lean JWT encoder for the access token claim set produced by DefaultAccessTokenConverter
+ * (user_name, authorities, scope, jti, exp, additional information, client_id, aud).
+ *
+ * Claims are streamed by Jackson straight into a per-thread byte buffer, then base64url encoded and signed in
+ * place, so the only per-token allocation is the resulting String.  The header segment is constant per key
+ * and encoded once; each thread keeps its own initialized Mac or Signature.
+ */
+public class JwtEncoder {
+
+    private static final byte[] BASE64URL_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final String HMAC_HEADER = "{\"alg\":\"HS256\",\"typ\":\"JWT\"}";
+
+    private final JsonFactory jsonFactory = new ObjectMapper().getFactory();
+    private final byte[] headerSegment;
+    private final ThreadLocal<EncoderState> state;
+
+    private JwtEncoder(byte[] headerSegment, SignerFactory signerFactory) {
+        this.headerSegment = headerSegment;
+        this.state = ThreadLocal.withInitial(() -> newState(signerFactory));
+    }
+
+    private static EncoderState newState(SignerFactory signerFactory) {
+        try {
+            return new EncoderState(signerFactory.create());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize JWT signer", e);
+        }
+    }
+
+    /**
+     * Encoder signing with an asymmetric (RSA/EC) key
+     * @param key
+     * @return
+     */
+    public static JwtEncoder forKey(JwtSigningKeys.SigningKey key) {
+        final JwtSigningKeys.SigningKey signingKey = key;
+        return new JwtEncoder(key.getHeaderSegment().getBytes(StandardCharsets.US_ASCII), () -> {
+            Signature signature = Signature.getInstance(signingKey.getJcaAlgorithm());
+            signature.initSign(signingKey.getPrivateKey());
+            return new SignatureSigner(signature, signingKey.isEllipticCurve() ? signingKey.getEcSignatureBytes() : 0);
+        });
+    }
+
+    /**
+     * Encoder signing with HMAC SHA-256, compatible with JwtAccessTokenConverter.setSigningKey
+     * @param secret
+     * @return
+     */
+    public static JwtEncoder forHmac(String secret) {
+        final byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        byte[] header = HMAC_HEADER.getBytes(StandardCharsets.UTF_8);
+        byte[] headerSegment = new byte[base64Length(header.length)];
+        base64url(header, 0, header.length, headerSegment, 0);
+        return new JwtEncoder(headerSegment, () -> {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(keyBytes, "HmacSHA256"));
+            return new MacSigner(mac);
+        });
+    }
+
+    /**
+     * @param accessToken with its jti already in the additional information
+     * @param authentication
+     * @return the signed, encoded JWT
+     */
+    public String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        EncoderState encoderState = state.get();
+        ByteBuffer claims = encoderState.claims;
+        claims.reset();
+        try (JsonGenerator generator = jsonFactory.createGenerator(claims)) {
+            writeClaims(generator, accessToken, authentication);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+
+        ByteBuffer jwt = encoderState.jwt;
+        jwt.reset();
+        jwt.write(headerSegment, 0, headerSegment.length);
+        jwt.write('.');
+        jwt.appendBase64(claims.bytes, 0, claims.size);
+        byte[] signature;
+        try {
+            signature = encoderState.signer.sign(jwt.bytes, 0, jwt.size);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign JWT", e);
+        }
+        jwt.write('.');
+        jwt.appendBase64(signature, 0, signature.length);
+        return new String(jwt.bytes, 0, jwt.size, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Same claims as DefaultAccessTokenConverter.convertAccessToken (with DefaultUserAuthenticationConverter)
+     */
+    private static void writeClaims(JsonGenerator generator, OAuth2AccessToken accessToken,
+                                    OAuth2Authentication authentication) throws IOException {
+        OAuth2Request request = authentication.getOAuth2Request();
+        Map<String, Object> additionalInformation = accessToken.getAdditionalInformation();
+
+        generator.writeStartObject();
+        if (! authentication.isClientOnly()) {
+            Authentication userAuthentication = authentication.getUserAuthentication();
+            writeIfAbsent(generator, additionalInformation, UserAuthenticationConverter.USERNAME,
+                    userAuthentication.getName());
+            writeAuthorities(generator, additionalInformation, userAuthentication.getAuthorities());
+        } else {
+            writeAuthorities(generator, additionalInformation, request.getAuthorities());
+        }
+        if (accessToken.getScope() != null && ! additionalInformation.containsKey(AccessTokenConverter.SCOPE)) {
+            writeStrings(generator, AccessTokenConverter.SCOPE, accessToken.getScope());
+        }
+        if (accessToken.getExpiration() != null && ! additionalInformation.containsKey(AccessTokenConverter.EXP)) {
+            generator.writeNumberField(AccessTokenConverter.EXP, accessToken.getExpiration().getTime() / 1000);
+        }
+        // includes the jti
+        for (Map.Entry<String, Object> entry : additionalInformation.entrySet()) {
+            if (! AccessTokenConverter.CLIENT_ID.equals(entry.getKey()) &&
+                    ! AccessTokenConverter.AUD.equals(entry.getKey())) {
+                generator.writeObjectField(entry.getKey(), entry.getValue());
+            }
+        }
+        generator.writeStringField(AccessTokenConverter.CLIENT_ID, request.getClientId());
+        if (request.getResourceIds() != null && ! request.getResourceIds().isEmpty()) {
+            writeStrings(generator, AccessTokenConverter.AUD, request.getResourceIds());
+        } else if (additionalInformation.containsKey(AccessTokenConverter.AUD)) {
+            generator.writeObjectField(AccessTokenConverter.AUD, additionalInformation.get(AccessTokenConverter.AUD));
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeIfAbsent(JsonGenerator generator, Map<String, Object> additionalInformation,
+                                      String name, String value) throws IOException {
+        if (! additionalInformation.containsKey(name)) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private static void writeAuthorities(JsonGenerator generator, Map<String, Object> additionalInformation,
+                                         Collection<? extends GrantedAuthority> authorities) throws IOException {
+        if (authorities == null || authorities.isEmpty() ||
+                additionalInformation.containsKey(UserAuthenticationConverter.AUTHORITIES)) {
+            return;
+        }
+        generator.writeArrayFieldStart(UserAuthenticationConverter.AUTHORITIES);
+        if (authorities.size() == 1) {
+            generator.writeString(authorities.iterator().next().getAuthority());
+        } else {
+            // de-duplicated, as AuthorityUtils.authorityListToSet
+            Set<String> written = new HashSet<>(authorities.size() * 2);
+            for (GrantedAuthority authority : authorities) {
+                if (written.add(authority.getAuthority())) {
+                    generator.writeString(authority.getAuthority());
+                }
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeStrings(JsonGenerator generator, String name, Collection<String> values)
+            throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    // ---- base64url without padding
+
+    static int base64Length(int length) {
+        return (length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+    }
+
+    static int base64url(byte[] src, int offset, int length, byte[] dest, int destOffset) {
+        int end = offset + length - length % 3;
+        int pos = destOffset;
+        for (int ix = offset; ix < end; ix += 3) {
+            int bits = (src[ix] & 0xff) << 16 | (src[ix + 1] & 0xff) << 8 | (src[ix + 2] & 0xff);
+            dest[pos++] = BASE64URL_ALPHABET[(bits >>> 18) & 0x3f];
+            dest[pos++] = BASE64URL_ALPHABET[(bits >>> 12) & 0x3f];
+            dest[pos++] = BASE64URL_ALPHABET[(bits >>> 6) & 0x3f];
+            dest[pos++] = BASE64URL_ALPHABET[bits & 0x3f];
+        }
+        int remaining = length % 3;
+        if (remaining > 0) {
+            int bits = (src[end] & 0xff) << 16 | (remaining == 2 ? (src[end + 1] & 0xff) << 8 : 0);
+            dest[pos++] = BASE64URL_ALPHABET[(bits >>> 18) & 0x3f];
+            dest[pos++] = BASE64URL_ALPHABET[(bits >>> 12) & 0x3f];
+            if (remaining == 2) {
+                dest[pos++] = BASE64URL_ALPHABET[(bits >>> 6) & 0x3f];
+            }
+        }
+        return pos - destOffset;
+    }
+
+    // ---- per-thread state
+
+    private static final class EncoderState {
+        final ByteBuffer claims = new ByteBuffer(1024);
+        final ByteBuffer jwt = new ByteBuffer(2048);
+        final Signer signer;
+
+        EncoderState(Signer signer) {
+            this.signer = signer;
+        }
+    }
+
+    /**
+     * Growable, reusable byte buffer
+     */
+    private static final class ByteBuffer extends OutputStream {
+        byte[] bytes;
+        int size;
+
+        ByteBuffer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] src, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(src, offset, bytes, size, length);
+            size += length;
+        }
+
+        void appendBase64(byte[] src, int offset, int length) {
+            ensureCapacity(base64Length(length));
+            size += base64url(src, offset, length, bytes, size);
+        }
+    }
+
+    private interface SignerFactory {
+        Signer create() throws GeneralSecurityException;
+    }
+
+    private interface Signer {
+        byte[] sign(byte[] input, int offset, int length) throws GeneralSecurityException;
+    }
+
+    private static final class MacSigner implements Signer {
+        private final Mac mac;
+
+        MacSigner(Mac mac) {
+            this.mac = mac;
+        }
+
+        @Override
+        public byte[] sign(byte[] input, int offset, int length) {
+            mac.update(input, offset, length);
+            return mac.doFinal();
+        }
+    }
+
+    private static final class SignatureSigner implements Signer {
+        private final Signature signature;
+        private final int ecSignatureBytes;
+
+        SignatureSigner(Signature signature, int ecSignatureBytes) {
+            this.signature = signature;
+            this.ecSignatureBytes = ecSignatureBytes;
+        }
+
+        @Override
+        public byte[] sign(byte[] input, int offset, int length) throws GeneralSecurityException {
+            signature.update(input, offset, length);
+            byte[] signed = signature.sign();
+            return (ecSignatureBytes > 0 ? EcdsaSignatures.derToJose(signed, ecSignatureBytes) : signed);
+        }
+    }
+}
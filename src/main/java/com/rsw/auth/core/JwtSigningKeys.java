@@ -0,0 +1,302 @@
+package com.rsw.auth.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.*;
+
+/**
+ * Asymmetric JWT signing keys loaded from a local keystore: one active key (signs new tokens) plus any number of
+ * retiring keys (public key only; still verify tokens signed before the last rotation).
+ * Each key is identified by its keystore alias, which is used as the JWT "kid" header.
+ *
+ * The JSON Web Key Set (RFC 7517) of all verification keys, and its ETag, are serialized once when the key set
+ * is loaded, so the JWKS endpoint only writes out bytes.
+ *
+ * Rotation: add the new key to the keystore as a retiring key first, so resource servers pick it up from the JWKS;
+ * once their caches have turned over, make it the active key and the old one retiring; drop the old key after
+ * the longest token validity has passed.
+ */
+public class JwtSigningKeys {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final SigningKey activeKey;
+    private final Map<String, SigningKey> verificationKeys;
+    private final byte[] jwks;
+    private final String jwksETag;
+
+    private JwtSigningKeys(SigningKey activeKey, List<SigningKey> retiringKeys) {
+        this.activeKey = activeKey;
+        Map<String, SigningKey> keys = new LinkedHashMap<>();
+        if (activeKey != null) {
+            keys.put(activeKey.getKid(), activeKey);
+        }
+        for (SigningKey retiringKey : retiringKeys) {
+            Assert.isTrue(! keys.containsKey(retiringKey.getKid()), "Duplicate JWT key id " + retiringKey.getKid());
+            keys.put(retiringKey.getKid(), retiringKey);
+        }
+        this.verificationKeys = Collections.unmodifiableMap(keys);
+        this.jwks = serializeJwks(keys.values());
+        this.jwksETag = "\"" + BASE64URL.encodeToString(sha256(jwks)) + "\"";
+    }
+
+    /**
+     * No asymmetric keys - tokens are HMAC signed and the key set is empty
+     * @return
+     */
+    public static JwtSigningKeys none() {
+        return new JwtSigningKeys(null, Collections.<SigningKey>emptyList());
+    }
+
+    /**
+     * @param keyStoreResource PKCS12 or JKS keystore
+     * @param keyStoreType
+     * @param storePassword
+     * @param keyPassword password of the active private key; the store password when empty
+     * @param activeKeyAlias alias of the signing key (RSA or EC)
+     * @param retiringKeyAliases aliases of previous keys, which only verify
+     * @return
+     */
+    public static JwtSigningKeys fromKeyStore(Resource keyStoreResource, String keyStoreType, String storePassword,
+                                              String keyPassword, String activeKeyAlias,
+                                              List<String> retiringKeyAliases) {
+        Assert.hasText(activeKeyAlias, "An active JWT key alias is required");
+        char[] storePasswordChars = (storePassword == null ? null : storePassword.toCharArray());
+        char[] keyPasswordChars = (StringUtils.hasText(keyPassword) ? keyPassword.toCharArray() : storePasswordChars);
+        try (InputStream in = keyStoreResource.getInputStream()) {
+            KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+            keyStore.load(in, storePasswordChars);
+
+            Key privateKey = keyStore.getKey(activeKeyAlias, keyPasswordChars);
+            Assert.isTrue(privateKey instanceof PrivateKey, "No private key found for JWT key alias " + activeKeyAlias);
+            SigningKey activeKey = new SigningKey(activeKeyAlias, (PrivateKey) privateKey,
+                    publicKey(keyStore, activeKeyAlias));
+
+            List<SigningKey> retiringKeys = new ArrayList<>();
+            for (String alias : retiringKeyAliases) {
+                retiringKeys.add(new SigningKey(alias, null, publicKey(keyStore, alias)));
+            }
+            return new JwtSigningKeys(activeKey, retiringKeys);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to load JWT signing keys from " + keyStoreResource, e);
+        }
+    }
+
+    /**
+     * @param activeKid
+     * @param activeKeyPair
+     * @param retiringKeys public keys by kid
+     * @return
+     */
+    public static JwtSigningKeys of(String activeKid, KeyPair activeKeyPair, Map<String, PublicKey> retiringKeys) {
+        List<SigningKey> retiring = new ArrayList<>();
+        for (Map.Entry<String, PublicKey> entry : retiringKeys.entrySet()) {
+            retiring.add(new SigningKey(entry.getKey(), null, entry.getValue()));
+        }
+        return new JwtSigningKeys(new SigningKey(activeKid, activeKeyPair.getPrivate(), activeKeyPair.getPublic()),
+                retiring);
+    }
+
+    private static PublicKey publicKey(KeyStore keyStore, String alias) throws KeyStoreException {
+        Certificate certificate = keyStore.getCertificate(alias);
+        Assert.notNull(certificate, "No certificate found for JWT key alias " + alias);
+        return certificate.getPublicKey();
+    }
+
+    public boolean isEmpty() {
+        return activeKey == null;
+    }
+
+    public SigningKey getActiveKey() {
+        return activeKey;
+    }
+
+    /**
+     * @param kid
+     * @return the active or retiring key with this id, or null
+     */
+    public SigningKey getVerificationKey(String kid) {
+        return verificationKeys.get(kid);
+    }
+
+    public Collection<SigningKey> getVerificationKeys() {
+        return verificationKeys.values();
+    }
+
+    /**
+     * @return the serialized JSON Web Key Set; callers must not modify
+     */
+    public byte[] getJwks() {
+        return jwks;
+    }
+
+    public String getJwksETag() {
+        return jwksETag;
+    }
+
+    private static byte[] serializeJwks(Collection<SigningKey> keys) {
+        List<Map<String, String>> jwkList = new ArrayList<>();
+        for (SigningKey key : keys) {
+            jwkList.add(key.toJwk());
+        }
+        try {
+            return new ObjectMapper().writeValueAsBytes(Collections.singletonMap("keys", jwkList));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize JWKS", e);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A single RSA or EC key, with its JWS algorithm
+     */
+    public static final class SigningKey {
+
+        private final String kid;
+        private final PrivateKey privateKey;
+        private final PublicKey publicKey;
+        private final String algorithm;
+        private final String jcaAlgorithm;
+        private final int ecCoordinateBytes;
+        private final String headerSegment;
+
+        SigningKey(String kid, PrivateKey privateKey, PublicKey publicKey) {
+            this.kid = kid;
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+            if (publicKey instanceof RSAPublicKey) {
+                this.algorithm = "RS256";
+                this.jcaAlgorithm = "SHA256withRSA";
+                this.ecCoordinateBytes = 0;
+            } else if (publicKey instanceof ECPublicKey) {
+                int fieldSize = ((ECPublicKey) publicKey).getParams().getCurve().getField().getFieldSize();
+                this.ecCoordinateBytes = (fieldSize + 7) / 8;
+                switch (fieldSize) {
+                    case 256:
+                        this.algorithm = "ES256";
+                        this.jcaAlgorithm = "SHA256withECDSA";
+                        break;
+                    case 384:
+                        this.algorithm = "ES384";
+                        this.jcaAlgorithm = "SHA384withECDSA";
+                        break;
+                    case 521:
+                        this.algorithm = "ES512";
+                        this.jcaAlgorithm = "SHA512withECDSA";
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported EC key size " + fieldSize + " for " + kid);
+                }
+            } else {
+                throw new IllegalArgumentException("JWT key " + kid + " must be RSA or EC");
+            }
+            this.headerSegment = encodeHeader(algorithm, kid);
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        /**
+         * @return the JWS "alg" name, e.g. RS256
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * @return the java.security.Signature algorithm name, e.g. SHA256withRSA
+         */
+        public String getJcaAlgorithm() {
+            return jcaAlgorithm;
+        }
+
+        public boolean isEllipticCurve() {
+            return ecCoordinateBytes > 0;
+        }
+
+        /**
+         * @return the JWS (R || S) signature length for EC keys
+         */
+        public int getEcSignatureBytes() {
+            return ecCoordinateBytes * 2;
+        }
+
+        /**
+         * @return the base64url encoded JWS header of tokens signed by this key - constant per key
+         */
+        public String getHeaderSegment() {
+            return headerSegment;
+        }
+
+        Map<String, String> toJwk() {
+            Map<String, String> jwk = new LinkedHashMap<>();
+            jwk.put("kid", kid);
+            jwk.put("use", "sig");
+            jwk.put("alg", algorithm);
+            if (publicKey instanceof RSAPublicKey) {
+                RSAPublicKey rsaKey = (RSAPublicKey) publicKey;
+                jwk.put("kty", "RSA");
+                jwk.put("n", base64Unsigned(rsaKey.getModulus(), 0));
+                jwk.put("e", base64Unsigned(rsaKey.getPublicExponent(), 0));
+            } else {
+                ECPublicKey ecKey = (ECPublicKey) publicKey;
+                jwk.put("kty", "EC");
+                jwk.put("crv", "P-" + ecKey.getParams().getCurve().getField().getFieldSize());
+                jwk.put("x", base64Unsigned(ecKey.getW().getAffineX(), ecCoordinateBytes));
+                jwk.put("y", base64Unsigned(ecKey.getW().getAffineY(), ecCoordinateBytes));
+            }
+            return jwk;
+        }
+
+        private static String encodeHeader(String algorithm, String kid) {
+            Map<String, String> header = new LinkedHashMap<>();
+            header.put("alg", algorithm);
+            header.put("typ", "JWT");
+            header.put("kid", kid);
+            try {
+                return BASE64URL.encodeToString(new ObjectMapper().writeValueAsBytes(header));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Unable to serialize JWT header", e);
+            }
+        }
+
+        /**
+         * Big-endian unsigned bytes, left padded to length when given
+         */
+        private static String base64Unsigned(BigInteger value, int length) {
+            byte[] bytes = value.toByteArray();
+            int start = (bytes.length > 1 && bytes[0] == 0 ? 1 : 0);
+            int size = Math.max(bytes.length - start, length);
+            byte[] unsigned = new byte[size];
+            System.arraycopy(bytes, start, unsigned, size - (bytes.length - start), bytes.length - start);
+            return BASE64URL.encodeToString(unsigned);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for each stage of the login pipeline (user load queries, password check, hashing,
+ * token enhancement and signing), so a continuous recording dumped after a latency spike shows where the time went.
+ * Each event carries its duration, a hash of the username and the grant type (or the servlet path for form
+ * login); events are named com.rsw.auth.*, in the "RSW Auth / Login" category, without stack traces.
+ *
+ * The build targets Java 8, which has no jdk.jfr API, so the event types are defined at runtime through
+ * jdk.jfr.EventFactory and driven by method handles.  On a runtime without JFR, begin() returns null and
+ * nothing is recorded.  When no recording has the events enabled, begin() is a single flag check.
+ * <pre>
+ *   Object event = LoginEvents.begin(LoginEvents.Stage.LOAD_GROUP_AUTHORITIES);
+ *   try {
+ *       ...
+ *   } finally {
+ *       LoginEvents.commit(event, username);
+ *   }
+ * </pre>
+ */
+public final class LoginEvents {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoginEvents.class);
+
+    public enum Stage {
+        LOAD_USER_SINGLE_QUERY("LoadUserSingleQuery", "Load User (single query)"),
+        LOAD_USERS_BY_USERNAME("LoadUsersByUsername", "Load Users By Username"),
+        LOAD_GROUP_AUTHORITIES("LoadGroupAuthorities", "Load Group Authorities"),
+        CREATE_USER_DETAILS("CreateUserDetails", "Create User Details"),
+        CHECK_PASSWORD("CheckPassword", "Check Password"),
+        AUTHENTICATE("Authenticate", "Authenticate"),
+        ENCODE_PASSWORD("EncodePassword", "Encode Password"),
+        ENHANCE_TOKEN("EnhanceToken", "Enhance Token"),
+        SIGN_TOKEN("SignToken", "Sign Token");
+
+        private final String eventName;
+        private final String label;
+
+        Stage(String eventName, String label) {
+            this.eventName = "com.rsw.auth." + eventName;
+            this.label = label;
+        }
+
+        public String getEventName() {
+            return eventName;
+        }
+    }
+
+    private static final Jfr JFR = Jfr.create();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(LoginEvents::newDigest);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int HASH_BYTES = 8;
+
+    private LoginEvents() {
+    }
+
+    public static boolean isAvailable() {
+        return JFR != null;
+    }
+
+    /**
+     * @param stage
+     * @return the started event, or null if the event is not being recorded
+     */
+    public static Object begin(Stage stage) {
+        return (JFR == null ? null : JFR.begin(stage));
+    }
+
+    /**
+     * Ends the event and commits it, if its duration passes the recording's threshold
+     * @param event from begin(), may be null
+     * @param username
+     */
+    public static void commit(Object event, String username) {
+        if (event != null) {
+            JFR.commit(event, username);
+        }
+    }
+
+    /**
+     * @param username
+     * @return the first 8 bytes of the SHA-256 of the username, as hex - enough to correlate events for one user
+     */
+    static String usernameHash(String username) {
+        if (username == null) {
+            return null;
+        }
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        byte[] hash = digest.digest(username.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[HASH_BYTES * 2];
+        for (int ix = 0; ix < HASH_BYTES; ix++) {
+            hex[ix * 2] = HEX[(hash[ix] >> 4) & 0xf];
+            hex[ix * 2 + 1] = HEX[hash[ix] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @return grant_type of the current request, its servlet path if it has none (form login), or null outside
+     * of a request
+     */
+    static String grantType() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (! (attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String grantType = request.getParameter("grant_type");
+        return (grantType != null ? grantType : request.getServletPath());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The jdk.jfr calls, bound once: per stage, the event type's enabled flag and event constructor; per event,
+     * begin/end/shouldCommit/set/commit
+     */
+    private static final class Jfr {
+        private static final int USERNAME_HASH = 0;
+        private static final int GRANT_TYPE = 1;
+
+        private final MethodHandle[] isEnabled;
+        private final MethodHandle[] newEvent;
+        private final MethodHandle begin;
+        private final MethodHandle end;
+        private final MethodHandle shouldCommit;
+        private final MethodHandle set;
+        private final MethodHandle commit;
+
+        private Jfr(MethodHandle[] isEnabled, MethodHandle[] newEvent, MethodHandle begin, MethodHandle end,
+                    MethodHandle shouldCommit, MethodHandle set, MethodHandle commit) {
+            this.isEnabled = isEnabled;
+            this.newEvent = newEvent;
+            this.begin = begin;
+            this.end = end;
+            this.shouldCommit = shouldCommit;
+            this.set = set;
+            this.commit = commit;
+        }
+
+        static Jfr create() {
+            try {
+                Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+                Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+                Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                MethodHandle newAnnotation = lookup.findConstructor(annotationElementClass,
+                        MethodType.methodType(void.class, Class.class, Object.class));
+                MethodHandle newValueDescriptor = lookup.findConstructor(valueDescriptorClass,
+                        MethodType.methodType(void.class, Class.class, String.class, List.class));
+                MethodHandle createFactory = lookup.findStatic(eventFactoryClass, "create",
+                        MethodType.methodType(eventFactoryClass, List.class, List.class));
+                MethodHandle factoryNewEvent = lookup.findVirtual(eventFactoryClass, "newEvent",
+                        MethodType.methodType(eventClass));
+                MethodHandle factoryEventType = lookup.findVirtual(eventFactoryClass, "getEventType",
+                        MethodType.methodType(eventTypeClass));
+                MethodHandle typeIsEnabled = lookup.findVirtual(eventTypeClass, "isEnabled",
+                        MethodType.methodType(boolean.class));
+
+                Object labelUsername = annotation(newAnnotation, "jdk.jfr.Label", "Username Hash");
+                Object labelGrantType = annotation(newAnnotation, "jdk.jfr.Label", "Grant Type");
+                List<Object> fields = new ArrayList<>(2);
+                fields.add(newValueDescriptor.invoke(String.class, "usernameHash",
+                        Arrays.asList(labelUsername)));
+                fields.add(newValueDescriptor.invoke(String.class, "grantType", Arrays.asList(labelGrantType)));
+
+                Stage[] stages = Stage.values();
+                MethodHandle[] isEnabled = new MethodHandle[stages.length];
+                MethodHandle[] newEvent = new MethodHandle[stages.length];
+                for (Stage stage : stages) {
+                    List<Object> annotations = new ArrayList<>(4);
+                    annotations.add(annotation(newAnnotation, "jdk.jfr.Name", stage.eventName));
+                    annotations.add(annotation(newAnnotation, "jdk.jfr.Label", stage.label));
+                    annotations.add(annotation(newAnnotation, "jdk.jfr.Category", new String[] {"RSW Auth", "Login"}));
+                    annotations.add(annotation(newAnnotation, "jdk.jfr.StackTrace", Boolean.FALSE));
+                    Object factory = createFactory.invoke(annotations, fields);
+                    isEnabled[stage.ordinal()] = typeIsEnabled.bindTo(factoryEventType.invoke(factory))
+                            .asType(MethodType.methodType(boolean.class));
+                    newEvent[stage.ordinal()] = factoryNewEvent.bindTo(factory)
+                            .asType(MethodType.methodType(Object.class));
+                }
+
+                MethodType objectToVoid = MethodType.methodType(void.class, Object.class);
+                return new Jfr(isEnabled, newEvent,
+                        lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class)).asType(objectToVoid),
+                        lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class)).asType(objectToVoid),
+                        lookup.findVirtual(eventClass, "shouldCommit", MethodType.methodType(boolean.class))
+                                .asType(MethodType.methodType(boolean.class, Object.class)),
+                        lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+                                .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class)),
+                        lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class)).asType(objectToVoid));
+            } catch (ClassNotFoundException e) {
+                LOGGER.info("JFR API not available on this runtime - login events disabled");
+                return null;
+            } catch (Throwable e) {
+                LOGGER.warn("Unable to register JFR login events", e);
+                return null;
+            }
+        }
+
+        private static Object annotation(MethodHandle newAnnotation, String annotationClass, Object value)
+                throws Throwable {
+            return newAnnotation.invoke(Class.forName(annotationClass), value);
+        }
+
+        Object begin(Stage stage) {
+            try {
+                if (! (boolean) isEnabled[stage.ordinal()].invokeExact()) {
+                    return null;
+                }
+                Object event = (Object) newEvent[stage.ordinal()].invokeExact();
+                begin.invokeExact(event);
+                return event;
+            } catch (Throwable e) {
+                LOGGER.debug("JFR event begin failed", e);
+                return null;
+            }
+        }
+
+        void commit(Object event, String username) {
+            try {
+                end.invokeExact(event);
+                if ((boolean) shouldCommit.invokeExact(event)) {
+                    set.invokeExact(event, USERNAME_HASH, (Object) usernameHash(username));
+                    set.invokeExact(event, GRANT_TYPE, (Object) grantType());
+                    commit.invokeExact(event);
+                }
+            } catch (Throwable e) {
+                LOGGER.debug("JFR event commit failed", e);
+            }
+        }
+    }
+}
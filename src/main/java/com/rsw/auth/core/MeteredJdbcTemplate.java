@@ -0,0 +1,58 @@
+package com.rsw.auth.core;
+
+import io.prometheus.client.Histogram;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.core.StatementCallback;
+
+import javax.sql.DataSource;
+
+/**
+ * JdbcTemplate timing every statement into AuthMetrics, labelled by its DEF_* constant.
+ * All query, update and batch variants end in one of the two execute methods overridden here, and JdbcTemplate's
+ * own statement creators and callbacks expose their SQL through SqlProvider.  The timing covers execution and
+ * result mapping, and is also added to the request's ServerTimings db phase.
+ */
+public class MeteredJdbcTemplate extends JdbcTemplate {
+
+    private final AuthMetrics metrics;
+
+    public MeteredJdbcTemplate(DataSource dataSource, AuthMetrics metrics) {
+        super(dataSource);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) {
+        Histogram.Child timer = metrics.sqlStatement(sql(psc));
+        long start = System.nanoTime();
+        try {
+            return super.execute(psc, action);
+        } finally {
+            record(timer, start);
+        }
+    }
+
+    @Override
+    public <T> T execute(StatementCallback<T> action) {
+        Histogram.Child timer = metrics.sqlStatement(sql(action));
+        long start = System.nanoTime();
+        try {
+            return super.execute(action);
+        } finally {
+            record(timer, start);
+        }
+    }
+
+    private static void record(Histogram.Child timer, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        AuthMetrics.observe(timer, elapsed);
+        ServerTimings.add(ServerTimings.Phase.DB, elapsed);
+    }
+
+    private static String sql(Object statement) {
+        return (statement instanceof SqlProvider ? ((SqlProvider) statement).getSql() : null);
+    }
+}
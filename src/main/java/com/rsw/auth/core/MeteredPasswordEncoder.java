@@ -0,0 +1,48 @@
+package com.rsw.auth.core;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Times encode and matches of the wrapped (BCrypt) encoder into AuthMetrics.  Wrapped inside the
+ * BoundedPasswordEncoder, so only the hashing itself is measured, not the wait for a hashing thread.
+ */
+public class MeteredPasswordEncoder implements UpgradablePasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final AuthMetrics metrics;
+
+    public MeteredPasswordEncoder(PasswordEncoder delegate, AuthMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.encode(rawPassword);
+        } finally {
+            AuthMetrics.observeSince(metrics.bcryptEncode(), start);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.matches(rawPassword, encodedPassword);
+        } finally {
+            AuthMetrics.observeSince(metrics.bcryptMatches(), start);
+        }
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate instanceof UpgradablePasswordEncoder &&
+                ((UpgradablePasswordEncoder) delegate).upgradeEncoding(encodedPassword);
+    }
+
+    public PasswordEncoder getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,206 @@
+package com.rsw.auth.core;
+
+import com.rsw.auth.exception.PasswordHashingRejectedException;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedicated, fixed size pool for password hashing (BCrypt encode/matches), with a bounded queue.
+ *
+ * Caps the CPU spent hashing per node: servlet threads hand the hash off and wait, so a login storm can't
+ * occupy every request thread with hashing, starving health checks and token checks.  When the queue is full
+ * the caller is rejected immediately with a PasswordHashingRejectedException (503 with Retry-After).
+ *
+ * Queue depth, rejections and hash/queue-wait times are tracked for monitoring.
+ */
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final int retryAfterSecs;
+
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param threads number of hashing threads; zero or less to use the number of available processors
+     * @param queueCapacity number of hashes allowed to wait for a thread
+     * @param retryAfterSecs Retry-After advertised to rejected callers
+     */
+    public PasswordHashingExecutor(int threads, int queueCapacity, int retryAfterSecs) {
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        int poolSize = (threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.queueCapacity = queueCapacity;
+        this.retryAfterSecs = retryAfterSecs;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HashingThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Run the hashing task on the pool and wait for its result
+     * @param task
+     * @param <T>
+     * @return
+     * @throws PasswordHashingRejectedException if the pool is saturated
+     */
+    public <T> T execute(Callable<T> task) {
+        Future<T> future = submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Submit without waiting
+     * @param task
+     * @param <T>
+     * @return
+     * @throws PasswordHashingRejectedException if the pool is saturated
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return submit(task, null);
+    }
+
+    /**
+     * @param task
+     * @param completionQueue if not null, receives the future once the task completes
+     */
+    private <T> Future<T> submit(Callable<T> task, BlockingQueue<Future<T>> completionQueue) {
+        final long queuedAt = System.nanoTime();
+        FutureTask<T> future = new FutureTask<T>(() -> {
+            long startedAt = System.nanoTime();
+            queueWaitNanos.add(startedAt - queuedAt);
+            try {
+                return task.call();
+            } finally {
+                hashNanos.add(System.nanoTime() - startedAt);
+                hashCount.increment();
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (completionQueue != null) {
+                    completionQueue.add(this);
+                }
+            }
+        };
+        try {
+            executor.execute(future);
+            return future;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            throw new PasswordHashingRejectedException(retryAfterSecs);
+        }
+    }
+
+    /**
+     * Run the boolean tasks in parallel, returning as soon as any one of them returns true; tasks still queued
+     * or running at that point are cancelled
+     * @param tasks
+     * @return true if any task returned true
+     * @throws PasswordHashingRejectedException if the pool is saturated
+     */
+    public boolean anyMatch(List<Callable<Boolean>> tasks) {
+        List<Future<Boolean>> futures = new ArrayList<>(tasks.size());
+        BlockingQueue<Future<Boolean>> completed = new LinkedBlockingQueue<>();
+        try {
+            for (Callable<Boolean> task : tasks) {
+                futures.add(submit(task, completed));
+            }
+            for (int ix = 0; ix < futures.size(); ix++) {
+                if (completed.take().get()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            throw propagate(e);
+        } finally {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getRetryAfterSecs() {
+        return retryAfterSecs;
+    }
+
+    public long getHashCount() {
+        return hashCount.sum();
+    }
+
+    public long getHashNanos() {
+        return hashNanos.sum();
+    }
+
+    public long getQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    static RuntimeException propagate(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new AuthenticationServiceException("Password hashing failed", cause);
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hash-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -16,7 +16,6 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -35,25 +34,30 @@ public class PasswordService {
     private JdbcTemplate jdbcTemplate;
     private AuthenticationManager authenticationManager;
     private PasswordEncoder passwordEncoder;
+    private BoundedPasswordEncoder historyMatcher;
     private Integer passwordExpiryDays;
     private Integer passwordRecycleSpan;
     private String passwordFormatRegEx;
     private Pattern passwordPattern;
 
     private static final String DEF_CHANGE_PASSWORD_SQL =
-            "update users set password = ?, password_expiry = ? where username = ?";
+            "update users set password = ?, password_expiry = ? where lower(username) = lower(?)";
 
-    private static final String DEF_FIND_PASSWORD_HISTORY_SQL =
-            "select password from password_history where username = ? order by changed_date DESC";
+    private static final String DEF_UPGRADE_PASSWORD_SQL =
+            "update users set password = ? where lower(username) = lower(?) and password = ?";
+
+    static final String DEF_FIND_PASSWORD_HISTORY_SQL =
+            "select password from password_history where lower(username) = lower(?) " +
+                "order by changed_date DESC limit ?";
 
     private static final String DEF_INSERT_PASSWORD_HISTORY_SQL =
-            "insert into password_history (username, password, changed_date) values(?,?,?)";
+            "insert into password_history (username, password, changed_date) values(lower(?),?,?)";
 
     private static final String DEF_DELETE_PASSWORD_HISTORY_SQL =
-            "delete from password_history where username = ?";
+            "delete from password_history where lower(username) = lower(?)";
 
     private static final String DEF_DELETE_PERSISTENT_LOGINS_SQL =
-            "delete from persistent_logins where username = ?";
+            "delete from persistent_logins where lower(username) = lower(?)";
 
 
     @PostConstruct
@@ -66,6 +70,7 @@ public class PasswordService {
     /**
      * Intended for a user changing their own password.  No other attributes are modified.
      * Requires old password to pass authentication.
+     * The new password is hashed exactly once; the same hash is stored in users and password_history.
      * @param userName
      * @param oldPassword
      * @param newPassword
@@ -76,19 +81,20 @@ public class PasswordService {
         authenticate(userName, oldPassword);
         validateChangePassword(userName, newPassword);
 
+        final String encodedPassword = encodePassword(userName, newPassword);
         jdbcTemplate.update(DEF_CHANGE_PASSWORD_SQL, ps -> {
-            ps.setString(1, passwordEncoder.encode(newPassword));
+            ps.setString(1, encodedPassword);
             setOptionalTimestamp(ps, 2, getDefaultPasswordExpiry());
             ps.setString(3, userName);
         });
-        recordPasswordHistory(userName, newPassword);
+        recordPasswordHistory(userName, encodedPassword);
 	}
 
     /**
-     * for convenience, returns current password if validations pass
+     * Validates the password format, and that it doesn't match any of the last passwordRecycleSpan passwords.
+     * Only the recycle span is fetched from the history, and the comparison stops at the first match.
      * @param userName
      * @param password
-     * @return
      */
     void validateChangePassword(String userName, String password) {
         validatePassword(password);
@@ -97,15 +103,11 @@ public class PasswordService {
             return;
         }
 
-        List<String> passwords = new ArrayList<>();
-        // get password history
-        passwords.addAll(jdbcTemplate.queryForList(DEF_FIND_PASSWORD_HISTORY_SQL, new String[] {userName},
-                String.class));
+        // get password history, most recent first
+        List<String> passwords = jdbcTemplate.queryForList(DEF_FIND_PASSWORD_HISTORY_SQL,
+                new Object[] {userName, passwordRecycleSpan}, String.class);
 
-        for (int ix = 0; ix < passwordRecycleSpan && ix < passwords.size(); ix++) {
-            String encodedPassword = passwords.get(ix);
-            Assert.isTrue(! passwordEncoder.matches(password, encodedPassword), "Cannot reuse an old password");
-        }
+        Assert.isTrue(! matchesAny(password, passwords), "Cannot reuse an old password");
     }
 
     void validatePassword(String password) {
@@ -116,8 +118,18 @@ public class PasswordService {
         }
     }
 
-	String encodePassword(String clearTextPassword) {
-        return passwordEncoder.encode(clearTextPassword);
+    /**
+     * @param userName whose password is hashed, for the ENCODE_PASSWORD event
+     * @param clearTextPassword
+     * @return the hash
+     */
+	String encodePassword(String userName, String clearTextPassword) {
+        Object event = LoginEvents.begin(LoginEvents.Stage.ENCODE_PASSWORD);
+        try {
+            return passwordEncoder.encode(clearTextPassword);
+        } finally {
+            LoginEvents.commit(event, userName);
+        }
     }
 
     LocalDateTime getDefaultPasswordExpiry() {
@@ -129,12 +141,38 @@ public class PasswordService {
     	return now.plusDays(passwordExpiryDays);
     }
 
-    void recordPasswordHistory(final String userName, final String clearPassword) {
-        final String encryptedPassword = passwordEncoder.encode(clearPassword);
+    /**
+     * @param encodedPassword a stored hash
+     * @return true if the encoder would now hash the password with different parameters (e.g. BCrypt cost)
+     */
+    boolean needsUpgrade(String encodedPassword) {
+        return passwordEncoder instanceof UpgradablePasswordEncoder &&
+                ((UpgradablePasswordEncoder) passwordEncoder).upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Re-hash an already authenticated password with the current encoder parameters.
+     * The stored hash is only replaced if it is still the one that was authenticated against, so a concurrent
+     * password change always wins.  Expiry and password history are unaffected.
+     * @param userName
+     * @param currentEncodedPassword hash the password was just verified against
+     * @param rawPassword
+     * @return true if the stored hash was replaced
+     */
+    boolean upgradePassword(String userName, String currentEncodedPassword, String rawPassword) {
+        String encodedPassword = encodePassword(userName, rawPassword);
+        return jdbcTemplate.update(DEF_UPGRADE_PASSWORD_SQL, encodedPassword, userName, currentEncodedPassword) == 1;
+    }
+
+    /**
+     * @param userName
+     * @param encodedPassword the hash already stored in users.password - not re-encoded here
+     */
+    void recordPasswordHistory(final String userName, final String encodedPassword) {
         final LocalDateTime now = LocalDateTime.now();
         jdbcTemplate.update(DEF_INSERT_PASSWORD_HISTORY_SQL, ps -> {
             ps.setString(1, userName);
-            ps.setString(2, encryptedPassword);
+            ps.setString(2, encodedPassword);
             ps.setTimestamp(3, Timestamp.valueOf(now));
         });
     }
@@ -158,6 +196,17 @@ public class PasswordService {
         return this;
     }
 
+    /**
+     * Fan password history comparisons out in parallel on the hashing pool; without it they run sequentially
+     * @param hashingExecutor
+     * @param hashEncoder encoder each comparison runs on a pool thread - not itself bounded by the pool
+     * @return
+     */
+    public PasswordService setHashingExecutor(PasswordHashingExecutor hashingExecutor, PasswordEncoder hashEncoder) {
+        this.historyMatcher = new BoundedPasswordEncoder(hashEncoder, hashingExecutor);
+        return this;
+    }
+
     public void setPasswordExpiryDays(Integer passwordExpiryDays) {
         this.passwordExpiryDays = passwordExpiryDays;
     }
@@ -179,7 +228,29 @@ public class PasswordService {
      */
     Authentication authenticate(String userName, String password) throws AuthenticationException {
         Authentication token = new UsernamePasswordAuthenticationToken(userName, password);
-        return authenticationManager.authenticate(token);
+        Object event = LoginEvents.begin(LoginEvents.Stage.AUTHENTICATE);
+        try {
+            return authenticationManager.authenticate(token);
+        } finally {
+            LoginEvents.commit(event, userName);
+        }
+    }
+
+    /**
+     * With a hashing executor set, the history comparisons are fanned out in parallel on it so the check costs
+     * roughly one hash rather than one per history entry; otherwise they run sequentially.
+     * Either way, stops at the first match.
+     */
+    private boolean matchesAny(String password, List<String> encodedPasswords) {
+        if (historyMatcher != null && encodedPasswords.size() > 1) {
+            return historyMatcher.matchesAny(password, encodedPasswords);
+        }
+        for (String encodedPassword : encodedPasswords) {
+            if (passwordEncoder.matches(password, encodedPassword)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void setOptionalTimestamp(PreparedStatement ps, int paramNumber, LocalDateTime value) throws SQLException {
@@ -0,0 +1,313 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Routes connections for read-only transactions to a set of Postgres streaming replicas, and everything else to
+ * the primary.  A connection is routed to a replica only when it is requested inside an actual transaction marked
+ * read-only (@Transactional(readOnly = true)); a read-only method joining a read-write transaction uses that
+ * transaction's primary connection, and statements outside a transaction go to the primary.
+ *
+ * The transaction is only known to be read-only once it has begun, so this must be wrapped in a
+ * LazyConnectionDataSourceProxy - see ReplicaDataSourceConfig - which defers getConnection to the first statement.
+ *
+ * Replicas are picked round-robin among those available: the last lag check succeeded, with a replay lag of at
+ * most maxLagMillis.  When none is available, or a replica refuses a connection, the primary is used instead
+ * (a fallback).  A replica refusing a connection is skipped until its next successful lag check.
+ *
+ * Replay lag grows no faster than the clock, so a replica in use is at most maxLagMillis + lagCheckMillis behind.
+ * Keys (e.g. usernames) written within that window can be pinned to the primary (pinToPrimary), and reads of
+ * them run onPrimary, so a read following a write never sees the row as it was before the write.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    public static final String PRIMARY = "primary";
+
+    /**
+     * replay lag in seconds: zero when not in recovery or when all received WAL has been replayed (an idle primary
+     * writes no WAL, so the last replay timestamp alone would report a growing lag); Postgres 10 renamed the
+     * xlog functions to wal
+     */
+    private static final String DEF_REPLICA_LAG_QUERY =
+            "select case when not pg_is_in_recovery() then 0 " +
+                " when pg_last_xlog_receive_location() = pg_last_xlog_replay_location() then 0 " +
+                " else extract(epoch from now() - pg_last_xact_replay_timestamp()) end";
+    private static final String DEF_REPLICA_LAG_QUERY_10 =
+            "select case when not pg_is_in_recovery() then 0 " +
+                " when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+                " else extract(epoch from now() - pg_last_xact_replay_timestamp()) end";
+    private static final String DEF_SERVER_VERSION_QUERY = "select current_setting('server_version_num')::int";
+    private static final int LAG_CHECK_TIMEOUT_SECS = 2;
+    private static final int MAX_PINNED_KEYS = 10000;
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final long pinMillis;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ConcurrentMap<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * @param primary
+     * @param replicas replica pools by name, e.g. replica1
+     * @param maxLagMillis replicas lagging further behind the primary are not used
+     * @param lagCheckMillis interval between lag checks
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMillis,
+                                    long lagCheckMillis) {
+        Assert.notNull(primary, "primary DataSource is required");
+        Assert.isTrue(! replicas.containsKey(PRIMARY), "'" + PRIMARY + "' is reserved for the primary pool");
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.pinMillis = maxLagMillis + lagCheckMillis;
+        List<Replica> replicaList = new ArrayList<>(replicas.size());
+        replicas.forEach((name, dataSource) -> replicaList.add(new Replica(name, dataSource)));
+        this.replicas = Collections.unmodifiableList(replicaList);
+    }
+
+    @PostConstruct
+    public void onPostConstruct() {
+        checkReplicaLag();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (! isReadOnlyTransaction() || Boolean.TRUE.equals(PRIMARY_ONLY.get())) {
+            return primaryConnection();
+        }
+        Replica replica = nextAvailableReplica();
+        if (replica == null) {
+            fallbacks.increment();
+            return primaryConnection();
+        }
+        try {
+            Connection connection = replica.dataSource.getConnection();
+            replica.connections.increment();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.warn("Replica {} refused a connection - using the primary until its next lag check",
+                    replica.name, e);
+            replica.available = false;
+            fallbacks.increment();
+            return primaryConnection();
+        }
+    }
+
+    /**
+     * Not supported: replicas and primary are expected to use the same (pool configured) credentials
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Not supported by ReplicaRoutingDataSource");
+    }
+
+    /**
+     * Run the action with connections taken from the primary, even in a read-only transaction.  Only effective if
+     * the transaction hasn't obtained its connection yet, i.e. before its first statement.
+     * @param action
+     * @param <T>
+     * @return the action's result
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            } else {
+                PRIMARY_ONLY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Record a write of the key: until maxLagMillis + lagCheckMillis from now, replicas may not have it yet
+     * @param key
+     */
+    public void pinToPrimary(String key) {
+        long now = System.currentTimeMillis();
+        if (pinnedUntil.size() >= MAX_PINNED_KEYS) {
+            pinnedUntil.values().removeIf(until -> until <= now);
+        }
+        pinnedUntil.put(key, now + pinMillis);
+    }
+
+    /**
+     * @param key
+     * @return true if the key was written recently enough that a replica may not have it yet
+     */
+    public boolean isPinnedToPrimary(String key) {
+        Long until = pinnedUntil.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until <= System.currentTimeMillis()) {
+            pinnedUntil.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Measure every replica's replay lag, and update its availability.  Failed checks make the replica unavailable.
+     */
+    @Scheduled(fixedDelayString = "${auth.replica.lagCheckMillis}",
+            initialDelayString = "${auth.replica.lagCheckMillis}")
+    public void checkReplicaLag() {
+        for (Replica replica : replicas) {
+            Double lagSeconds;
+            try {
+                lagSeconds = queryLagSeconds(replica);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Lag check failed on replica {}", replica.name, e);
+                lagSeconds = null;
+            }
+            recordLag(replica.name, lagSeconds);
+        }
+    }
+
+    /**
+     * @param replicaName
+     * @param lagSeconds measured lag, or null when the check failed
+     */
+    void recordLag(String replicaName, Double lagSeconds) {
+        Replica replica = getReplica(replicaName);
+        boolean available = (lagSeconds != null && lagSeconds * 1000 <= maxLagMillis);
+        if (available != replica.available) {
+            if (available) {
+                LOGGER.info("Replica {} available, lag {}s", replica.name, lagSeconds);
+            } else {
+                LOGGER.warn("Replica {} unavailable, lag {}s (max {}ms)", replica.name, lagSeconds, maxLagMillis);
+            }
+        }
+        replica.lagSeconds = (lagSeconds != null ? lagSeconds : Double.NaN);
+        replica.available = available;
+    }
+
+    /**
+     * @return the primary and every replica pool, by name
+     */
+    public Map<String, DataSource> getPools() {
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        pools.put(PRIMARY, primary);
+        replicas.forEach(replica -> pools.put(replica.name, replica.dataSource));
+        return pools;
+    }
+
+    /**
+     * @return connections handed out since startup, by pool name
+     */
+    public Map<String, Long> getConnectionCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put(PRIMARY, primaryConnections.sum());
+        replicas.forEach(replica -> counts.put(replica.name, replica.connections.sum()));
+        return counts;
+    }
+
+    /**
+     * @return last measured replay lag in seconds by replica name, NaN when the last check failed
+     */
+    public Map<String, Double> getReplicaLagSeconds() {
+        Map<String, Double> lags = new LinkedHashMap<>();
+        replicas.forEach(replica -> lags.put(replica.name, replica.lagSeconds));
+        return lags;
+    }
+
+    public boolean isReplicaAvailable(String replicaName) {
+        return getReplica(replicaName).available;
+    }
+
+    /**
+     * @return read-only connections that went to the primary because no replica was available
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    static boolean isReadOnlyTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive() &&
+                TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private Connection primaryConnection() throws SQLException {
+        Connection connection = primary.getConnection();
+        primaryConnections.increment();
+        return connection;
+    }
+
+    private Replica nextAvailableReplica() {
+        int count = replicas.size();
+        if (count == 0) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((start + i) % count);
+            if (replica.available) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private Replica getReplica(String replicaName) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(replicaName)) {
+                return replica;
+            }
+        }
+        throw new IllegalArgumentException("Unknown replica: " + replicaName);
+    }
+
+    private Double queryLagSeconds(Replica replica) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica.dataSource);
+        jdbcTemplate.setQueryTimeout(LAG_CHECK_TIMEOUT_SECS);
+        if (replica.lagQuery == null) {
+            Integer serverVersion = jdbcTemplate.queryForObject(DEF_SERVER_VERSION_QUERY, Integer.class);
+            replica.lagQuery = (serverVersion >= 100000 ? DEF_REPLICA_LAG_QUERY_10 : DEF_REPLICA_LAG_QUERY);
+        }
+        return jdbcTemplate.queryForObject(replica.lagQuery, Double.class);
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final LongAdder connections = new LongAdder();
+        private volatile boolean available;
+        private volatile double lagSeconds = Double.NaN;
+        private volatile String lagQuery;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
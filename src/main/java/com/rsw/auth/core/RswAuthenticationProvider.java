@@ -0,0 +1,69 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * DaoAuthenticationProvider that transparently upgrades a user's password hash after a successful login,
+ * whenever the stored hash was produced with different parameters (e.g. a lower BCrypt cost) than the
+ * encoder's current target.
+ *
+ * The re-hash and update run in the background on the upgrade executor, so the login itself is not slowed;
+ * if the executor is busy the upgrade is simply skipped and retried on a later login.
+ */
+public class RswAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RswAuthenticationProvider.class);
+
+    private RswUserDetailsService rswUserService;
+    private TaskExecutor upgradeExecutor;
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+        Object event = LoginEvents.begin(LoginEvents.Stage.CHECK_PASSWORD);
+        try {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+        } finally {
+            LoginEvents.commit(event, userDetails.getUsername());
+        }
+
+        final String currentEncodedPassword = userDetails.getPassword();
+        if (upgradeExecutor == null || ! rswUserService.needsPasswordUpgrade(currentEncodedPassword)) {
+            return;
+        }
+
+        final String userName = userDetails.getUsername();
+        final String rawPassword = authentication.getCredentials().toString();
+        try {
+            upgradeExecutor.execute(() -> {
+                try {
+                    rswUserService.upgradePassword(userName, currentEncodedPassword, rawPassword);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Password hash upgrade failed for user '{}'", userName, e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            LOGGER.debug("Password hash upgrade for user '{}' skipped - upgrade executor busy", userName);
+        }
+    }
+
+    public void setRswUserService(RswUserDetailsService rswUserService) {
+        this.rswUserService = rswUserService;
+        setUserDetailsService(rswUserService);
+    }
+
+    /**
+     * @param upgradeExecutor executor for background re-hashing; null disables upgrades
+     */
+    public void setUpgradeExecutor(TaskExecutor upgradeExecutor) {
+        this.upgradeExecutor = upgradeExecutor;
+    }
+}
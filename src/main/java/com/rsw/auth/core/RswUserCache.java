@@ -0,0 +1,181 @@
+package com.rsw.auth.core;
+
+import com.rsw.auth.domain.RswUser;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.Assert;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, TTL-based in-process UserCache for RswUser instances.
+ *
+ * Least recently used entries are evicted once maxSize is reached, and entries older than the TTL are
+ * evicted on access.  A copy of the cached user is handed out on every hit, since Spring Security erases
+ * credentials on the authenticated principal (which would otherwise null the password held in the cache),
+ * and so that credentialsNonExpired is re-evaluated against the password expiry on every load.
+ *
+ * Every removal (and clear) advances an invalidation generation for the username.  A loader reads the generation
+ * before loading and puts with it (putUserInCache(user, generation)); the put is skipped if the user was removed
+ * in between, so a load that read the row before a concurrent update committed can't cache the stale user after
+ * the update's eviction.  Generations are striped by username hash, so an unrelated removal may skip a put too.
+ *
+ * Hit, miss, eviction (capacity or TTL) and invalidation (explicit removal) counts are kept for monitoring.
+ */
+public class RswUserCache implements UserCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, CachedUser> users;
+    private final long[] generations = new long[GENERATION_STRIPES];
+    private long clearGeneration;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public RswUserCache(int maxSize, long ttlSecs) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.isTrue(ttlSecs > 0, "ttlSecs must be positive");
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSecs * 1000L;
+        this.users = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                if (size() > RswUserCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        CachedUser cached;
+        synchronized (users) {
+            cached = users.get(username);
+            if (cached != null && cached.isExpired(System.currentTimeMillis())) {
+                users.remove(username);
+                evictions.increment();
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.user.copy();
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        Assert.isInstanceOf(RswUser.class, user);
+        CachedUser cached = new CachedUser(((RswUser) user).copy(), System.currentTimeMillis() + ttlMillis);
+        synchronized (users) {
+            users.put(user.getUsername(), cached);
+        }
+    }
+
+    /**
+     * Cache the user unless it was removed since the generation was read
+     * @param user
+     * @param generation getGeneration(username) from before the user was loaded
+     * @return true if cached
+     */
+    public boolean putUserInCache(UserDetails user, long generation) {
+        Assert.isInstanceOf(RswUser.class, user);
+        CachedUser cached = new CachedUser(((RswUser) user).copy(), System.currentTimeMillis() + ttlMillis);
+        synchronized (users) {
+            if (generationOf(user.getUsername()) != generation) {
+                return false;
+            }
+            users.put(user.getUsername(), cached);
+            return true;
+        }
+    }
+
+    /**
+     * @param username
+     * @return current invalidation generation of the username
+     */
+    public long getGeneration(String username) {
+        synchronized (users) {
+            return generationOf(username);
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        synchronized (users) {
+            generations[generationStripe(username)]++;
+            if (users.remove(username) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (users) {
+            clearGeneration++;
+            invalidations.add(users.size());
+            users.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    private long generationOf(String username) {
+        return clearGeneration + generations[generationStripe(username)];
+    }
+
+    private static int generationStripe(String username) {
+        int hash = username.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private static class CachedUser {
+        private final RswUser user;
+        private final long expiresAt;
+
+        CachedUser(RswUser user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -4,27 +4,48 @@ import com.rsw.auth.domain.*;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
 import org.springframework.security.core.userdetails.jdbc.JdbcDaoImpl;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 
 /**
  * Custom implementation of the JDBC-based Spring Security UserDetailsService
  * This class is explicitly configured as a bean in the SecurityConfig and therefore is not @Service annotated
  *
+ * Reads that don't need to see the latest writes - user loading, userExists, searchUsers, getAllGroups - run in
+ * read-only transactions, which are served by a read replica when replicas are configured (see
+ * ReplicaRoutingDataSource).  Called from within a read-write transaction, they join it and read from the primary.
+ * Every username written is pinned to the primary for as long as a replica may not have the write, so the user is
+ * never loaded, and cached, in its state before the write.
  */
 @Transactional
 public class RswUserDetailsService extends JdbcDaoImpl {
@@ -32,40 +53,91 @@ public class RswUserDetailsService extends JdbcDaoImpl {
     private static final Logger LOGGER = LoggerFactory.getLogger(RswUserDetailsService.class);
 
     private PasswordService passwordService;
-
+    private boolean singleQueryLoad = true;
+    private int exportFetchSize = 500;
+    private UserCache userCache = new NullUserCache();
+    private GroupAuthorityCache groupAuthorityCache;
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    /*
+     * Usernames are case-insensitive and stored in lower case.  Every statement applies lower() to both sides of a
+     * username comparison, so it matches the lower(username) indexes of the schema, and lower() to every username
+     * it writes; the username is bound as given.  User cache keys are normalized the same way (normalizeUsername).
+     */
+    private static final String DEF_USER_COLUMNS =
+            "u.username, u.password, u.first_name, u.middle_initial, u.last_name, u.email_address, " +
+                " u.mobile_number, u.enabled, u.locked, u.password_expiry ";
     private static final String DEF_SELECT_USERS_BASE =
-            "select u.username, u.password, u.first_name, u.middle_initial, u.last_name, u.email_address, " +
-                " u.mobile_number, u.enabled, u.locked, u.password_expiry " +
+            "select " + DEF_USER_COLUMNS +
                 " from users u ";
+    /**
+     * keyset page of users matching case-insensitive prefixes (an empty prefix matches everything), ordered to
+     * match ix_users_search_last_name (sql/0005) so a page is a range scan starting at the previous page's last key
+     */
     private static final String DEF_SEARCH_USERS_QUERY = DEF_SELECT_USERS_BASE +
-                " where u.last_name LIKE ? " +
-                " order by u.last_name";
+                " where lower(u.last_name) collate \"C\" like ? " +
+                " and lower(u.email_address) collate \"C\" like ? " +
+                " and lower(u.username) collate \"C\" like ? " +
+                " and (lower(u.last_name) collate \"C\", u.username collate \"C\") > (?, ?) " +
+                " order by lower(u.last_name) collate \"C\", u.username collate \"C\" " +
+                " limit ?";
+    private static final int MAX_SEARCH_PAGE_SIZE = 500;
     static final String DEF_USERS_BY_USERNAME_QUERY = DEF_SELECT_USERS_BASE +
-                " where u.username = ?";
+                " where lower(u.username) = lower(?)";
+
+    /**
+     * user row, group names and direct user authorities in a single round trip;
+     * group authorities are expanded from the GroupAuthorityCache
+     */
+    static final String DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY =
+            "select " + DEF_USER_COLUMNS + ", " +
+                " array(select g.group_name " +
+                    " from groups g " +
+                    " join group_members gm on g.id = gm.group_id " +
+                    " where lower(gm.username) = lower(u.username)) as group_names, " +
+                " array(select distinct a.authority " +
+                    " from authorities a " +
+                    " where lower(a.username) = lower(u.username)) as user_authorities " +
+                " from users u " +
+                " where lower(u.username) = lower(?)";
+
+    /**
+     * every user (no password) with its group names, in username order; the aggregate is computed in the database
+     */
+    private static final String DEF_EXPORT_USERS_QUERY =
+            "select u.username, u.first_name, u.middle_initial, u.last_name, u.email_address, u.mobile_number, " +
+                " u.enabled, u.locked, u.password_expiry, " +
+                " array_remove(array_agg(g.group_name order by g.group_name), null) as group_names " +
+                " from users u " +
+                " left join group_members gm on lower(gm.username) = lower(u.username) " +
+                " left join groups g on g.id = gm.group_id " +
+                " group by u.username " +
+                " order by u.username";
+
     private static final String DEF_USER_EXISTS_SQL =
-            "select username from users where username = ?";
+            "select username from users where lower(username) = lower(?)";
 
     private static final String DEF_USER_AUTHORITIES_BY_USERNAME_QUERY =
             "select distinct a.authority " +
                     " from authorities a " +
-                    " where a.username = ? ";
+                    " where lower(a.username) = lower(?) ";
     private static final String DEF_GROUP_AUTHORITIES_BY_USERNAME_QUERY =
             "select distinct ga.authority " +
                     " from groups g " +
                     " join group_members gm on g.id = gm.group_id " +
                     " join group_authorities ga on g.id = ga.group_id " +
-                    " where gm.username = ? ";
+                    " where lower(gm.username) = lower(?) ";
     static final String DEF_GROUPNAMES_BY_USERNAME_QUERY =
             "select distinct g.group_name " +
                     " from groups g " +
                     " join group_members gm on g.id = gm.group_id " +
-                    " where gm.username = ? ";
+                    " where lower(gm.username) = lower(?) ";
 
     private static final String DEF_CREATE_USER_SQL =
             "insert into users " +
                 "(username, password, enabled, locked, password_expiry, " +
                 " first_name, middle_initial, last_name, email_address, mobile_number) " +
-                "values (?,?,?,?,?,?,?,?,?,?)";
+                "values (lower(?),?,?,?,?,?,?,?,?,?)";
 
     private static final String DEF_UPDATE_PROFILE_BASE =
             "update users set " +
@@ -75,15 +147,15 @@ public class RswUserDetailsService extends JdbcDaoImpl {
                 " email_address = ? ," +
                 " mobile_number = ? ";
     private static final String DEF_UPDATE_PROFILE = DEF_UPDATE_PROFILE_BASE +
-            " where username = ?";
+            " where lower(username) = lower(?)";
 
     private static final String DEF_UPDATE_ADMIN = DEF_UPDATE_PROFILE_BASE +
             ", enabled = ?, locked = ?, password_expiry = ? " +
-                " where username = ?";
+                " where lower(username) = lower(?)";
 
     private static final String DEF_UPDATE_ADMIN_WITH_PASSWORD = DEF_UPDATE_PROFILE_BASE +
             ", enabled = ?, locked = ?, password_expiry = ?, password = ? " +
-                " where username = ?";
+                " where lower(username) = lower(?)";
 
     private static final String DEF_FIND_GROUP_ID_SQL =
             "select id from groups where group_name = ?";
@@ -92,44 +164,92 @@ public class RswUserDetailsService extends JdbcDaoImpl {
             "select g.group_name from groups g";
 
     private static final String DEF_INSERT_AUTHORITY_SQL =
-            "insert into authorities (username, authority) values (?,?)";
+            "insert into authorities (username, authority) values (lower(?),?)";
 
     private static final String DEF_INSERT_GROUP_MEMBER_SQL =
-            "insert into group_members (group_id, username) values (?,?)";
+            "insert into group_members (group_id, username) values (?,lower(?))";
 
     private static final String DEF_DELETE_AUTHORITIES_SQL =
-            "delete from authorities where username = ?";
+            "delete from authorities where lower(username) = lower(?)";
 
     private static final String DEF_DELETE_GROUP_MEMBER_SQL =
-            "delete from group_members where username = ?";
+            "delete from group_members where lower(username) = lower(?)";
+
+    private static final String DEF_GROUP_IDS_BY_USERNAME_QUERY =
+            "select group_id from group_members where lower(username) = lower(?)";
+
+    private static final String DEF_DELETE_USER_AUTHORITY_SQL =
+            "delete from authorities where lower(username) = lower(?) and authority = ?";
+
+    private static final String DEF_DELETE_USER_GROUP_MEMBER_SQL =
+            "delete from group_members where group_id = ? and lower(username) = lower(?)";
 
     private static final String DEF_DELETE_USERS_SQL =
-            "delete from users where username = ?";
+            "delete from users where lower(username) = lower(?)";
 
     /**
-     * not used by Spring Security, and does not load groups or authorities - strictly for an admin list view of users
+     * not used by Spring Security, and does not load groups or authorities - strictly for an admin list view of users.
+     * Keyset paginated: each page continues after the (lastName, username) of the previous page's last user, so
+     * the cost of a page doesn't depend on how deep into the results it is.  Passwords are not returned.
+     * @param search
+     * @return
      */
-	public List<RswUser> searchUsers(String usernameSearchTerm) {
-        return getJdbcTemplate().query(DEF_SEARCH_USERS_QUERY, new String[] {usernameSearchTerm},
-                new RswUserRowMapper());
+    @Transactional(readOnly = true)
+	public UserSearchPage searchUsers(UserSearch search) {
+        Assert.isTrue(search.getPageSize() > 0 && search.getPageSize() <= MAX_SEARCH_PAGE_SIZE,
+                "pageSize must be between 1 and " + MAX_SEARCH_PAGE_SIZE);
+        final int pageSize = search.getPageSize();
+        List<RswUser> users = getJdbcTemplate().query(DEF_SEARCH_USERS_QUERY, ps -> {
+            ps.setString(1, prefixPattern(search.getLastNamePrefix()));
+            ps.setString(2, prefixPattern(search.getEmailPrefix()));
+            ps.setString(3, prefixPattern(search.getUsernamePrefix()));
+            ps.setString(4, lowerCase(search.getAfterLastName()));
+            ps.setString(5, StringUtils.defaultString(search.getAfterUsername()));
+            // one extra row tells whether there is a next page
+            ps.setInt(6, pageSize + 1);
+        }, new RswUserRowMapper());
+
+        if (users.size() <= pageSize) {
+            users.forEach(RswUser::eraseCredentials);
+            return new UserSearchPage(users, null, null);
+        }
+        users = new ArrayList<>(users.subList(0, pageSize));
+        users.forEach(RswUser::eraseCredentials);
+        RswUser last = users.get(pageSize - 1);
+        return new UserSearchPage(users, last.getLastName(), last.getUsername());
 	}
 
+    /**
+     * Streams every user, in username order, to the handler one row at a time - nothing is accumulated, so memory
+     * use is flat regardless of the number of users (see UserExportWriter).
+     * Rows are fetched through a server-side cursor, exportFetchSize at a time; the Postgres driver only uses a
+     * cursor inside a transaction, hence the (read-only) transaction, which holds a connection for the whole export.
+     * @param handler
+     */
+    @Transactional(readOnly = true)
+    public void exportUsers(RowCallbackHandler handler) {
+        getJdbcTemplate().query(new CursorStatementCreator(DEF_EXPORT_USERS_QUERY, exportFetchSize), handler);
+    }
+
+    @Transactional(readOnly = true)
     public List<String> getAllGroups() {
         return getJdbcTemplate().queryForList(DEF_GET_ALL_GROUPS_SQL, String.class);
     }
 
 	/**
      * create new user account with zero or more authorities directly specified;
-     * user password encoder to encode, and apply initial values for expiry and other statuses
+     * user password encoder to encode, and apply initial values for expiry and other statuses.
+     * The password is hashed once, and the hash reused for the password history.
      * @param user
      */
 	public void createUser(final RswUser user) {
         validateUserName(user.getUsername());
         passwordService.validatePassword(user.getPassword());
 
+        final String encodedPassword = passwordService.encodePassword(user.getUsername(), user.getPassword());
         getJdbcTemplate().update(DEF_CREATE_USER_SQL, ps -> {
             ps.setString(1, user.getUsername());
-            ps.setString(2, passwordService.encodePassword(user.getPassword()));
+            ps.setString(2, encodedPassword);
             ps.setBoolean(3, user.isEnabled());
             ps.setBoolean(4, ! user.isAccountNonLocked());
             setOptionalTimestamp(ps, 5, getDefaultPasswordExpiry(user));
@@ -140,7 +260,7 @@ public class RswUserDetailsService extends JdbcDaoImpl {
             setOptionalString(ps, 10, user.getMobileNumber());
         });
 
-        passwordService.recordPasswordHistory(user.getUsername(), user.getPassword());
+        passwordService.recordPasswordHistory(user.getUsername(), encodedPassword);
 
         if (getEnableAuthorities()) {
             insertUserAuthorities(user);
@@ -148,6 +268,7 @@ public class RswUserDetailsService extends JdbcDaoImpl {
         else if (getEnableGroups()) {
             insertGroups(user);
         }
+        evictUser(user.getUsername());
 	}
 
     /**
@@ -165,6 +286,7 @@ public class RswUserDetailsService extends JdbcDaoImpl {
 	       passwordService.changePassword(userUpdate.getUserName(), userUpdate.getOldPassword(),
                    userUpdate.getNewPassword());
         }
+        evictUser(userUpdate.getUserName());
 	}
 
     /**
@@ -177,20 +299,20 @@ public class RswUserDetailsService extends JdbcDaoImpl {
     public void updateUserAdmin(RswUser userUpdate) {
 	    if (! StringUtils.isEmpty(userUpdate.getPassword())) {
             passwordService.validateChangePassword(userUpdate.getUsername(), userUpdate.getPassword());
-            updateProfileAdmin(userUpdate, true);
-            passwordService.recordPasswordHistory(userUpdate.getUsername(), userUpdate.getPassword());
+            String encodedPassword = passwordService.encodePassword(userUpdate.getUsername(), userUpdate.getPassword());
+            updateProfileAdmin(userUpdate, encodedPassword);
+            passwordService.recordPasswordHistory(userUpdate.getUsername(), encodedPassword);
         } else {
-            updateProfileAdmin(userUpdate, false);
+            updateProfileAdmin(userUpdate, null);
         }
 
         if (getEnableAuthorities() && userUpdate.getAuthorities() != null && userUpdate.getAuthorities().size() > 0) {
-            removeAllAuthorities(userUpdate.getUsername());
-            insertUserAuthorities(userUpdate);
+            updateUserAuthorities(userUpdate);
         }
         else if (getEnableGroups() && userUpdate.getGroups() != null && userUpdate.getGroups().size() > 0) {
-            removeAllGroups(userUpdate.getUsername());
-            insertGroups(userUpdate);
+            updateGroups(userUpdate);
         }
+        evictUser(userUpdate.getUsername());
     }
 
     /**
@@ -198,6 +320,7 @@ public class RswUserDetailsService extends JdbcDaoImpl {
      * @param userName
      * @return
      */
+    @Transactional(readOnly = true)
     public boolean userExists(String userName) {
         List<String> users = getJdbcTemplate().queryForList(DEF_USER_EXISTS_SQL, new String[] {userName}, String.class);
 
@@ -214,6 +337,29 @@ public class RswUserDetailsService extends JdbcDaoImpl {
     public void changePassword(final String userName, final String oldPassword, final String newPassword)
             throws AuthenticationException {
         passwordService.changePassword(userName, oldPassword, newPassword);
+        evictUser(userName);
+    }
+
+    /**
+     * @param encodedPassword the user's stored hash
+     * @return true if the hash was produced with different parameters than passwords are now encoded with
+     */
+    public boolean needsPasswordUpgrade(String encodedPassword) {
+        return passwordService.needsUpgrade(encodedPassword);
+    }
+
+    /**
+     * Re-hash the password of a user who just authenticated with it, using the current encoder parameters.
+     * No-op if the stored password changed since it was verified.
+     * @param userName
+     * @param currentEncodedPassword
+     * @param rawPassword
+     */
+    public void upgradePassword(String userName, String currentEncodedPassword, String rawPassword) {
+        if (passwordService.upgradePassword(userName, currentEncodedPassword, rawPassword)) {
+            LOGGER.debug("Upgraded password hash for user '{}'", userName);
+            evictUser(userName);
+        }
     }
 
     /**
@@ -225,12 +371,69 @@ public class RswUserDetailsService extends JdbcDaoImpl {
         removeAllAuthorities(userName);
         passwordService.removePasswordHistory(userName);
         removeUser(userName);
+        evictUser(userName);
     }
 
     public void setPasswordService(PasswordService passwordService) {
         this.passwordService = passwordService;
     }
 
+    /**
+     * Cache consulted by loadUserByUsername, and invalidated by every write path in this class.
+     * Defaults to a NullUserCache (no caching).
+     * @param userCache
+     */
+    public void setUserCache(UserCache userCache) {
+        Assert.notNull(userCache, "userCache cannot be null");
+        this.userCache = userCache;
+    }
+
+    /**
+     * @param exportFetchSize rows fetched per round trip by exportUsers
+     */
+    public void setExportFetchSize(int exportFetchSize) {
+        Assert.isTrue(exportFetchSize > 0, "exportFetchSize must be positive");
+        this.exportFetchSize = exportFetchSize;
+    }
+
+    public UserCache getUserCache() {
+        return userCache;
+    }
+
+    /**
+     * Group to authority snapshot used by the single query load mode.  Cached users hold expanded authorities,
+     * so this node's user cache is cleared whenever the snapshot changes.
+     * @param groupAuthorityCache
+     */
+    public void setGroupAuthorityCache(GroupAuthorityCache groupAuthorityCache) {
+        this.groupAuthorityCache = groupAuthorityCache;
+        groupAuthorityCache.addChangeListener(this::clearLocalUserCache);
+    }
+
+    /**
+     * Present with read replicas only: written usernames are pinned to the primary, see loadUserByUsername
+     * @param replicaRoutingDataSource
+     */
+    public void setReplicaRoutingDataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        this.replicaRoutingDataSource = replicaRoutingDataSource;
+    }
+
+    /**
+     * Reload group authorities (on every node, when clustered), e.g. after editing group_authorities
+     */
+    public void refreshGroupAuthorities() {
+        groupAuthorityCache.refreshAllNodes();
+    }
+
+    /**
+     * true (default) to load the user, group names and authorities with one joined query;
+     * false to fall back to the JdbcDaoImpl multi-query flow (users, group authorities, group names)
+     * @param singleQueryLoad
+     */
+    public void setSingleQueryLoad(boolean singleQueryLoad) {
+        this.singleQueryLoad = singleQueryLoad;
+    }
+
     /**
      * For testing only
      * @param userName
@@ -242,13 +445,79 @@ public class RswUserDetailsService extends JdbcDaoImpl {
         return passwordService.authenticate(userName, password);
     }
 
+    /**
+     * Cached users are returned as-is (a copy - see RswUserCache); otherwise the user is loaded and cached, unless
+     * a concurrent update evicted it during the load.
+     * In single query mode, the user row, group names and authorities are fetched in one round trip and the
+     * RswUser is built directly by the result extractor, bypassing the JdbcDaoImpl multi-query template.
+     * Otherwise defers to JdbcDaoImpl, which calls loadUsersByUsername, loadUserAuthorities/loadGroupAuthorities
+     * and createUserDetails below - all within this method's read-only transaction, on the primary if the user
+     * was written too recently for the replicas to have the change.
+     * @param username
+     * @return
+     * @throws UsernameNotFoundException
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        String cacheKey = normalizeUsername(username);
+        UserDetails cachedUser = userCache.getUserFromCache(cacheKey);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+
+        RswUserCache localCache = getLocalUserCache();
+        long generation = (localCache != null ? localCache.getGeneration(cacheKey) : 0L);
+        UserDetails user = (replicaRoutingDataSource != null && replicaRoutingDataSource.isPinnedToPrimary(cacheKey) ?
+                ReplicaRoutingDataSource.onPrimary(() -> loadUser(username)) : loadUser(username));
+        if (localCache != null) {
+            // skipped if an update evicted the user while it loaded - the row read may predate the update
+            localCache.putUserInCache(user, generation);
+        } else {
+            userCache.putUserInCache(user);
+        }
+        return user;
+    }
+
+    private UserDetails loadUser(String username) {
+        return (singleQueryLoad ? loadUserSingleQuery(username) : super.loadUserByUsername(username));
+    }
+
+    private RswUser loadUserSingleQuery(String username) {
+        RswUser user;
+        Object event = LoginEvents.begin(LoginEvents.Stage.LOAD_USER_SINGLE_QUERY);
+        try {
+            user = getJdbcTemplate().query(DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY, new String[] {username},
+                    new RswUserResultSetExtractor(groupAuthorityCache, getEnableAuthorities(), getEnableGroups()));
+        } finally {
+            LoginEvents.commit(event, username);
+        }
+
+        if (user == null) {
+            logger.debug("Query returned no results for user '" + username + "'");
+            throw new UsernameNotFoundException(messages.getMessage("JdbcDaoImpl.notFound",
+                    new Object[] {username}, "Username {0} not found"));
+        }
+        if (user.getAuthorities().isEmpty()) {
+            logger.debug("User '" + username + "' has no authorities and will be treated as 'not found'");
+            throw new UsernameNotFoundException(messages.getMessage("JdbcDaoImpl.noAuthority",
+                    new Object[] {username}, "User {0} has no GrantedAuthority"));
+        }
+        return user;
+    }
+
     /**
      * Run custom select query to get custom attributes from User table
      */
 	@Override
 	protected List<UserDetails> loadUsersByUsername(String username) {
-        return getJdbcTemplate().query(DEF_USERS_BY_USERNAME_QUERY, new String[] {username},
-                new UserDetailsRowMapper());
+        Object event = LoginEvents.begin(LoginEvents.Stage.LOAD_USERS_BY_USERNAME);
+        try {
+            return getJdbcTemplate().query(DEF_USERS_BY_USERNAME_QUERY, new String[] {username},
+                    new UserDetailsRowMapper());
+        } finally {
+            LoginEvents.commit(event, username);
+        }
 	}
 
     /**
@@ -275,8 +544,13 @@ public class RswUserDetailsService extends JdbcDaoImpl {
         if (! getEnableGroups()) {
             return new ArrayList<>();
         }
-        return getJdbcTemplate().query(DEF_GROUP_AUTHORITIES_BY_USERNAME_QUERY, new String[] {username},
-                new GrantedAuthorityRowMapper());
+        Object event = LoginEvents.begin(LoginEvents.Stage.LOAD_GROUP_AUTHORITIES);
+        try {
+            return getJdbcTemplate().query(DEF_GROUP_AUTHORITIES_BY_USERNAME_QUERY, new String[] {username},
+                    new GrantedAuthorityRowMapper());
+        } finally {
+            LoginEvents.commit(event, username);
+        }
     }
 
     /**
@@ -290,20 +564,68 @@ public class RswUserDetailsService extends JdbcDaoImpl {
 	    Assert.isInstanceOf(RswUser.class, fetchedUser);
 	    RswUser source = (RswUser) fetchedUser;
 
-        RswUser newUser = new RswUser(source.getUsername(), source.getPassword(), source.isEnabled(),
-                source.getPasswordExpiry(), ! source.isAccountNonLocked(), combinedAuthorities);
+        Object event = LoginEvents.begin(LoginEvents.Stage.CREATE_USER_DETAILS);
+        try {
+            RswUser newUser = new RswUser(source.getUsername(), source.getPassword(), source.isEnabled(),
+                    source.getPasswordExpiry(), ! source.isAccountNonLocked(), combinedAuthorities);
+
+            List<RswGroup> groupNames = getJdbcTemplate().query(DEF_GROUPNAMES_BY_USERNAME_QUERY,
+                    new String[] {username}, new RswGroupRowMapper());
+
+            newUser.getGroups().addAll(groupNames);
+            newUser.setFirstName(source.getFirstName())
+                    .setMiddleInitial(source.getMiddleInitial())
+                    .setLastName(source.getLastName())
+                    .setEmailAddress(source.getEmailAddress())
+                    .setMobileNumber(source.getMobileNumber());
+            return newUser;
+        } finally {
+            LoginEvents.commit(event, username);
+        }
+	}
 
-        List<RswGroup> groupNames = getJdbcTemplate().query(DEF_GROUPNAMES_BY_USERNAME_QUERY, new String[] {username},
-                new RswGroupRowMapper());
+    /**
+     * Invalidate the cached user immediately, so reads later in the current transaction see the change, and again
+     * once the transaction completes, in case a concurrent load cached the pre-commit state in between.
+     * With read replicas, the user is also pinned to the primary from the commit on (see loadUserByUsername).
+     * @param userName
+     */
+    private void evictUser(String userName) {
+        final String cacheKey = normalizeUsername(userName);
+        userCache.removeUserFromCache(cacheKey);
+        pinToPrimary(cacheKey);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    pinToPrimary(cacheKey);
+                    userCache.removeUserFromCache(cacheKey);
+                }
+            });
+        }
+    }
 
-        newUser.getGroups().addAll(groupNames);
-        newUser.setFirstName(source.getFirstName())
-                .setMiddleInitial(source.getMiddleInitial())
-                .setLastName(source.getLastName())
-                .setEmailAddress(source.getEmailAddress())
-                .setMobileNumber(source.getMobileNumber());
-        return newUser;
-	}
+    private void pinToPrimary(String cacheKey) {
+        if (replicaRoutingDataSource != null) {
+            replicaRoutingDataSource.pinToPrimary(cacheKey);
+        }
+    }
+
+    private void clearLocalUserCache() {
+        RswUserCache localCache = getLocalUserCache();
+        if (localCache != null) {
+            localCache.clear();
+        }
+    }
+
+    /**
+     * @return the node-local RswUserCache, or null if another UserCache is in use
+     */
+    private RswUserCache getLocalUserCache() {
+        UserCache localCache = (userCache instanceof ClusteredUserCache ?
+                ((ClusteredUserCache) userCache).getLocalCache() : userCache);
+        return (localCache instanceof RswUserCache ? (RswUserCache) localCache : null);
+    }
 
     private void updateProfile(final UserProfileUpdate user) {
         getJdbcTemplate().update(DEF_UPDATE_PROFILE, ps -> {
@@ -316,7 +638,12 @@ public class RswUserDetailsService extends JdbcDaoImpl {
         });
     }
 
-    private void updateProfileAdmin(final RswUser user, final boolean isChangePassword) {
+    /**
+     * @param user
+     * @param encodedPassword new password hash, or null to leave the password unchanged
+     */
+    private void updateProfileAdmin(final RswUser user, final String encodedPassword) {
+        final boolean isChangePassword = (encodedPassword != null);
         String updateSql = (isChangePassword ? DEF_UPDATE_ADMIN_WITH_PASSWORD : DEF_UPDATE_ADMIN);
         getJdbcTemplate().update(updateSql, ps -> {
             ps.setString(1, user.getFirstName());
@@ -331,7 +658,7 @@ public class RswUserDetailsService extends JdbcDaoImpl {
                 ps.setString(9, user.getUsername());
             } else {
                 setOptionalTimestamp(ps, 8, getDefaultPasswordExpiry(user));
-                ps.setString(9, passwordService.encodePassword(user.getPassword()));
+                ps.setString(9, encodedPassword);
                 ps.setString(10, user.getUsername());
             }
         });
@@ -343,9 +670,24 @@ public class RswUserDetailsService extends JdbcDaoImpl {
 
     private void insertUserAuthorities(UserDetails user) {
         Assert.isTrue(user.getAuthorities() != null);
-        for (GrantedAuthority auth : user.getAuthorities()) {
-            getJdbcTemplate().update(DEF_INSERT_AUTHORITY_SQL, user.getUsername(), auth.getAuthority());
-        }
+        batchAuthorities(DEF_INSERT_AUTHORITY_SQL, user.getUsername(), authorityNames(user));
+    }
+
+    /**
+     * Replaces the user's direct authorities with those of the user, deleting and inserting only the rows that
+     * differ, so unchanged rows are neither rewritten nor locked
+     * @param user
+     */
+    private void updateUserAuthorities(UserDetails user) {
+        Set<String> target = authorityNames(user);
+        Set<String> current = new HashSet<>(getJdbcTemplate().queryForList(DEF_USER_AUTHORITIES_BY_USERNAME_QUERY,
+                String.class, user.getUsername()));
+
+        Set<String> removed = new LinkedHashSet<>(current);
+        removed.removeAll(target);
+        target.removeAll(current);
+        batchAuthorities(DEF_DELETE_USER_AUTHORITY_SQL, user.getUsername(), removed);
+        batchAuthorities(DEF_INSERT_AUTHORITY_SQL, user.getUsername(), target);
     }
 
     private void removeAllGroups(String userName) {
@@ -354,26 +696,142 @@ public class RswUserDetailsService extends JdbcDaoImpl {
 
     private void insertGroups(RswUser user) {
         Assert.isTrue(user.getGroups() != null);
-        for (RswGroup groupName : user.getGroups()) {
-            addUserToGroup(user.getUsername(), groupName.toString());
-        }
+        batchGroupMembers(DEF_INSERT_GROUP_MEMBER_SQL, user.getUsername(), groupIds(user.getGroups()));
+    }
+
+    /**
+     * Replaces the user's group memberships with the groups of the user, deleting and inserting only the
+     * memberships that differ
+     * @param user
+     */
+    private void updateGroups(RswUser user) {
+        Set<Integer> target = groupIds(user.getGroups());
+        Set<Integer> current = new HashSet<>(getJdbcTemplate().queryForList(DEF_GROUP_IDS_BY_USERNAME_QUERY,
+                Integer.class, user.getUsername()));
+
+        Set<Integer> removed = new LinkedHashSet<>(current);
+        removed.removeAll(target);
+        target.removeAll(current);
+        batchGroupMembers(DEF_DELETE_USER_GROUP_MEMBER_SQL, user.getUsername(), removed);
+        batchGroupMembers(DEF_INSERT_GROUP_MEMBER_SQL, user.getUsername(), target);
     }
 
     private void removeUser(String userName) {
         getJdbcTemplate().update(DEF_DELETE_USERS_SQL, userName);
     }
 
-    private void addUserToGroup(final String username, final String groupName) {
-        logger.debug("Adding user '" + username + "' to group '" + groupName + "'");
-        final Integer id = findGroupId(groupName);
-        getJdbcTemplate().update(DEF_INSERT_GROUP_MEMBER_SQL, ps -> {
-            ps.setInt(1, id);
-            ps.setString(2, username);
+    /**
+     * One JDBC batch of (username, authority) statements
+     * @param sql insert or delete, with username and authority parameters in that order
+     * @param username
+     * @param authorities
+     */
+    private void batchAuthorities(String sql, final String username, Collection<String> authorities) {
+        if (authorities.isEmpty()) {
+            return;
+        }
+        final List<String> rows = new ArrayList<>(authorities);
+        getJdbcTemplate().batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int ix) throws SQLException {
+                ps.setString(1, username);
+                ps.setString(2, rows.get(ix));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
         });
     }
 
-    private int findGroupId(String group) {
-        return getJdbcTemplate().queryForObject(DEF_FIND_GROUP_ID_SQL, Integer.class, group);
+    /**
+     * One JDBC batch of group_members statements
+     * @param sql insert or delete, with group_id and username parameters in that order
+     * @param username
+     * @param groupIds
+     */
+    private void batchGroupMembers(String sql, final String username, Collection<Integer> groupIds) {
+        if (groupIds.isEmpty()) {
+            return;
+        }
+        logger.debug("Group membership of user '" + username + "' - " + sql + " " + groupIds);
+        final List<Integer> rows = new ArrayList<>(groupIds);
+        getJdbcTemplate().batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int ix) throws SQLException {
+                ps.setInt(1, rows.get(ix));
+                ps.setString(2, username);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    private static Set<String> authorityNames(UserDetails user) {
+        Set<String> names = new LinkedHashSet<>();
+        for (GrantedAuthority auth : user.getAuthorities()) {
+            names.add(auth.getAuthority());
+        }
+        return names;
+    }
+
+    /**
+     * @param groups
+     * @return distinct group ids, resolved from the GroupAuthorityCache
+     */
+    private Set<Integer> groupIds(Collection<RswGroup> groups) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (RswGroup group : groups) {
+            ids.add(findGroupId(group));
+        }
+        return ids;
+    }
+
+    /**
+     * Group id from the GroupAuthorityCache name-to-id map; a group created since the last refresh is looked up
+     * directly
+     * @param group
+     * @return
+     */
+    private int findGroupId(RswGroup group) {
+        Integer id = groupAuthorityCache.getGroupId(group);
+        if (id == null) {
+            id = getJdbcTemplate().queryForObject(DEF_FIND_GROUP_ID_SQL, Integer.class, group.name());
+        }
+        return id;
+    }
+
+    /**
+     * @param username
+     * @return the username as stored (and as cached) - lower case
+     */
+    static String normalizeUsername(String username) {
+        return (username == null ? null : username.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param prefix
+     * @return case-insensitive LIKE pattern matching values starting with the prefix, LIKE wildcards escaped
+     */
+    static String prefixPattern(String prefix) {
+        String lower = lowerCase(prefix);
+        StringBuilder pattern = new StringBuilder(lower.length() + 1);
+        for (int ix = 0; ix < lower.length(); ix++) {
+            char c = lower.charAt(ix);
+            if (c == '%' || c == '_' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    private static String lowerCase(String value) {
+        return (value == null ? "" : value.toLowerCase(Locale.ROOT));
     }
 
     private void validateUserName(String userName) {
@@ -404,4 +862,29 @@ public class RswUserDetailsService extends JdbcDaoImpl {
        return user.getPasswordExpiry();
     }
 
+    /**
+     * Forward-only, read-only statement with a fetch size, exposing its SQL for statement metrics
+     */
+    private static final class CursorStatementCreator implements PreparedStatementCreator, SqlProvider {
+        private final String sql;
+        private final int fetchSize;
+
+        CursorStatementCreator(String sql, int fetchSize) {
+            this.sql = sql;
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }
+
+        @Override
+        public String getSql() {
+            return sql;
+        }
+    }
+
 }
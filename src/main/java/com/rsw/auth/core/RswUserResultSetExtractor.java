@@ -0,0 +1,86 @@
+package com.rsw.auth.core;
+
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds a fully populated RswUser (authorities and groups included) from the single row returned by
+ * RswUserDetailsService.DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY, where group names and user authorities
+ * are aggregated into array columns.  Group authorities are expanded in memory from the GroupAuthorityCache,
+ * and all authorities are the cache's shared instances.
+ *
+ * Returns null when no row is found.
+ */
+public class RswUserResultSetExtractor implements ResultSetExtractor<RswUser> {
+
+    private final GroupAuthorityCache groupAuthorityCache;
+    private final boolean includeUserAuthorities;
+    private final boolean includeGroups;
+
+    public RswUserResultSetExtractor(GroupAuthorityCache groupAuthorityCache, boolean includeUserAuthorities,
+                                     boolean includeGroups) {
+        this.groupAuthorityCache = groupAuthorityCache;
+        this.includeUserAuthorities = includeUserAuthorities;
+        this.includeGroups = includeGroups;
+    }
+
+    @Override
+    public RswUser extractData(ResultSet rs) throws SQLException {
+        if (! rs.next()) {
+            return null;
+        }
+
+        String username = rs.getString("username");
+        String password = rs.getString("password");
+        boolean enabled = rs.getBoolean("enabled");
+        boolean locked = rs.getBoolean("locked");
+        Timestamp passwordExpiryTs = (Timestamp) rs.getObject("password_expiry");
+        LocalDateTime passwordExpiry = (passwordExpiryTs != null ? passwordExpiryTs.toLocalDateTime() : null);
+
+        Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+        if (includeUserAuthorities) {
+            for (String authority : getStrings(rs, "user_authorities")) {
+                authorities.add(groupAuthorityCache.intern(authority));
+            }
+        }
+        List<RswGroup> groups = new ArrayList<>();
+        if (includeGroups) {
+            for (String groupName : getStrings(rs, "group_names")) {
+                groups.add(RswGroup.valueOf(groupName));
+            }
+            groupAuthorityCache.expandAuthorities(groups, authorities);
+        }
+
+        RswUser user = new RswUser(username, password, enabled, passwordExpiry, locked, authorities);
+        user.setGroups(groups);
+        return user.setFirstName(rs.getString("first_name"))
+                .setMiddleInitial(rs.getString("middle_initial"))
+                .setLastName(rs.getString("last_name"))
+                .setEmailAddress(rs.getString("email_address"))
+                .setMobileNumber(rs.getString("mobile_number"));
+    }
+
+    static String[] getStrings(ResultSet rs, String column) throws SQLException {
+        Array array = rs.getArray(column);
+        if (array == null) {
+            return new String[0];
+        }
+        try {
+            return (String[]) array.getArray();
+        } finally {
+            array.free();
+        }
+    }
+}
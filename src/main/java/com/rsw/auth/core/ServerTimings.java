@@ -0,0 +1,108 @@
+package com.rsw.auth.core;
+
+/**
+ * Per-request accumulator of time spent in each phase (db, hash, sign, serialize), reported in a Server-Timing
+ * response header by ServerTimingFilter.
+ *
+ * Each thread reuses one accumulator; add() is a no-op unless the filter has started one for the current
+ * request, so instrumented code can call it unconditionally.  Time is attributed to the thread that handles the
+ * request, so BCrypt is timed by the caller waiting on the hashing pool, including any queueing.
+ */
+public final class ServerTimings {
+
+    public enum Phase {
+        DB("db"),
+        HASH("hash"),
+        SIGN("sign"),
+        SERIALIZE("serialize");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<ServerTimings> CURRENT = ThreadLocal.withInitial(ServerTimings::new);
+
+    private final long[] nanos = new long[PHASES.length];
+    private final int[] counts = new int[PHASES.length];
+    private boolean active;
+
+    private ServerTimings() {
+    }
+
+    /**
+     * Starts accumulating for the request on the current thread
+     * @return the thread's (reset) accumulator
+     */
+    public static ServerTimings start() {
+        ServerTimings timings = CURRENT.get();
+        for (int ix = 0; ix < PHASES.length; ix++) {
+            timings.nanos[ix] = 0L;
+            timings.counts[ix] = 0;
+        }
+        timings.active = true;
+        return timings;
+    }
+
+    /**
+     * @param phase
+     * @param elapsedNanos
+     */
+    public static void add(Phase phase, long elapsedNanos) {
+        ServerTimings timings = CURRENT.get();
+        if (timings.active) {
+            timings.nanos[phase.ordinal()] += elapsedNanos;
+            timings.counts[phase.ordinal()]++;
+        }
+    }
+
+    public void stop() {
+        active = false;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public int getCount(Phase phase) {
+        return counts[phase.ordinal()];
+    }
+
+    /**
+     * @param totalNanos whole request
+     * @return Server-Timing header value, e.g. db;dur=1.52;desc="3", hash;dur=62.10;desc="1", total;dur=66.03
+     * (durations in milliseconds, desc is the number of operations); phases with no operations are omitted
+     */
+    public String toHeader(long totalNanos) {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : PHASES) {
+            int count = counts[phase.ordinal()];
+            if (count > 0) {
+                appendMetric(header, phase.metricName, nanos[phase.ordinal()]);
+                header.append(";desc=\"").append(count).append('"');
+            }
+        }
+        appendMetric(header, "total", totalNanos);
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        long hundredthsOfMillis = (nanos + 5000L) / 10000L;
+        header.append(name).append(";dur=").append(hundredthsOfMillis / 100).append('.');
+        long fraction = hundredthsOfMillis % 100;
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+}
@@ -0,0 +1,435 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory TokenStore for single node / dev deployments of the oauth2 token type, as a concurrent alternative
+ * to Spring's InMemoryTokenStore (which synchronizes on its maps and only flushes expired tokens every N writes).
+ *
+ * Access and refresh tokens are striped by token hash across a power-of-two number of ConcurrentHashMaps.
+ * Each entry carries its authentication, so a lookup is a single map read.  The client and client:user
+ * secondary indexes, and the refresh token to access token link, hold token values only.  The link is written
+ * by storeAccessToken, since DefaultTokenServices stores the access token before its refresh token.
+ *
+ * Expiry is proactive: every token is also registered in an index ordered by expiration time, and a reaper
+ * thread removes tokens as they expire.  The store is bounded by maxTokens; when full, the tokens closest to
+ * expiry are evicted first, so memory stays flat under sustained client_credentials load.
+ */
+public class ShardedTokenStore implements TokenStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedTokenStore.class);
+
+    private final ConcurrentHashMap<String, AccessEntry>[] accessShards;
+    private final ConcurrentHashMap<String, RefreshEntry>[] refreshShards;
+    private final int shardMask;
+    private final int maxTokens;
+
+    private final ConcurrentHashMap<String, String> authenticationToAccessToken = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> refreshTokenToAccessToken = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> clientIndex = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> userIndex = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListSet<Expiry> expiryIndex = new ConcurrentSkipListSet<>();
+    private final AtomicLong expirySequence = new AtomicLong();
+    private final AtomicInteger tokenCount = new AtomicInteger();
+    private final ScheduledExecutorService reaper;
+
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+    /**
+     * @param shards number of stripes, rounded up to a power of two
+     * @param maxTokens maximum number of access plus refresh tokens held
+     * @param reapIntervalMillis how often expired tokens are removed
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedTokenStore(int shards, int maxTokens, long reapIntervalMillis) {
+        Assert.isTrue(shards > 0, "shards must be positive");
+        Assert.isTrue(maxTokens > 0, "maxTokens must be positive");
+        Assert.isTrue(reapIntervalMillis > 0, "reapIntervalMillis must be positive");
+        int shardCount = Integer.highestOneBit(shards - 1) << 1;
+        shardCount = Math.max(shardCount, 1);
+        this.shardMask = shardCount - 1;
+        this.maxTokens = maxTokens;
+        this.accessShards = new ConcurrentHashMap[shardCount];
+        this.refreshShards = new ConcurrentHashMap[shardCount];
+        for (int ix = 0; ix < shardCount; ix++) {
+            accessShards[ix] = new ConcurrentHashMap<>();
+            refreshShards[ix] = new ConcurrentHashMap<>();
+        }
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-store-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(this::removeExpired, reapIntervalMillis, reapIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+
+    public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+    }
+
+    // ---- access tokens
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        AccessEntry entry = accessShard(token).get(token);
+        return (entry == null ? null : entry.authentication);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        String tokenValue = token.getValue();
+        String clientId = authentication.getOAuth2Request().getClientId();
+        String userKey = (authentication.isClientOnly() ? null : userKey(clientId, authentication.getName()));
+        String refreshTokenValue = (token.getRefreshToken() == null ? null : token.getRefreshToken().getValue());
+        AccessEntry entry = new AccessEntry(token, authentication, authenticationKeyGenerator.extractKey(authentication),
+                clientId, userKey, refreshTokenValue,
+                newExpiry(tokenValue, false, token.getExpiration()));
+
+        AccessEntry previous = accessShard(tokenValue).put(tokenValue, entry);
+        if (previous != null) {
+            unlinkAccess(previous);
+        } else {
+            tokenCount.incrementAndGet();
+        }
+
+        authenticationToAccessToken.put(entry.authenticationKey, tokenValue);
+        addToIndex(clientIndex, clientId, tokenValue);
+        if (userKey != null) {
+            addToIndex(userIndex, userKey, tokenValue);
+        }
+        if (refreshTokenValue != null) {
+            refreshTokenToAccessToken.put(refreshTokenValue, tokenValue);
+        }
+        expiryIndex.add(entry.expiry);
+        enforceCapacity();
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        AccessEntry entry = accessShard(tokenValue).get(tokenValue);
+        return (entry == null ? null : entry.token);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        removeAccessToken(token.getValue());
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        String key = authenticationKeyGenerator.extractKey(authentication);
+        String tokenValue = authenticationToAccessToken.get(key);
+        if (tokenValue == null) {
+            return null;
+        }
+        AccessEntry entry = accessShard(tokenValue).get(tokenValue);
+        if (entry == null) {
+            return null;
+        }
+        if (! key.equals(entry.authenticationKey)) {
+            // the authentication changed (e.g. new authorities) - keep the token but re-index it
+            storeAccessToken(entry.token, authentication);
+        }
+        return entry.token;
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return resolveTokens(userIndex.get(userKey(clientId, userName)));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return resolveTokens(clientIndex.get(clientId));
+    }
+
+    // ---- refresh tokens
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        String tokenValue = refreshToken.getValue();
+        Date expiration = (refreshToken instanceof ExpiringOAuth2RefreshToken ?
+                ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() : null);
+        RefreshEntry entry = new RefreshEntry(refreshToken, authentication, newExpiry(tokenValue, true, expiration));
+
+        RefreshEntry previous = refreshShard(tokenValue).put(tokenValue, entry);
+        if (previous != null) {
+            expiryIndex.remove(previous.expiry);
+        } else {
+            tokenCount.incrementAndGet();
+        }
+        expiryIndex.add(entry.expiry);
+        enforceCapacity();
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        RefreshEntry entry = refreshShard(tokenValue).get(tokenValue);
+        return (entry == null ? null : entry.token);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        RefreshEntry entry = refreshShard(token.getValue()).get(token.getValue());
+        return (entry == null ? null : entry.authentication);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        removeRefreshToken(token.getValue());
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        String accessTokenValue = refreshTokenToAccessToken.remove(refreshToken.getValue());
+        if (accessTokenValue != null) {
+            removeAccessToken(accessTokenValue);
+        }
+    }
+
+    // ---- expiry and capacity
+
+    /**
+     * Remove every token whose expiration has passed; run periodically by the reaper
+     */
+    public void removeExpired() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Expiry expiry : expiryIndex) {
+                if (expiry.expiresAt > now) {
+                    break;
+                }
+                if (expiryIndex.remove(expiry) && remove(expiry)) {
+                    expiredCount.increment();
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Token expiry pass failed", e);
+        }
+    }
+
+    private void enforceCapacity() {
+        while (tokenCount.get() > maxTokens) {
+            Expiry expiry = expiryIndex.pollFirst();
+            if (expiry == null) {
+                return;
+            }
+            if (remove(expiry)) {
+                evictedCount.increment();
+            }
+        }
+    }
+
+    private boolean remove(Expiry expiry) {
+        if (expiry.refreshToken) {
+            RefreshEntry entry = refreshShard(expiry.tokenValue).get(expiry.tokenValue);
+            return entry != null && entry.expiry == expiry && removeRefreshToken(expiry.tokenValue);
+        }
+        AccessEntry entry = accessShard(expiry.tokenValue).get(expiry.tokenValue);
+        return entry != null && entry.expiry == expiry && removeAccessToken(expiry.tokenValue);
+    }
+
+    private boolean removeAccessToken(String tokenValue) {
+        AccessEntry entry = accessShard(tokenValue).remove(tokenValue);
+        if (entry == null) {
+            return false;
+        }
+        tokenCount.decrementAndGet();
+        unlinkAccess(entry);
+        return true;
+    }
+
+    private boolean removeRefreshToken(String tokenValue) {
+        RefreshEntry entry = refreshShard(tokenValue).remove(tokenValue);
+        if (entry == null) {
+            return false;
+        }
+        tokenCount.decrementAndGet();
+        expiryIndex.remove(entry.expiry);
+        refreshTokenToAccessToken.remove(tokenValue);
+        return true;
+    }
+
+    private void unlinkAccess(AccessEntry entry) {
+        String tokenValue = entry.token.getValue();
+        expiryIndex.remove(entry.expiry);
+        authenticationToAccessToken.remove(entry.authenticationKey, tokenValue);
+        removeFromIndex(clientIndex, entry.clientId, tokenValue);
+        if (entry.userKey != null) {
+            removeFromIndex(userIndex, entry.userKey, tokenValue);
+        }
+        if (entry.refreshTokenValue != null) {
+            refreshTokenToAccessToken.remove(entry.refreshTokenValue, tokenValue);
+        }
+    }
+
+    // ---- helpers
+
+    private Expiry newExpiry(String tokenValue, boolean refreshToken, Date expiration) {
+        long expiresAt = (expiration == null ? Long.MAX_VALUE : expiration.getTime());
+        return new Expiry(tokenValue, refreshToken, expiresAt, expirySequence.incrementAndGet());
+    }
+
+    private ConcurrentHashMap<String, AccessEntry> accessShard(String tokenValue) {
+        return accessShards[shardIndex(tokenValue)];
+    }
+
+    private ConcurrentHashMap<String, RefreshEntry> refreshShard(String tokenValue) {
+        return refreshShards[shardIndex(tokenValue)];
+    }
+
+    private int shardIndex(String tokenValue) {
+        int hash = tokenValue.hashCode();
+        return (hash ^ (hash >>> 16)) & shardMask;
+    }
+
+    private static String userKey(String clientId, String userName) {
+        return clientId + ":" + userName;
+    }
+
+    private static void addToIndex(ConcurrentHashMap<String, Set<String>> index, String key, String tokenValue) {
+        index.compute(key, (k, values) -> {
+            Set<String> tokens = (values == null ? ConcurrentHashMap.newKeySet() : values);
+            tokens.add(tokenValue);
+            return tokens;
+        });
+    }
+
+    private static void removeFromIndex(ConcurrentHashMap<String, Set<String>> index, String key, String tokenValue) {
+        index.computeIfPresent(key, (k, values) -> {
+            values.remove(tokenValue);
+            return (values.isEmpty() ? null : values);
+        });
+    }
+
+    private Collection<OAuth2AccessToken> resolveTokens(Set<String> tokenValues) {
+        if (tokenValues == null) {
+            return Collections.emptySet();
+        }
+        List<OAuth2AccessToken> tokens = new ArrayList<>(tokenValues.size());
+        for (String tokenValue : tokenValues) {
+            OAuth2AccessToken token = readAccessToken(tokenValue);
+            if (token != null) {
+                tokens.add(token);
+            }
+        }
+        return Collections.unmodifiableCollection(tokens);
+    }
+
+    // ---- monitoring
+
+    public int getTokenCount() {
+        return tokenCount.get();
+    }
+
+    public int getAccessTokenCount() {
+        int count = 0;
+        for (ConcurrentHashMap<String, AccessEntry> shard : accessShards) {
+            count += shard.size();
+        }
+        return count;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    public int getShardCount() {
+        return accessShards.length;
+    }
+
+    private static final class AccessEntry {
+        final OAuth2AccessToken token;
+        final OAuth2Authentication authentication;
+        final String authenticationKey;
+        final String clientId;
+        final String userKey;
+        final String refreshTokenValue;
+        final Expiry expiry;
+
+        AccessEntry(OAuth2AccessToken token, OAuth2Authentication authentication, String authenticationKey,
+                    String clientId, String userKey, String refreshTokenValue, Expiry expiry) {
+            this.token = token;
+            this.authentication = authentication;
+            this.authenticationKey = authenticationKey;
+            this.clientId = clientId;
+            this.userKey = userKey;
+            this.refreshTokenValue = refreshTokenValue;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class RefreshEntry {
+        final OAuth2RefreshToken token;
+        final OAuth2Authentication authentication;
+        final Expiry expiry;
+
+        RefreshEntry(OAuth2RefreshToken token, OAuth2Authentication authentication, Expiry expiry) {
+            this.token = token;
+            this.authentication = authentication;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Position in the expiry index - ordered by expiration, then by insertion to keep entries distinct
+     */
+    private static final class Expiry implements Comparable<Expiry> {
+        final String tokenValue;
+        final boolean refreshToken;
+        final long expiresAt;
+        final long sequence;
+
+        Expiry(String tokenValue, boolean refreshToken, long expiresAt, long sequence) {
+            this.tokenValue = tokenValue;
+            this.refreshToken = refreshToken;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            int result = Long.compare(expiresAt, other.expiresAt);
+            return (result != 0 ? result : Long.compare(sequence, other.sequence));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Checks a batch of tokens with the same semantics as /oauth/check_token, verifying them in parallel on a
+ * dedicated bounded pool.  When the pool is saturated the remaining tokens are checked on the calling thread,
+ * so a batch is never rejected outright.
+ *
+ * Each token gets its own result, in request order: the check_token claims plus "active": true, or
+ * "active": false with the OAuth2 error code and description.  A failing token never fails the batch.
+ */
+public class TokenIntrospectionService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenIntrospectionService.class);
+
+    public static final String ACTIVE = "active";
+    public static final String ERROR = "error";
+    public static final String ERROR_DESCRIPTION = "error_description";
+
+    private final Function<String, Map<String, ?>> tokenChecker;
+    private final ThreadPoolExecutor executor;
+    private final int maxBatchSize;
+
+    /**
+     * @param tokenChecker single token check, e.g. CheckTokenEndpoint::checkToken
+     * @param threads verification threads; zero or less to use the number of available processors
+     * @param queueCapacity tokens allowed to wait for a thread
+     * @param maxBatchSize largest batch accepted
+     */
+    public TokenIntrospectionService(Function<String, Map<String, ?>> tokenChecker, int threads, int queueCapacity,
+                                     int maxBatchSize) {
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+        int poolSize = (threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.tokenChecker = tokenChecker;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new IntrospectionThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param tokens
+     * @return one result per token, in the same order
+     */
+    public List<Map<String, Object>> introspect(List<String> tokens) {
+        Assert.notNull(tokens, "tokens are required");
+        Assert.isTrue(tokens.size() <= maxBatchSize, "At most " + maxBatchSize + " tokens per batch");
+
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(tokens.size());
+        // the caller checks the last token itself, and any token the pool has no room for
+        for (int ix = 0; ix < tokens.size() - 1; ix++) {
+            final String token = tokens.get(ix);
+            try {
+                futures.add(executor.submit(() -> check(token)));
+            } catch (RejectedExecutionException e) {
+                futures.add(CompletableFuture.completedFuture(check(token)));
+            }
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(tokens.size());
+        Map<String, Object> last = (tokens.isEmpty() ? null : check(tokens.get(tokens.size() - 1)));
+        for (Future<Map<String, Object>> future : futures) {
+            results.add(await(future));
+        }
+        if (last != null) {
+            results.add(last);
+        }
+        return results;
+    }
+
+    private Map<String, Object> check(String token) {
+        try {
+            Map<String, ?> claims = tokenChecker.apply(token);
+            Map<String, Object> result = new LinkedHashMap<>(claims.size() + 2);
+            result.put(ACTIVE, true);
+            result.putAll(claims);
+            return result;
+        } catch (OAuth2Exception e) {
+            return inactive(e.getOAuth2ErrorCode(), e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Token introspection failed", e);
+            return inactive("server_error", "Token could not be checked");
+        }
+    }
+
+    private static Map<String, Object> await(Future<Map<String, Object>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return inactive("server_error", "Interrupted");
+        } catch (ExecutionException e) {
+            // check() never throws, but keep the batch intact regardless
+            return inactive("server_error", "Token could not be checked");
+        }
+    }
+
+    private static Map<String, Object> inactive(String error, String description) {
+        Map<String, Object> result = new LinkedHashMap<>(4);
+        result.put(ACTIVE, false);
+        result.put(ERROR, error);
+        result.put(ERROR_DESCRIPTION, description);
+        return result;
+    }
+
+    private static final class IntrospectionThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "token-introspection-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.rsw.auth.core;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * PasswordEncoder that can tell whether an existing hash was produced with different parameters
+ * (algorithm or cost) than the ones it currently encodes with, so it can be re-hashed after a successful login.
+ */
+public interface UpgradablePasswordEncoder extends PasswordEncoder {
+
+    /**
+     * @param encodedPassword a stored hash
+     * @return true if the hash should be re-encoded with the current parameters
+     */
+    boolean upgradeEncoding(String encodedPassword);
+}
@@ -0,0 +1,83 @@
+package com.rsw.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Redis pub/sub channel used to broadcast cache invalidations to every auth server node.
+ *
+ * Messages are plain strings of the form {nodeId}:{type}:{key}; a node ignores its own messages since it
+ * has already evicted locally before publishing.
+ * Publishing is best effort - a Redis failure is logged and never fails the write that triggered it, since
+ * the TTL on each node's cache still bounds staleness.
+ */
+public class UserCacheInvalidationChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserCacheInvalidationChannel.class);
+
+    public static final String TYPE_USER = "user";
+    public static final String TYPE_ALL = "all";
+    public static final String TYPE_GROUPS = "groups";
+
+    private static final String SEPARATOR = ":";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public UserCacheInvalidationChannel(StringRedisTemplate redisTemplate, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+    }
+
+    public void publish(String type, String key) {
+        try {
+            redisTemplate.convertAndSend(channel, nodeId + SEPARATOR + type + SEPARATOR + (key != null ? key : ""));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to publish {} invalidation for '{}' on channel {}", type, key, channel, e);
+        }
+    }
+
+    /**
+     * Register a handler for invalidations published by other nodes
+     * @param container listener container bound to the same Redis instance
+     * @param type message type to handle
+     * @param handler receives the message key
+     */
+    public void subscribe(RedisMessageListenerContainer container, String type, Consumer<String> handler) {
+        container.addMessageListener(new TypeListener(type, handler), new ChannelTopic(channel));
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    private class TypeListener implements MessageListener {
+        private final String type;
+        private final Consumer<String> handler;
+
+        TypeListener(String type, Consumer<String> handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+            if (parts.length != 3 || nodeId.equals(parts[0]) || ! type.equals(parts[1])) {
+                return;
+            }
+            LOGGER.debug("Received {} invalidation for '{}' from node {}", parts[1], parts[2], parts[0]);
+            handler.accept(parts[2]);
+        }
+    }
+}
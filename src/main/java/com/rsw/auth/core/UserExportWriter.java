@@ -0,0 +1,81 @@
+package com.rsw.auth.core;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Writes each row of RswUserDetailsService.exportUsers straight to the output as one line of NDJSON, without
+ * building an RswUser, e.g.
+ * <pre>
+ *   {"username":"jdoe","firstName":"John","middleInitial":null,"lastName":"Doe","emailAddress":"jdoe@example.com",
+ *    "mobileNumber":null,"enabled":true,"locked":false,"passwordExpiry":"2017-05-01T10:15:30","groups":["API_USER"]}
+ * </pre>
+ * Password hashes are not exported.  The generator's buffer is handed to the output as it fills, so memory use
+ * doesn't depend on the number of users.  A failed write (e.g. the client went away) aborts the query.
+ */
+public class UserExportWriter implements RowCallbackHandler {
+
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    private final JsonGenerator generator;
+    private long count;
+
+    public UserExportWriter(OutputStream out) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        // one object per line rather than the default space between root values
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("username", rs.getString("username"));
+            generator.writeStringField("firstName", rs.getString("first_name"));
+            generator.writeStringField("middleInitial", rs.getString("middle_initial"));
+            generator.writeStringField("lastName", rs.getString("last_name"));
+            generator.writeStringField("emailAddress", rs.getString("email_address"));
+            generator.writeStringField("mobileNumber", rs.getString("mobile_number"));
+            generator.writeBooleanField("enabled", rs.getBoolean("enabled"));
+            generator.writeBooleanField("locked", rs.getBoolean("locked"));
+            Timestamp passwordExpiry = rs.getTimestamp("password_expiry");
+            generator.writeStringField("passwordExpiry",
+                    (passwordExpiry != null ? passwordExpiry.toLocalDateTime().toString() : null));
+            generator.writeArrayFieldStart("groups");
+            for (String groupName : RswUserResultSetExtractor.getStrings(rs, "group_names")) {
+                generator.writeString(groupName);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count++;
+    }
+
+    /**
+     * Writes out whatever is still buffered; the underlying output is left open
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    /**
+     * @return number of users written
+     */
+    public long getCount() {
+        return count;
+    }
+}
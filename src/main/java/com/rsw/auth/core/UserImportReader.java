@@ -0,0 +1,209 @@
+package com.rsw.auth.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads users to import one line at a time, so an import never holds more than the current chunk in memory.
+ * <pre>
+ *   NDJSON - one object per line:
+ *     {"username": "jdoe", "password": "...", "firstName": "John", "middleInitial": "Q", "lastName": "Doe",
+ *      "emailAddress": "jdoe@example.com", "mobileNumber": "6125551212", "enabled": true, "locked": false,
+ *      "groups": ["API_USER"]}
+ *   CSV - a header line naming the same fields (in any order), groups separated by '|':
+ *     username,password,firstName,lastName,emailAddress,groups
+ *     jdoe,...,John,Doe,jdoe@example.com,API_USER|API_ADMIN
+ * </pre>
+ * enabled defaults to true and locked to false.  A line that can't be parsed becomes a Row with an error rather
+ * than failing the import; blank lines are skipped.  CSV values may be quoted ("" escapes a quote), but may not
+ * span lines.
+ */
+public class UserImportReader implements Closeable {
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String GROUP_SEPARATOR = "\\|";
+
+    private final BufferedReader reader;
+    private final Format format;
+    private long lineNumber;
+    private String[] csvHeader;
+
+    public UserImportReader(Reader reader, Format format) {
+        this.reader = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+        this.format = format;
+    }
+
+    /**
+     * @return the next user, or null at the end of the input
+     * @throws IOException
+     */
+    public Row next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.trim().isEmpty());
+
+        if (format == Format.CSV && csvHeader == null) {
+            csvHeader = parseCsvLine(line).toArray(new String[0]);
+            return next();
+        }
+        try {
+            Map<String, String> fields = new HashMap<>();
+            List<String> groups = new ArrayList<>();
+            if (format == Format.NDJSON) {
+                readJson(line, fields, groups);
+            } else {
+                readCsv(line, fields, groups);
+            }
+            return new Row(lineNumber, toUser(fields, groups), null);
+        } catch (IllegalArgumentException | IOException e) {
+            return new Row(lineNumber, null, e.getMessage());
+        }
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readJson(String line, Map<String, String> fields, List<String> groups) throws IOException {
+        JsonNode node = OBJECT_MAPPER.readTree(line);
+        if (node == null || ! node.isObject()) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        node.fields().forEachRemaining(field -> {
+            JsonNode value = field.getValue();
+            if ("groups".equals(field.getKey())) {
+                if (value.isArray()) {
+                    value.forEach(group -> groups.add(group.asText()));
+                } else if (! value.isNull()) {
+                    Collections.addAll(groups, value.asText().split(GROUP_SEPARATOR));
+                }
+            } else if (! value.isNull()) {
+                fields.put(field.getKey(), value.asText());
+            }
+        });
+    }
+
+    private void readCsv(String line, Map<String, String> fields, List<String> groups) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != csvHeader.length) {
+            throw new IllegalArgumentException("Expected " + csvHeader.length + " values, found " + values.size());
+        }
+        for (int ix = 0; ix < csvHeader.length; ix++) {
+            String value = values.get(ix);
+            if ("groups".equals(csvHeader[ix])) {
+                if (! value.isEmpty()) {
+                    Collections.addAll(groups, value.split(GROUP_SEPARATOR));
+                }
+            } else if (! value.isEmpty()) {
+                fields.put(csvHeader[ix], value);
+            }
+        }
+    }
+
+    private static RswUser toUser(Map<String, String> fields, List<String> groupNames) {
+        if (fields.get("username") == null || fields.get("password") == null) {
+            throw new IllegalArgumentException("username and password are required");
+        }
+        List<RswGroup> groups = new ArrayList<>(groupNames.size());
+        for (String groupName : groupNames) {
+            try {
+                groups.add(RswGroup.valueOf(groupName.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown group '" + groupName + "'");
+            }
+        }
+        RswUser user = new RswUser(fields.get("username"), fields.get("password"),
+                ! "false".equalsIgnoreCase(fields.get("enabled")), null,
+                "true".equalsIgnoreCase(fields.get("locked")), groups);
+        return user.setFirstName(fields.get("firstName"))
+                .setMiddleInitial(fields.get("middleInitial"))
+                .setLastName(fields.get("lastName"))
+                .setEmailAddress(fields.get("emailAddress"))
+                .setMobileNumber(fields.get("mobileNumber"));
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int ix = 0; ix < line.length(); ix++) {
+            char c = line.charAt(ix);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (ix + 1 < line.length() && line.charAt(ix + 1) == '"') {
+                    value.append('"');
+                    ix++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted value");
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+
+    /**
+     * One input line: the parsed user (plaintext password), or the reason it couldn't be parsed
+     */
+    public static final class Row {
+        private final long line;
+        private final RswUser user;
+        private final String error;
+
+        Row(long line, RswUser user, String error) {
+            this.line = line;
+            this.user = user;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public RswUser getUser() {
+            return user;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.rsw.auth.core;
+
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+import io.prometheus.client.Histogram;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk creation of users, e.g. when onboarding a tenant, without the per-user round trips of
+ * RswUserDetailsService.createUser.
+ *
+ * Users are read from a UserImportReader in chunks.  Per chunk: rows are validated (format, password pattern,
+ * groups, duplicates in the chunk), existing usernames are found with one query, passwords are BCrypt hashed in
+ * parallel on a dedicated pool, and users, group_members and password_history are each written with a single
+ * COPY, in one transaction per chunk.  Each password is hashed once; the same hash goes to users and
+ * password_history.  If a chunk's COPY fails (e.g. a constraint violation the validation didn't anticipate),
+ * its rows are retried one per transaction, so only the offending rows fail.
+ *
+ * Failed rows and per-chunk progress (rows read, imported, failed, throughput) are reported to a Listener as the
+ * import runs.  Group memberships only - direct authorities are not imported.
+ */
+public class UserImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final String DEF_EXISTING_USERNAMES_QUERY =
+            "select lower(username) from users where lower(username) = any(?)";
+
+    private static final String DEF_COPY_USERS_SQL =
+            "copy users " +
+                "(username, password, enabled, locked, password_expiry, " +
+                " first_name, middle_initial, last_name, email_address, mobile_number) " +
+                "from stdin with (format csv)";
+
+    private static final String DEF_COPY_GROUP_MEMBERS_SQL =
+            "copy group_members (group_id, username) from stdin with (format csv)";
+
+    private static final String DEF_COPY_PASSWORD_HISTORY_SQL =
+            "copy password_history (username, password, changed_date) from stdin with (format csv)";
+
+    private static final int MAX_USERNAME = 20;
+    private static final int MAX_NAME = 20;
+    private static final int MAX_MIDDLE_INITIAL = 1;
+    private static final int MAX_EMAIL_ADDRESS = 50;
+    private static final int MAX_MOBILE_NUMBER = 15;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordService passwordService;
+    private final PasswordEncoder hashEncoder;
+    private final GroupAuthorityCache groupAuthorityCache;
+    private final AuthMetrics metrics;
+    private final ThreadPoolExecutor hashingPool;
+    private final int chunkSize;
+
+    /**
+     * Receives import results as they happen, on the importing thread
+     */
+    public interface Listener {
+        void rowFailed(long line, String username, String error);
+
+        void chunkWritten(Progress progress);
+    }
+
+    /**
+     * @param jdbcTemplate
+     * @param transactionTemplate one transaction per chunk
+     * @param passwordService password pattern and default expiry
+     * @param hashEncoder the BCrypt encoder itself - the import hashes on its own pool, not the login hashing pool
+     * @param groupAuthorityCache group ids
+     * @param metrics COPY timings
+     * @param threads hashing threads; zero or less to use the number of available processors
+     * @param chunkSize users per COPY and transaction
+     */
+    public UserImportService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             PasswordService passwordService, PasswordEncoder hashEncoder,
+                             GroupAuthorityCache groupAuthorityCache, AuthMetrics metrics, int threads,
+                             int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+        int poolSize = (threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.passwordService = passwordService;
+        this.hashEncoder = hashEncoder;
+        this.groupAuthorityCache = groupAuthorityCache;
+        this.metrics = metrics;
+        this.chunkSize = chunkSize;
+        // a full queue runs the hash on the importing thread, which throttles submission
+        this.hashingPool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(chunkSize), new ImportThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingPool.shutdownNow();
+    }
+
+    /**
+     * @param reader
+     * @param listener
+     * @return final totals
+     * @throws IOException reading the input
+     */
+    public Progress importUsers(UserImportReader reader, Listener listener) throws IOException {
+        Progress progress = new Progress(System.nanoTime());
+        List<PendingUser> chunk = new ArrayList<>(chunkSize);
+        UserImportReader.Row row;
+        while ((row = reader.next()) != null) {
+            progress.read++;
+            if (row.getError() != null) {
+                fail(progress, listener, row.getLine(), null, row.getError());
+                continue;
+            }
+            chunk.add(new PendingUser(row.getLine(), row.getUser()));
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, progress, listener);
+                chunk.clear();
+            }
+        }
+        if (! chunk.isEmpty()) {
+            importChunk(chunk, progress, listener);
+        }
+        LOGGER.info("User import: {} rows read, {} imported, {} failed in {} ms", progress.read, progress.imported,
+                progress.failed, progress.getElapsedMillis());
+        return progress;
+    }
+
+    private void importChunk(List<PendingUser> chunk, Progress progress, Listener listener) {
+        List<PendingUser> valid = validate(chunk, progress, listener);
+        valid = hashPasswords(valid, progress, listener);
+
+        if (! valid.isEmpty()) {
+            try {
+                write(valid);
+                progress.imported += valid.size();
+            } catch (RuntimeException e) {
+                LOGGER.warn("User import chunk failed, retrying its {} users one by one: {}", valid.size(),
+                        NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+                for (PendingUser user : valid) {
+                    try {
+                        write(Collections.singletonList(user));
+                        progress.imported++;
+                    } catch (RuntimeException rowException) {
+                        fail(progress, listener, user.line, user.username(),
+                                NestedExceptionUtils.getMostSpecificCause(rowException).getMessage());
+                    }
+                }
+            }
+        }
+        listener.chunkWritten(progress);
+    }
+
+    /**
+     * @return users passing field validation, not repeated in the chunk and not already existing
+     */
+    private List<PendingUser> validate(List<PendingUser> chunk, Progress progress, Listener listener) {
+        List<PendingUser> valid = new ArrayList<>(chunk.size());
+        Set<String> usernames = new HashSet<>();
+        for (PendingUser user : chunk) {
+            String error = validateFields(user);
+            if (error == null && ! usernames.add(user.username().toLowerCase(Locale.ROOT))) {
+                error = "Duplicate username";
+            }
+            if (error != null) {
+                fail(progress, listener, user.line, user.username(), error);
+            } else {
+                valid.add(user);
+            }
+        }
+        if (valid.isEmpty()) {
+            return valid;
+        }
+
+        Set<String> existing = findExistingUsernames(usernames);
+        List<PendingUser> created = new ArrayList<>(valid.size());
+        for (PendingUser user : valid) {
+            if (existing.contains(user.username().toLowerCase(Locale.ROOT))) {
+                fail(progress, listener, user.line, user.username(), "Username " + user.username() + " already exists");
+            } else {
+                created.add(user);
+            }
+        }
+        return created;
+    }
+
+    private String validateFields(PendingUser pending) {
+        RswUser user = pending.user;
+        try {
+            checkLength("username", user.getUsername(), MAX_USERNAME);
+            checkLength("firstName", user.getFirstName(), MAX_NAME);
+            checkLength("lastName", user.getLastName(), MAX_NAME);
+            checkLength("emailAddress", user.getEmailAddress(), MAX_EMAIL_ADDRESS);
+            if (user.getMiddleInitial() != null) {
+                checkLength("middleInitial", user.getMiddleInitial(), MAX_MIDDLE_INITIAL);
+            }
+            if (user.getMobileNumber() != null) {
+                checkLength("mobileNumber", user.getMobileNumber(), MAX_MOBILE_NUMBER);
+            }
+            passwordService.validatePassword(user.getPassword());
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+
+        for (RswGroup group : user.getGroups()) {
+            Integer groupId = groupAuthorityCache.getGroupId(group);
+            if (groupId == null) {
+                return "Group " + group + " is not defined";
+            }
+            if (! pending.groupIds.contains(groupId)) {
+                pending.groupIds.add(groupId);
+            }
+        }
+        return null;
+    }
+
+    private static void checkLength(String field, String value, int maxLength) {
+        Assert.hasText(value, field + " is required");
+        Assert.isTrue(value.length() <= maxLength, field + " is longer than " + maxLength + " characters");
+    }
+
+    private Set<String> findExistingUsernames(Collection<String> lowerUsernames) {
+        final String[] names = lowerUsernames.toArray(new String[0]);
+        return new HashSet<>(jdbcTemplate.query(DEF_EXISTING_USERNAMES_QUERY, ps -> {
+            Array array = ps.getConnection().createArrayOf("varchar", names);
+            ps.setArray(1, array);
+        }, (rs, rowNum) -> rs.getString(1)));
+    }
+
+    /**
+     * Hashes every password in parallel, each exactly once
+     * @return users whose password was hashed
+     */
+    private List<PendingUser> hashPasswords(List<PendingUser> users, Progress progress, Listener listener) {
+        List<Future<String>> hashes = new ArrayList<>(users.size());
+        for (PendingUser user : users) {
+            final String password = user.user.getPassword();
+            hashes.add(hashingPool.submit(() -> hashEncoder.encode(password)));
+        }
+
+        List<PendingUser> hashed = new ArrayList<>(users.size());
+        for (int ix = 0; ix < users.size(); ix++) {
+            PendingUser user = users.get(ix);
+            try {
+                user.encodedPassword = hashes.get(ix).get();
+                hashed.add(user);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("User import interrupted", e);
+            } catch (ExecutionException e) {
+                fail(progress, listener, user.line, user.username(), "Password hashing failed: " +
+                        e.getCause().getMessage());
+            }
+        }
+        return hashed;
+    }
+
+    /**
+     * One transaction: a COPY each for users, group_members and password_history
+     */
+    private void write(List<PendingUser> users) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime defaultExpiry = passwordService.getDefaultPasswordExpiry();
+        StringBuilder userRows = new StringBuilder(users.size() * 200);
+        StringBuilder memberRows = new StringBuilder(users.size() * 32);
+        StringBuilder historyRows = new StringBuilder(users.size() * 100);
+        for (PendingUser pending : users) {
+            RswUser user = pending.user;
+            // COPY can't apply lower(), so usernames are normalized here as RswUserDetailsService stores them
+            String username = RswUserDetailsService.normalizeUsername(user.getUsername());
+            appendRow(userRows, username, pending.encodedPassword, user.isEnabled(),
+                    ! user.isAccountNonLocked(), defaultExpiry, user.getFirstName(), user.getMiddleInitial(),
+                    user.getLastName(), user.getEmailAddress(), user.getMobileNumber());
+            for (Integer groupId : pending.groupIds) {
+                appendRow(memberRows, groupId, username);
+            }
+            appendRow(historyRows, username, pending.encodedPassword, now);
+        }
+
+        transactionTemplate.execute(status -> {
+            copy(DEF_COPY_USERS_SQL, userRows);
+            copy(DEF_COPY_GROUP_MEMBERS_SQL, memberRows);
+            copy(DEF_COPY_PASSWORD_HISTORY_SQL, historyRows);
+            return null;
+        });
+    }
+
+    private void copy(final String sql, final StringBuilder rows) {
+        if (rows.length() == 0) {
+            return;
+        }
+        Histogram.Child timer = metrics.sqlStatement(sql);
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                try {
+                    return connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyIn(sql, new StringReader(rows.toString()));
+                } catch (IOException e) {
+                    throw new SQLException("COPY failed", e);
+                }
+            });
+        } finally {
+            AuthMetrics.observeSince(timer, start);
+        }
+    }
+
+    /**
+     * Appends one COPY csv row; null is an unquoted empty value, anything else is quoted
+     */
+    static void appendRow(StringBuilder rows, Object... values) {
+        for (int ix = 0; ix < values.length; ix++) {
+            if (ix > 0) {
+                rows.append(',');
+            }
+            Object value = values[ix];
+            if (value != null) {
+                rows.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+            }
+        }
+        rows.append('\n');
+    }
+
+    private static void fail(Progress progress, Listener listener, long line, String username, String error) {
+        progress.failed++;
+        listener.rowFailed(line, username, error);
+    }
+
+    /**
+     * Running totals of one import
+     */
+    public static final class Progress {
+        private final long startNanos;
+        private long read;
+        private long imported;
+        private long failed;
+
+        Progress(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public long getRead() {
+            return read;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * @return users imported per second since the start of the import
+         */
+        public double getImportedPerSecond() {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            return (elapsedNanos == 0 ? 0.0 : imported * 1e9 / elapsedNanos);
+        }
+    }
+
+    private static final class PendingUser {
+        private final long line;
+        private final RswUser user;
+        private final List<Integer> groupIds = new ArrayList<>(2);
+        private String encodedPassword;
+
+        PendingUser(long line, RswUser user) {
+            this.line = line;
+            this.user = user;
+        }
+
+        String username() {
+            return user.getUsername();
+        }
+    }
+
+    private static final class ImportThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "user-import-hash-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -131,6 +131,21 @@ public class RswUser extends User {
         return this;
     }
 
+    /**
+     * Detached copy of this user, with credentialsNonExpired re-evaluated against the password expiry
+     * @return
+     */
+    public RswUser copy() {
+        RswUser copy = new RswUser(getUsername(), getPassword(), isEnabled(), passwordExpiry, ! isAccountNonLocked(),
+                getAuthorities());
+        copy.setGroups(new ArrayList<>(groups));
+        return copy.setFirstName(firstName)
+                .setMiddleInitial(middleInitial)
+                .setLastName(lastName)
+                .setEmailAddress(emailAddress)
+                .setMobileNumber(mobileNumber);
+    }
+
     private static boolean isNotExpired(LocalDateTime passwordExpiry) {
         return (passwordExpiry == null || LocalDateTime.now().isBefore(passwordExpiry));
     }
@@ -0,0 +1,21 @@
+package com.rsw.auth.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  batch of tokens to check, as for /oauth/check_token
+ */
+public class TokenIntrospectionRequest {
+
+    private List<String> tokens = new ArrayList<>();
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public TokenIntrospectionRequest setTokens(List<String> tokens) {
+        this.tokens = tokens;
+        return this;
+    }
+}
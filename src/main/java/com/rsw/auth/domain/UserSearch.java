@@ -0,0 +1,69 @@
+package com.rsw.auth.domain;
+
+/**
+ *  admin user search: case-insensitive prefixes (all optional, combined with AND), and the keyset of the last user
+ *  on the previous page - (lastName, username) as returned in UserSearchPage - to continue after
+ */
+public class UserSearch {
+
+    private String lastNamePrefix;
+    private String emailPrefix;
+    private String usernamePrefix;
+    private String afterLastName;
+    private String afterUsername;
+    private int pageSize = 50;
+
+    public String getLastNamePrefix() {
+        return lastNamePrefix;
+    }
+
+    public UserSearch setLastNamePrefix(String lastNamePrefix) {
+        this.lastNamePrefix = lastNamePrefix;
+        return this;
+    }
+
+    public String getEmailPrefix() {
+        return emailPrefix;
+    }
+
+    public UserSearch setEmailPrefix(String emailPrefix) {
+        this.emailPrefix = emailPrefix;
+        return this;
+    }
+
+    public String getUsernamePrefix() {
+        return usernamePrefix;
+    }
+
+    public UserSearch setUsernamePrefix(String usernamePrefix) {
+        this.usernamePrefix = usernamePrefix;
+        return this;
+    }
+
+    public String getAfterLastName() {
+        return afterLastName;
+    }
+
+    public UserSearch setAfterLastName(String afterLastName) {
+        this.afterLastName = afterLastName;
+        return this;
+    }
+
+    public String getAfterUsername() {
+        return afterUsername;
+    }
+
+    public UserSearch setAfterUsername(String afterUsername) {
+        this.afterUsername = afterUsername;
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public UserSearch setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+}
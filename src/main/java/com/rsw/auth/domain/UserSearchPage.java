@@ -0,0 +1,36 @@
+package com.rsw.auth.domain;
+
+import java.util.List;
+
+/**
+ *  one page of an admin user search, ordered by last name (case-insensitive) then username; when there are more
+ *  users, nextLastName and nextUsername are the keyset to pass as afterLastName and afterUsername
+ */
+public class UserSearchPage {
+
+    private final List<RswUser> users;
+    private final String nextLastName;
+    private final String nextUsername;
+
+    public UserSearchPage(List<RswUser> users, String nextLastName, String nextUsername) {
+        this.users = users;
+        this.nextLastName = nextLastName;
+        this.nextUsername = nextUsername;
+    }
+
+    public List<RswUser> getUsers() {
+        return users;
+    }
+
+    public String getNextLastName() {
+        return nextLastName;
+    }
+
+    public String getNextUsername() {
+        return nextUsername;
+    }
+
+    public boolean isLastPage() {
+        return nextUsername == null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.rsw.auth.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the password hashing pool is saturated; the request should be retried after retryAfterSecs.
+ * As an AuthenticationException it fails authentication cleanly rather than surfacing as a server error.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PasswordHashingRejectedException extends AuthenticationServiceException {
+
+    private final int retryAfterSecs;
+
+    public PasswordHashingRejectedException(int retryAfterSecs) {
+        super("Password hashing capacity exceeded, retry later");
+        this.retryAfterSecs = retryAfterSecs;
+    }
+
+    public int getRetryAfterSecs() {
+        return retryAfterSecs;
+    }
+
+    /**
+     * @param e
+     * @return the rejection in e's cause chain (e itself included), or null if hashing wasn't rejected
+     */
+    public static PasswordHashingRejectedException findIn(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PasswordHashingRejectedException) {
+                return (PasswordHashingRejectedException) cause;
+            }
+        }
+        return null;
+    }
+}
@@ -21,5 +21,12 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
         return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.NOT_FOUND, request);
     }
 
+    @ExceptionHandler(value = {PasswordHashingRejectedException.class })
+    protected ResponseEntity<Object> handleHashingRejected(PasswordHashingRejectedException ex, WebRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSecs()));
+        return handleExceptionInternal(ex, ex.getMessage(), headers, HttpStatus.SERVICE_UNAVAILABLE, request);
+    }
+
 
 }
@@ -0,0 +1,36 @@
+package com.rsw.auth.config;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * The application starts with the default (empty) auth.security.metrics.password, and the Prometheus endpoint
+ * then refuses every scrape
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class MetricsSecurityConfigIGTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void noPassword_refusesScrapes() throws Exception {
+        mockMvc.perform(get(MetricsConfig.METRICS_PATH))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get(MetricsConfig.METRICS_PATH).with(httpBasic("prometheus", "")))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get(MetricsConfig.METRICS_PATH).with(httpBasic("admin", "P@ssw0rd")))
+                .andExpect(status().isUnauthorized());
+    }
+}
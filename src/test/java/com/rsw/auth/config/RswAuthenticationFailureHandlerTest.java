@@ -0,0 +1,49 @@
+package com.rsw.auth.config;
+
+import static org.junit.Assert.*;
+
+import com.rsw.auth.exception.PasswordHashingRejectedException;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+
+/**
+ * Form login failures: 503 with Retry-After when password hashing is saturated, the failure URL otherwise
+ */
+public class RswAuthenticationFailureHandlerTest {
+
+    private final RswAuthenticationFailureHandler failureHandler = new RswAuthenticationFailureHandler("/login?error");
+
+    @Test
+    public void hashingRejected_serviceUnavailableWithRetryAfter() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        failureHandler.onAuthenticationFailure(new MockHttpServletRequest("POST", "/login"), response,
+                new PasswordHashingRejectedException(3));
+
+        assertEquals(503, response.getStatus());
+        assertEquals("3", response.getHeader("Retry-After"));
+        assertNull(response.getRedirectedUrl());
+    }
+
+    @Test
+    public void wrappedHashingRejected_serviceUnavailable() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        failureHandler.onAuthenticationFailure(new MockHttpServletRequest("POST", "/login"), response,
+                new InternalAuthenticationServiceException("failed", new PasswordHashingRejectedException(5)));
+
+        assertEquals(503, response.getStatus());
+        assertEquals("5", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    public void badCredentials_redirectsToFailureUrl() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        failureHandler.onAuthenticationFailure(new MockHttpServletRequest("POST", "/login"), response,
+                new BadCredentialsException("Bad credentials"));
+
+        assertEquals("/login?error", response.getRedirectedUrl());
+        assertNull(response.getHeader("Retry-After"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.rsw.auth.config;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rsw.auth.core.JwtSigningKeys;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.*;
+
+/**
+ * Asymmetric and HMAC signing, kid based verification and the JWKS document
+ */
+public class RswJwtAccessTokenConverterTest {
+
+    @Test
+    public void rsaToken_roundTrip() throws Exception {
+        RswJwtAccessTokenConverter converter = converter("rsa-1", rsaKeyPair(), Collections.emptyMap());
+        String jwt = issue(converter);
+
+        Map<?, ?> header = new ObjectMapper().readValue(
+                Base64.getUrlDecoder().decode(jwt.substring(0, jwt.indexOf('.'))), Map.class);
+        assertEquals("RS256", header.get("alg"));
+        assertEquals("rsa-1", header.get("kid"));
+        assertEquals("rsw", new JwtTokenStore(converter).readAuthentication(jwt).getOAuth2Request().getClientId());
+    }
+
+    @Test
+    public void ecToken_roundTrip() throws Exception {
+        RswJwtAccessTokenConverter converter = converter("ec-1", ecKeyPair(), Collections.emptyMap());
+        String jwt = issue(converter);
+
+        assertEquals(64, Base64.getUrlDecoder().decode(jwt.substring(jwt.lastIndexOf('.') + 1)).length);
+        assertNotNull(new JwtTokenStore(converter).readAccessToken(jwt));
+    }
+
+    @Test
+    public void retiringKey_stillVerifies() throws Exception {
+        KeyPair oldKeyPair = rsaKeyPair();
+        String oldJwt = issue(converter("rsa-1", oldKeyPair, Collections.emptyMap()));
+
+        RswJwtAccessTokenConverter rotated = converter("ec-2", ecKeyPair(),
+                Collections.singletonMap("rsa-1", oldKeyPair.getPublic()));
+        assertNotNull(new JwtTokenStore(rotated).readAccessToken(oldJwt));
+        assertTrue(issue(rotated).length() > 0);
+
+        RswJwtAccessTokenConverter retired = converter("ec-3", ecKeyPair(), Collections.emptyMap());
+        try {
+            new JwtTokenStore(retired).readAccessToken(oldJwt);
+            fail("token signed by a removed key must not verify");
+        } catch (InvalidTokenException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = InvalidTokenException.class)
+    public void tamperedClaims_rejected() throws Exception {
+        RswJwtAccessTokenConverter converter = converter("rsa-1", rsaKeyPair(), Collections.emptyMap());
+        String jwt = issue(converter);
+        String[] parts = jwt.split("\\.");
+        String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                .replace("\"rsw\"", "\"evil\"");
+        String tampered = parts[0] + "." +
+                Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8)) +
+                "." + parts[2];
+        new JwtTokenStore(converter).readAccessToken(tampered);
+    }
+
+    @Test
+    public void jwks_listsActiveAndRetiringKeys() throws Exception {
+        KeyPair ecKeyPair = ecKeyPair();
+        JwtSigningKeys signingKeys = JwtSigningKeys.of("rsa-2", rsaKeyPair(),
+                Collections.singletonMap("ec-1", ecKeyPair.getPublic()));
+
+        Map<?, ?> jwks = new ObjectMapper().readValue(signingKeys.getJwks(), Map.class);
+        List<?> keys = (List<?>) jwks.get("keys");
+        assertEquals(2, keys.size());
+        assertEquals("rsa-2", ((Map<?, ?>) keys.get(0)).get("kid"));
+        assertEquals("RSA", ((Map<?, ?>) keys.get(0)).get("kty"));
+        assertEquals("P-256", ((Map<?, ?>) keys.get(1)).get("crv"));
+        assertEquals(43, ((String) ((Map<?, ?>) keys.get(1)).get("x")).length());
+        assertTrue(signingKeys.getJwksETag().startsWith("\""));
+    }
+
+    @Test
+    public void hmacToken_sameClaimsAsStockConverter() throws Exception {
+        RswJwtAccessTokenConverter lean = new RswJwtAccessTokenConverter("abracadabra");
+        lean.afterPropertiesSet();
+        JwtAccessTokenConverter stock = new JwtAccessTokenConverter();
+        stock.setSigningKey("abracadabra");
+        stock.afterPropertiesSet();
+
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 3600000L));
+        token.setScope(new HashSet<>(Arrays.asList("read", "write")));
+        token.setAdditionalInformation(Collections.<String, Object>singletonMap("firstname", "Joe"));
+        OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), "rsw",
+                AuthorityUtils.createAuthorityList("ROLE_TRUSTED_CLIENT"), true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        OAuth2Authentication authentication = new OAuth2Authentication(request,
+                new UsernamePasswordAuthenticationToken("joetest", "N/A",
+                        AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN")));
+
+        String leanJwt = lean.enhance(token, authentication).getValue();
+        String stockJwt = stock.enhance(token, authentication).getValue();
+
+        assertEquals(stockJwt.substring(0, stockJwt.indexOf('.')), leanJwt.substring(0, leanJwt.indexOf('.')));
+        assertEquals(claims(stockJwt), claims(leanJwt));
+        // verified by the stock converter
+        assertEquals("joetest", new JwtTokenStore(stock).readAuthentication(leanJwt).getName());
+    }
+
+    /**
+     * Claims with arrays compared as sets
+     */
+    private static Map<String, Object> claims(String jwt) throws Exception {
+        String[] parts = jwt.split("\\.");
+        Map<String, Object> claims = new ObjectMapper().readValue(Base64.getUrlDecoder().decode(parts[1]),
+                new TypeReference<Map<String, Object>>() {});
+        for (Map.Entry<String, Object> entry : claims.entrySet()) {
+            if (entry.getValue() instanceof List) {
+                entry.setValue(new HashSet<>((List<?>) entry.getValue()));
+            }
+        }
+        return claims;
+    }
+
+    private static RswJwtAccessTokenConverter converter(String kid, KeyPair keyPair,
+                                                        Map<String, PublicKey> retiringKeys) throws Exception {
+        RswJwtAccessTokenConverter converter = new RswJwtAccessTokenConverter(
+                JwtSigningKeys.of(kid, keyPair, retiringKeys));
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private static String issue(RswJwtAccessTokenConverter converter) {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 3600000L));
+        token.setScope(new HashSet<>(Arrays.asList("read", "write")));
+        OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), "rsw",
+                AuthorityUtils.createAuthorityList("ROLE_TRUSTED_CLIENT"), true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        OAuth2AccessToken enhanced = converter.enhance(token, new OAuth2Authentication(request, null));
+        return enhanced.getValue();
+    }
+
+    private static KeyPair rsaKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static KeyPair ecKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+}
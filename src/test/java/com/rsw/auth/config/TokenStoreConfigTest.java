@@ -0,0 +1,63 @@
+package com.rsw.auth.config;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+import com.rsw.auth.core.ExpiringJdbcTokenStore;
+import com.rsw.auth.core.ShardedTokenStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.store.redis.RedisTokenStore;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+
+/**
+ * TokenStore selection by auth.tokenStore.type
+ */
+public class TokenStoreConfigTest {
+
+    private TokenStoreConfig config;
+
+    @Before
+    public void setUp() {
+        config = new TokenStoreConfig();
+        ReflectionTestUtils.setField(config, "shards", 4);
+        ReflectionTestUtils.setField(config, "maxTokens", 100);
+        ReflectionTestUtils.setField(config, "reapIntervalMillis", 1000L);
+        ReflectionTestUtils.setField(config, "redisPrefix", "rsw-auth:");
+        ReflectionTestUtils.setField(config, "jdbcReapBatchSize", 1000);
+        ReflectionTestUtils.setField(config, "dataSource", mock(DataSource.class));
+    }
+
+    @Test
+    public void tokenStore_byType() {
+        assertTrue(tokenStore("memory") instanceof InMemoryTokenStore);
+        assertTrue(tokenStore("jdbc") instanceof ExpiringJdbcTokenStore);
+
+        TokenStore sharded = tokenStore("sharded");
+        assertTrue(sharded instanceof ShardedTokenStore);
+        ((ShardedTokenStore) sharded).shutdown();
+
+        ReflectionTestUtils.setField(config, "redisConnectionFactory", mock(RedisConnectionFactory.class));
+        assertTrue(tokenStore("redis") instanceof RedisTokenStore);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tokenStore_redisWithoutConnectionFactory() {
+        tokenStore("redis");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tokenStore_unsupportedType() {
+        tokenStore("cassandra");
+    }
+
+    private TokenStore tokenStore(String type) {
+        ReflectionTestUtils.setField(config, "tokenStoreType", type);
+        return config.tokenStore();
+    }
+}
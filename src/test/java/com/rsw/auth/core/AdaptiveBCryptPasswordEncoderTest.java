@@ -0,0 +1,39 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Strength detection and upgrade flagging of stored BCrypt hashes
+ */
+public class AdaptiveBCryptPasswordEncoderTest {
+
+    private static final String PASSWORD = "MyP@ssw0rd1";
+
+    @Test
+    public void getStrength_readsCostFromHash() {
+        assertEquals(4, AdaptiveBCryptPasswordEncoder.getStrength(new BCryptPasswordEncoder(4).encode(PASSWORD)));
+        assertEquals(5, AdaptiveBCryptPasswordEncoder.getStrength(new BCryptPasswordEncoder(5).encode(PASSWORD)));
+        assertTrue(AdaptiveBCryptPasswordEncoder.getStrength("not-a-bcrypt-hash") <= 0);
+        assertTrue(AdaptiveBCryptPasswordEncoder.getStrength(null) <= 0);
+    }
+
+    @Test
+    public void upgradeEncoding_onlyForOtherStrength() {
+        AdaptiveBCryptPasswordEncoder encoder = new AdaptiveBCryptPasswordEncoder(5);
+        String weakHash = new BCryptPasswordEncoder(4).encode(PASSWORD);
+
+        assertTrue(encoder.upgradeEncoding(weakHash));
+        assertTrue(encoder.matches(PASSWORD, weakHash));
+        assertFalse(encoder.upgradeEncoding(encoder.encode(PASSWORD)));
+        assertFalse(encoder.upgradeEncoding("not-a-bcrypt-hash"));
+    }
+
+    @Test
+    public void calibrate_staysWithinBounds() {
+        int strength = AdaptiveBCryptPasswordEncoder.calibrate(4, 6, 1L);
+        assertTrue(strength >= 4 && strength <= 6);
+    }
+}
@@ -0,0 +1,87 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Map;
+
+/**
+ * Statement labelling, endpoint series resolution and recording of AuthMetrics, and statement timing by
+ * MeteredJdbcTemplate
+ */
+public class AuthMetricsTest {
+
+    private static final String DEF_UPDATE_WIDGET_SQL = "update widgets set name = ? where id = ?";
+
+    private CollectorRegistry registry;
+    private AuthMetrics metrics;
+
+    @Before
+    public void setUp() {
+        registry = new CollectorRegistry();
+        metrics = new AuthMetrics(registry, AuthMetricsTest.class);
+    }
+
+    @Test
+    public void statementNames_privateAndPackageConstants() {
+        Map<String, String> names = AuthMetrics.statementNames(RswUserDetailsService.class, PasswordService.class);
+        assertEquals("users_by_username_query", names.get(RswUserDetailsService.DEF_USERS_BY_USERNAME_QUERY));
+        assertTrue(names.containsValue("create_user_sql"));
+        assertTrue(names.containsValue("change_password_sql"));
+    }
+
+    @Test
+    public void meteredJdbcTemplate_timesByStatement() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.executeUpdate()).thenReturn(1);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        MeteredJdbcTemplate jdbcTemplate = new MeteredJdbcTemplate(dataSource, metrics);
+        jdbcTemplate.update(DEF_UPDATE_WIDGET_SQL, "widget", 1);
+        jdbcTemplate.update(DEF_UPDATE_WIDGET_SQL, "gadget", 2);
+        jdbcTemplate.update("delete from widgets");
+
+        assertEquals(2.0, sqlCount("update_widget_sql"), 0.0);
+        assertEquals(1.0, sqlCount(AuthMetrics.OTHER), 0.0);
+    }
+
+    @Test
+    public void endpoint_resolvedByPathAndGrantType() {
+        assertSame(metrics.endpoint(AuthMetrics.TOKEN_PATH, "password"),
+                metrics.endpoint(AuthMetrics.TOKEN_PATH, "password"));
+        assertNotSame(metrics.endpoint(AuthMetrics.TOKEN_PATH, "password"),
+                metrics.endpoint(AuthMetrics.TOKEN_PATH, "client_credentials"));
+        assertSame(metrics.endpoint(AuthMetrics.TOKEN_PATH, "bogus"), metrics.endpoint(AuthMetrics.TOKEN_PATH, null));
+        assertNotNull(metrics.endpoint(AuthMetrics.CHECK_TOKEN_PATH, null));
+        assertNotNull(metrics.endpoint(AuthMetrics.USER_PATH, null));
+        assertNull(metrics.endpoint("/login", null));
+    }
+
+    @Test
+    public void endpoint_recordsLatencyAndFailures() {
+        long start = System.nanoTime();
+        metrics.endpoint(AuthMetrics.TOKEN_PATH, "password").record(start, false);
+        metrics.endpoint(AuthMetrics.TOKEN_PATH, "password").record(start, true);
+
+        String[] labels = {"endpoint", "grant_type"};
+        String[] values = {"token", "password"};
+        assertEquals(2.0, registry.getSampleValue("rsw_auth_endpoint_seconds_count", labels, values), 0.0);
+        assertEquals(1.0, registry.getSampleValue("rsw_auth_endpoint_failures_total", labels, values), 0.0);
+    }
+
+    private double sqlCount(String statement) {
+        return registry.getSampleValue("rsw_auth_sql_seconds_count", new String[] {"statement"},
+                new String[] {statement});
+    }
+}
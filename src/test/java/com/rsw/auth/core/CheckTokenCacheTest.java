@@ -0,0 +1,67 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TTL capping at token expiry, revocation, size bound and hit ratio of CheckTokenCache
+ */
+public class CheckTokenCacheTest {
+
+    private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+    private static final byte[] BODY = "{\"active\":true}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void get_hitAfterPut() {
+        CheckTokenCache cache = new CheckTokenCache(10, 300);
+        assertNull(cache.get("token-1"));
+        cache.put("token-1", BODY, CONTENT_TYPE, System.currentTimeMillis() + 60000L);
+
+        CheckTokenCache.CachedResponse cached = cache.get("token-1");
+        assertArrayEquals(BODY, cached.getBody());
+        assertEquals(CONTENT_TYPE, cached.getContentType());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void put_ttlCappedAtTokenExpiry() {
+        CheckTokenCache cache = new CheckTokenCache(10, 300);
+        long tokenExpiresAt = System.currentTimeMillis() + 60000L;
+        cache.put("token-1", BODY, CONTENT_TYPE, tokenExpiresAt);
+        assertEquals(tokenExpiresAt, cache.get("token-1").getExpiresAt());
+
+        cache.put("expired", BODY, CONTENT_TYPE, System.currentTimeMillis() - 1000L);
+        assertNull(cache.get("expired"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void revoke_removesEntry() {
+        CheckTokenCache cache = new CheckTokenCache(10, 300);
+        cache.put("token-1", BODY, CONTENT_TYPE, 0L);
+        cache.put("token-2", BODY, CONTENT_TYPE, 0L);
+
+        cache.revoke("token-1");
+        assertNull(cache.get("token-1"));
+        assertNotNull(cache.get("token-2"));
+        cache.clear();
+        assertNull(cache.get("token-2"));
+        assertEquals(2, cache.getRevocationCount());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        CheckTokenCache cache = new CheckTokenCache(2, 300);
+        cache.put("token-1", BODY, CONTENT_TYPE, 0L);
+        cache.put("token-2", BODY, CONTENT_TYPE, 0L);
+        cache.get("token-1");
+        cache.put("token-3", BODY, CONTENT_TYPE, 0L);
+
+        assertNotNull(cache.get("token-1"));
+        assertNull(cache.get("token-2"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
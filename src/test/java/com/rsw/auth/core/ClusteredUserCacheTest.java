@@ -0,0 +1,110 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import redis.embedded.RedisServer;
+
+import java.net.ServerSocket;
+import java.util.Collections;
+
+/**
+ * Two "nodes", each with its own local cache and listener container, sharing an embedded Redis server
+ */
+public class ClusteredUserCacheTest {
+
+    private static final String CHANNEL = "test:user-cache-invalidation";
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private RedisMessageListenerContainer containerA;
+    private RedisMessageListenerContainer containerB;
+    private ClusteredUserCache nodeA;
+    private ClusteredUserCache nodeB;
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setHostName("localhost");
+        connectionFactory.setPort(port);
+        connectionFactory.afterPropertiesSet();
+
+        nodeA = new ClusteredUserCache(new RswUserCache(100, 300), newChannel());
+        nodeB = new ClusteredUserCache(new RswUserCache(100, 300), newChannel());
+        containerA = newContainer(nodeA);
+        containerB = newContainer(nodeB);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        containerA.destroy();
+        containerB.destroy();
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void removeUserFromCache_evictsOtherNodes() throws Exception {
+        nodeA.putUserInCache(getUser("joetest"));
+        nodeB.putUserInCache(getUser("joetest"));
+        nodeB.putUserInCache(getUser("janetest"));
+
+        // subscription is asynchronous, so keep invalidating until the other node has seen one
+        long deadline = System.currentTimeMillis() + 5000;
+        while (nodeB.getUserFromCache("joetest") != null && System.currentTimeMillis() < deadline) {
+            nodeA.removeUserFromCache("joetest");
+            Thread.sleep(50);
+        }
+
+        assertNull(nodeA.getUserFromCache("joetest"));
+        assertNull(nodeB.getUserFromCache("joetest"));
+        assertNotNull(nodeB.getUserFromCache("janetest"));
+    }
+
+    @Test
+    public void removeAll_clearsOtherNodes() throws Exception {
+        nodeB.putUserInCache(getUser("joetest"));
+        nodeB.putUserInCache(getUser("janetest"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (((RswUserCache) nodeB.getLocalCache()).size() > 0 && System.currentTimeMillis() < deadline) {
+            nodeA.removeAll();
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, ((RswUserCache) nodeB.getLocalCache()).size());
+    }
+
+    private UserCacheInvalidationChannel newChannel() {
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        return new UserCacheInvalidationChannel(redisTemplate, CHANNEL);
+    }
+
+    private RedisMessageListenerContainer newContainer(ClusteredUserCache cache) throws Exception {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        cache.subscribe(container);
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    private RswUser getUser(String userName) {
+        RswUser user = new RswUser(userName, "{encoded}", true, null, false,
+                Collections.singletonList(RswGroup.API_USER));
+        return user.setFirstName("Test").setLastName("User").setEmailAddress("test@example.com");
+    }
+}
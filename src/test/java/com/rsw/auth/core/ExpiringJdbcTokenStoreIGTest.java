@@ -0,0 +1,115 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * ExpiringJdbcTokenStore against the tables of sql/0004-oauth-token-store.sql: storing (with expiry) and reading
+ * tokens, the client and user lookups, and removal of expired tokens only
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ExpiringJdbcTokenStoreIGTest {
+
+    private static final String CLIENT = "expiringtokentest";
+    private static final String USER = "expiringtokenuser";
+
+    @Autowired
+    JdbcTemplate testJdbcTemplate;
+
+    private ExpiringJdbcTokenStore tokenStore;
+
+    @Before
+    public void setUp() {
+        tokenStore = new ExpiringJdbcTokenStore(testJdbcTemplate.getDataSource(), 1000);
+    }
+
+    @Test
+    public void storeAccessToken_readAndFind() {
+        OAuth2Authentication userAuth = authentication(CLIENT, USER);
+        DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(
+                UUID.randomUUID().toString(), new Date(System.currentTimeMillis() + 86400000L));
+        DefaultOAuth2AccessToken accessToken = accessToken(3600);
+        accessToken.setRefreshToken(refreshToken);
+        tokenStore.storeAccessToken(accessToken, userAuth);
+        tokenStore.storeRefreshToken(refreshToken, userAuth);
+
+        assertEquals(accessToken, tokenStore.readAccessToken(accessToken.getValue()));
+        assertEquals(USER, tokenStore.readAuthentication(accessToken).getName());
+        assertEquals(accessToken, tokenStore.getAccessToken(userAuth));
+        assertEquals(Collections.singletonList(accessToken), asList(tokenStore.findTokensByClientId(CLIENT)));
+        assertEquals(Collections.singletonList(accessToken),
+                asList(tokenStore.findTokensByClientIdAndUserName(CLIENT, USER)));
+        assertEquals(Collections.singletonList(accessToken), asList(tokenStore.findTokensByUserName(USER)));
+        assertEquals(refreshToken, tokenStore.readRefreshToken(refreshToken.getValue()));
+        assertEquals(USER, tokenStore.readAuthenticationForRefreshToken(refreshToken).getName());
+
+        // storing the same token again replaces its row
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + 7200000L));
+        tokenStore.storeAccessToken(accessToken, userAuth);
+        assertEquals(1, tokenStore.findTokensByClientId(CLIENT).size());
+        assertEquals(accessToken.getExpiration().getTime(), testJdbcTemplate.queryForObject(
+                "select expiry from oauth_access_token where client_id = ?", Date.class, CLIENT).getTime());
+
+        tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+        assertNull(tokenStore.readAccessToken(accessToken.getValue()));
+    }
+
+    @Test
+    public void removeExpiredTokens_keepsLiveAndNonExpiringTokens() {
+        OAuth2Authentication userAuth = authentication(CLIENT, USER);
+        DefaultOAuth2AccessToken expired = accessToken(-3600);
+        tokenStore.storeAccessToken(expired, userAuth);
+        DefaultOAuth2AccessToken live = accessToken(3600);
+        tokenStore.storeAccessToken(live, authentication(CLIENT, "janetest"));
+        DefaultExpiringOAuth2RefreshToken expiredRefresh = new DefaultExpiringOAuth2RefreshToken(
+                UUID.randomUUID().toString(), new Date(System.currentTimeMillis() - 3600000L));
+        tokenStore.storeRefreshToken(expiredRefresh, userAuth);
+        DefaultOAuth2RefreshToken nonExpiringRefresh = new DefaultOAuth2RefreshToken(UUID.randomUUID().toString());
+        tokenStore.storeRefreshToken(nonExpiringRefresh, userAuth);
+
+        assertTrue(tokenStore.removeExpiredTokens() >= 2);
+        assertNull(tokenStore.readAccessToken(expired.getValue()));
+        assertEquals(live, tokenStore.readAccessToken(live.getValue()));
+        assertNull(tokenStore.readRefreshToken(expiredRefresh.getValue()));
+        assertEquals(nonExpiringRefresh, tokenStore.readRefreshToken(nonExpiringRefresh.getValue()));
+    }
+
+    private static DefaultOAuth2AccessToken accessToken(int validitySecs) {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + validitySecs * 1000L));
+        return token;
+    }
+
+    private static List<OAuth2AccessToken> asList(Collection<OAuth2AccessToken> tokens) {
+        return new ArrayList<>(tokens);
+    }
+
+    private static OAuth2Authentication authentication(String clientId, String userName) {
+        OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), clientId,
+                AuthorityUtils.createAuthorityList("ROLE_TRUSTED_CLIENT"), true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken(userName, "N/A",
+                AuthorityUtils.createAuthorityList("ROLE_USER"));
+        return new OAuth2Authentication(request, user);
+    }
+}
@@ -0,0 +1,123 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import com.rsw.auth.domain.RswGroup;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Snapshot loading, authority interning and refresh of GroupAuthorityCache against the groups and
+ * group_authorities seeded by sql/0003-users-groups-init.sql.
+ *
+ * Each test loads its own cache, so changes to the tables (rolled back) never reach the application's snapshot.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class GroupAuthorityCacheIGTest {
+
+    @Autowired
+    JdbcTemplate testJdbcTemplate;
+
+    private GroupAuthorityCache groupAuthorityCache;
+
+    @Before
+    public void setUp() {
+        groupAuthorityCache = new GroupAuthorityCache().setJdbcTemplate(testJdbcTemplate);
+    }
+
+    @Test
+    public void refresh_loadsSeededGroups() {
+        assertTrue(groupAuthorityCache.refresh());
+
+        assertEquals(authorities("ROLE_USER", "ROLE_SYSTEM_ADMIN"),
+                authorityNames(groupAuthorityCache.getAuthorities(RswGroup.SYSTEM_ADMIN)));
+        assertEquals(authorities("ROLE_USER"), authorityNames(groupAuthorityCache.getAuthorities(RswGroup.API_USER)));
+        assertEquals(authorities("ROLE_USER", "ROLE_ADMIN"),
+                authorityNames(groupAuthorityCache.getAuthorities(RswGroup.API_ADMIN)));
+        for (RswGroup group : RswGroup.values()) {
+            assertEquals(groupId(group), groupAuthorityCache.getGroupId(group));
+        }
+
+        List<GrantedAuthority> expanded = new ArrayList<>();
+        groupAuthorityCache.expandAuthorities(Arrays.asList(RswGroup.API_USER, RswGroup.API_ADMIN), expanded);
+        assertEquals(authorities("ROLE_USER", "ROLE_ADMIN"), authorityNames(expanded));
+    }
+
+    @Test
+    public void refresh_sharesAuthorityInstances() {
+        groupAuthorityCache.refresh();
+
+        GrantedAuthority roleUser = groupAuthorityCache.intern("ROLE_USER");
+        for (RswGroup group : RswGroup.values()) {
+            GrantedAuthority groupRoleUser = find(groupAuthorityCache.getAuthorities(group), "ROLE_USER");
+            assertSame(roleUser, groupRoleUser);
+        }
+        assertSame(groupAuthorityCache.intern("ROLE_ADMIN"), groupAuthorityCache.intern("ROLE_ADMIN"));
+        assertEquals(new SimpleGrantedAuthority("ROLE_AUDITOR"), groupAuthorityCache.intern("ROLE_AUDITOR"));
+    }
+
+    @Test
+    public void refresh_picksUpChangedGroupAuthorities() {
+        AtomicInteger changes = new AtomicInteger();
+        groupAuthorityCache.addChangeListener(changes::incrementAndGet);
+        assertTrue(groupAuthorityCache.refresh());
+        assertEquals(1, changes.get());
+        Set<GrantedAuthority> before = groupAuthorityCache.getAuthorities(RswGroup.API_USER);
+
+        // unchanged tables: same snapshot, listeners not notified
+        assertFalse(groupAuthorityCache.refresh());
+        assertEquals(1, changes.get());
+
+        testJdbcTemplate.update("insert into group_authorities (group_id, authority) values (?, ?)",
+                groupId(RswGroup.API_USER), "ROLE_AUDITOR");
+        assertTrue(groupAuthorityCache.refresh());
+        assertEquals(2, changes.get());
+
+        assertEquals(authorities("ROLE_USER", "ROLE_AUDITOR"),
+                authorityNames(groupAuthorityCache.getAuthorities(RswGroup.API_USER)));
+        // the previous snapshot is swapped, not modified
+        assertEquals(authorities("ROLE_USER"), authorityNames(before));
+        try {
+            groupAuthorityCache.getAuthorities(RswGroup.API_USER).add(new SimpleGrantedAuthority("ROLE_OTHER"));
+            fail("expected an unmodifiable set");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private Integer groupId(RswGroup group) {
+        return testJdbcTemplate.queryForObject("select id from groups where group_name = ?", Integer.class,
+                group.name());
+    }
+
+    private static Set<String> authorities(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> authorityNames(Collection<? extends GrantedAuthority> authorities) {
+        return AuthorityUtils.authorityListToSet(authorities);
+    }
+
+    private static GrantedAuthority find(Collection<GrantedAuthority> authorities, String name) {
+        for (GrantedAuthority authority : authorities) {
+            if (authority.getAuthority().equals(name)) {
+                return authority;
+            }
+        }
+        fail(name + " not found in " + authorities);
+        return null;
+    }
+}
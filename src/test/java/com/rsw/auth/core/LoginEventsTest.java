@@ -0,0 +1,30 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * LoginEvents are inert without an active recording (or on a runtime without JFR), and username hashes are
+ * stable and do not reveal the username
+ */
+public class LoginEventsTest {
+
+    @Test
+    public void begin_nullWithoutRecording() {
+        Object event = LoginEvents.begin(LoginEvents.Stage.CHECK_PASSWORD);
+        assertNull(event);
+        // a null event is ignored
+        LoginEvents.commit(event, "joetest");
+    }
+
+    @Test
+    public void usernameHash_stableHex() {
+        String hash = LoginEvents.usernameHash("joetest");
+        assertEquals(16, hash.length());
+        assertTrue(hash.matches("[0-9a-f]+"));
+        assertEquals(hash, LoginEvents.usernameHash("joetest"));
+        assertNotEquals(hash, LoginEvents.usernameHash("joetest2"));
+        assertNull(LoginEvents.usernameHash(null));
+    }
+}
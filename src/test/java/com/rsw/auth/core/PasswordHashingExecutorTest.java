@@ -0,0 +1,88 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import com.rsw.auth.exception.PasswordHashingRejectedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejection of hashing work by a saturated PasswordHashingExecutor, through BoundedPasswordEncoder, with the
+ * configured Retry-After
+ */
+public class PasswordHashingExecutorTest {
+
+    private static final int RETRY_AFTER_SECS = 7;
+
+    private PasswordHashingExecutor executor;
+    private BoundedPasswordEncoder encoder;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        executor = new PasswordHashingExecutor(1, 1, RETRY_AFTER_SECS);
+        encoder = new BoundedPasswordEncoder(new PlainPasswordEncoder(), executor);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void belowCapacity_hashesOnPool() throws Exception {
+        assertEquals("{plain}secret", encoder.encode("secret"));
+        assertTrue(encoder.matches("secret", "{plain}secret"));
+        assertTrue(encoder.matchesAny("secret", Arrays.asList("{plain}other", "{plain}secret")));
+        assertFalse(encoder.matchesAny("secret", Arrays.asList("{plain}other", "{plain}another")));
+        assertEquals(0L, executor.getRejectedCount());
+    }
+
+    @Test
+    public void saturated_rejectsWithRetryAfter() throws Exception {
+        // one task on the only thread, one in the single queue slot
+        Future<Boolean> running = executor.submit(() -> release.await(10, TimeUnit.SECONDS));
+        Future<Boolean> queued = executor.submit(() -> true);
+        assertEquals(1, executor.getQueueDepth());
+
+        try {
+            encoder.encode("secret");
+            fail("expected PasswordHashingRejectedException");
+        } catch (PasswordHashingRejectedException e) {
+            assertEquals(RETRY_AFTER_SECS, e.getRetryAfterSecs());
+        }
+        try {
+            encoder.matches("secret", "{plain}secret");
+            fail("expected PasswordHashingRejectedException");
+        } catch (PasswordHashingRejectedException e) {
+            assertEquals(RETRY_AFTER_SECS, e.getRetryAfterSecs());
+        }
+        assertEquals(2L, executor.getRejectedCount());
+
+        release.countDown();
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+        assertEquals("{plain}secret", encoder.encode("secret"));
+    }
+
+    private static class PlainPasswordEncoder implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return "{plain}" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    }
+}
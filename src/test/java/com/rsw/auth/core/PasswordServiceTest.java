@@ -0,0 +1,159 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the number of (expensive) password encoder calls made by each password write path
+ */
+public class PasswordServiceTest {
+
+    private static final String USER = "joetest";
+    private static final String OLD_PASSWORD = "MyP@ssw0rd1";
+    private static final String NEW_PASSWORD = "abCDE-123";
+
+    private CountingPasswordEncoder passwordEncoder;
+    private JdbcTemplate jdbcTemplate;
+    private AuthenticationManager authenticationManager;
+    private PasswordService passwordService;
+
+    @Before
+    public void setUp() {
+        passwordEncoder = new CountingPasswordEncoder(new BCryptPasswordEncoder(4));
+        jdbcTemplate = mock(JdbcTemplate.class);
+        authenticationManager = mock(AuthenticationManager.class);
+        when(authenticationManager.authenticate(any(Authentication.class)))
+                .thenReturn(new UsernamePasswordAuthenticationToken(USER, OLD_PASSWORD));
+
+        passwordService = new PasswordService();
+        passwordService.setJdbcTemplate(jdbcTemplate)
+                .setPasswordEncoder(passwordEncoder);
+        passwordService.setAuthenticationManager(authenticationManager);
+        passwordService.setPasswordExpiryDays(90);
+        passwordService.setPasswordRecycleSpan(4);
+        passwordService.onPostConstruct();
+    }
+
+    @Test
+    public void changePassword_encodesOnce() throws Exception {
+        givenHistory("abCD-2", "abCD-3", OLD_PASSWORD);
+
+        passwordService.changePassword(USER, OLD_PASSWORD, NEW_PASSWORD);
+
+        assertEquals(1, passwordEncoder.encodeCount.get());
+        assertEquals(3, passwordEncoder.matchesCount.get());
+
+        // the single hash is written to both users and password_history
+        ArgumentCaptor<PreparedStatementSetter> setters = ArgumentCaptor.forClass(PreparedStatementSetter.class);
+        verify(jdbcTemplate, times(2)).update(anyString(), setters.capture());
+        String usersHash = capturedString(setters.getAllValues().get(0), 1);
+        String historyHash = capturedString(setters.getAllValues().get(1), 2);
+        assertEquals(usersHash, historyHash);
+        assertTrue(new BCryptPasswordEncoder(4).matches(NEW_PASSWORD, usersHash));
+    }
+
+    @Test
+    public void changePassword_historyCheckStopsAtFirstMatch() throws Exception {
+        givenHistory(NEW_PASSWORD, "abCD-3", "abCD-4", OLD_PASSWORD);
+
+        Exception exc = null;
+        try {
+            passwordService.changePassword(USER, OLD_PASSWORD, NEW_PASSWORD);
+        } catch (IllegalArgumentException e) {
+            exc = e;
+        }
+        assertNotNull(exc);
+        assertEquals("Cannot reuse an old password", exc.getMessage());
+        assertEquals(1, passwordEncoder.matchesCount.get());
+        assertEquals(0, passwordEncoder.encodeCount.get());
+    }
+
+    @Test
+    public void validateChangePassword_parallelHistoryCheck() throws Exception {
+        PasswordHashingExecutor hashingExecutor = new PasswordHashingExecutor(4, 16, 1);
+        try {
+            passwordService.setHashingExecutor(hashingExecutor, passwordEncoder);
+            givenHistory("abCD-2", "abCD-3", "abCD-4", NEW_PASSWORD);
+
+            Exception exc = null;
+            try {
+                passwordService.validateChangePassword(USER, NEW_PASSWORD);
+            } catch (IllegalArgumentException e) {
+                exc = e;
+            }
+            assertNotNull(exc);
+            assertEquals("Cannot reuse an old password", exc.getMessage());
+
+            // no match anywhere in the history - every comparison runs
+            passwordService.validateChangePassword(USER, "abCD-5");
+            assertEquals(0, passwordEncoder.encodeCount.get());
+        } finally {
+            hashingExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void recordPasswordHistory_doesNotEncode() throws Exception {
+        String encoded = passwordService.encodePassword(USER, NEW_PASSWORD);
+        passwordService.recordPasswordHistory(USER, encoded);
+
+        assertEquals(1, passwordEncoder.encodeCount.get());
+        assertEquals(0, passwordEncoder.matchesCount.get());
+    }
+
+    private void givenHistory(String... clearPasswords) {
+        BCryptPasswordEncoder setupEncoder = new BCryptPasswordEncoder(4);
+        List<String> history = Arrays.asList(clearPasswords);
+        history.replaceAll(setupEncoder::encode);
+        when(jdbcTemplate.queryForList(anyString(), any(Object[].class), eq(String.class))).thenReturn(history);
+    }
+
+    private static String capturedString(PreparedStatementSetter setter, int paramIndex) throws Exception {
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.setValues(ps);
+        ArgumentCaptor<String> value = ArgumentCaptor.forClass(String.class);
+        verify(ps).setString(eq(paramIndex), value.capture());
+        return value.getValue();
+    }
+
+    private static class CountingPasswordEncoder implements PasswordEncoder {
+        private final PasswordEncoder delegate;
+        private final AtomicInteger encodeCount = new AtomicInteger();
+        private final AtomicInteger matchesCount = new AtomicInteger();
+
+        CountingPasswordEncoder(PasswordEncoder delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            encodeCount.incrementAndGet();
+            return delegate.encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            matchesCount.incrementAndGet();
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.rsw.auth.domain.RswUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Routing of ReplicaRoutingDataSource by transaction read-only state, round-robin over replicas, and fallback to
+ * the primary on lag or connection failure or for keys pinned after a write; RswUserDetailsService loading (and
+ * caching) a user it just wrote from the primary
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private Connection primaryConnection;
+    private Connection replica1Connection;
+    private Connection replica2Connection;
+    private DataSource replica2;
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        primaryConnection = mock(Connection.class);
+        replica1Connection = mock(Connection.class);
+        replica2Connection = mock(Connection.class);
+        DataSource primary = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        DataSource replica1 = mock(DataSource.class);
+        when(replica1.getConnection()).thenReturn(replica1Connection);
+        replica2 = mock(DataSource.class);
+        when(replica2.getConnection()).thenReturn(replica2Connection);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica1", replica1);
+        replicas.put("replica2", replica2);
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, 500L, 100L);
+        routingDataSource.recordLag("replica1", 0.0);
+        routingDataSource.recordLag("replica2", 0.2);
+    }
+
+    @After
+    public void tearDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    public void readWriteOrNoTransaction_usesPrimary() throws Exception {
+        assertSame(primaryConnection, routingDataSource.getConnection());
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        assertSame(primaryConnection, routingDataSource.getConnection());
+
+        // read-only without an actual transaction (e.g. propagation SUPPORTS)
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, routingDataSource.getConnection());
+
+        assertEquals(3L, routingDataSource.getConnectionCounts().get(ReplicaRoutingDataSource.PRIMARY).longValue());
+        assertEquals(0L, routingDataSource.getFallbackCount());
+    }
+
+    @Test
+    public void readOnlyTransaction_roundRobinOverReplicas() throws Exception {
+        beginReadOnly();
+        assertSame(replica1Connection, routingDataSource.getConnection());
+        assertSame(replica2Connection, routingDataSource.getConnection());
+        assertSame(replica1Connection, routingDataSource.getConnection());
+
+        Map<String, Long> counts = routingDataSource.getConnectionCounts();
+        assertEquals(0L, counts.get(ReplicaRoutingDataSource.PRIMARY).longValue());
+        assertEquals(2L, counts.get("replica1").longValue());
+        assertEquals(1L, counts.get("replica2").longValue());
+    }
+
+    @Test
+    public void laggingReplica_skippedUntilCaughtUp() throws Exception {
+        routingDataSource.recordLag("replica1", 2.5);
+        assertFalse(routingDataSource.isReplicaAvailable("replica1"));
+        assertEquals(2.5, routingDataSource.getReplicaLagSeconds().get("replica1"), 0.0);
+
+        beginReadOnly();
+        assertSame(replica2Connection, routingDataSource.getConnection());
+        assertSame(replica2Connection, routingDataSource.getConnection());
+
+        routingDataSource.recordLag("replica1", 0.1);
+        assertTrue(routingDataSource.isReplicaAvailable("replica1"));
+        assertNotSame(routingDataSource.getConnection(), routingDataSource.getConnection());
+    }
+
+    @Test
+    public void noReplicaAvailable_fallsBackToPrimary() throws Exception {
+        routingDataSource.recordLag("replica1", null);
+        routingDataSource.recordLag("replica2", 10.0);
+        assertTrue(Double.isNaN(routingDataSource.getReplicaLagSeconds().get("replica1")));
+
+        beginReadOnly();
+        assertSame(primaryConnection, routingDataSource.getConnection());
+        assertEquals(1L, routingDataSource.getFallbackCount());
+    }
+
+    @Test
+    public void replicaConnectionFailure_fallsBackAndMarksUnavailable() throws Exception {
+        when(replica2.getConnection()).thenThrow(new SQLException("connection refused"));
+
+        beginReadOnly();
+        assertSame(replica1Connection, routingDataSource.getConnection());
+        assertSame(primaryConnection, routingDataSource.getConnection());
+        assertFalse(routingDataSource.isReplicaAvailable("replica2"));
+        assertEquals(1L, routingDataSource.getFallbackCount());
+
+        assertSame(replica1Connection, routingDataSource.getConnection());
+        assertSame(replica1Connection, routingDataSource.getConnection());
+    }
+
+    @Test
+    public void onPrimary_overridesReadOnlyRouting() throws Exception {
+        beginReadOnly();
+        assertSame(primaryConnection, ReplicaRoutingDataSource.onPrimary(this::connection));
+        assertSame(replica1Connection, routingDataSource.getConnection());
+        assertEquals(0L, routingDataSource.getFallbackCount());
+    }
+
+    @Test
+    public void pinToPrimary_expiresAfterLagWindow() throws Exception {
+        ReplicaRoutingDataSource shortWindow =
+                new ReplicaRoutingDataSource(mock(DataSource.class), new LinkedHashMap<>(), 5L, 5L);
+        shortWindow.pinToPrimary("joetest");
+        assertTrue(shortWindow.isPinnedToPrimary("joetest"));
+        assertFalse(shortWindow.isPinnedToPrimary("other"));
+
+        Thread.sleep(20);
+        assertFalse(shortWindow.isPinnedToPrimary("joetest"));
+    }
+
+    @Test
+    public void userWrite_loadsFromPrimaryBeforeCaching() throws Exception {
+        // the replicas still have the user's old password hash, the primary the new one
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.query(eq(RswUserDetailsService.DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY), any(Object[].class),
+                any(ResultSetExtractor.class))).thenAnswer(invocation -> {
+                    String password = (connection() == primaryConnection ? "new-hash" : "old-hash");
+                    return new RswUser("joetest", password, true, null, false,
+                            AuthorityUtils.createAuthorityList("ROLE_USER"));
+                });
+        RswUserCache userCache = new RswUserCache(10, 300);
+        RswUserDetailsService userDetailsService = new RswUserDetailsService();
+        userDetailsService.setJdbcTemplate(jdbcTemplate);
+        userDetailsService.setPasswordService(mock(PasswordService.class));
+        userDetailsService.setUserCache(userCache);
+        userDetailsService.setReplicaRoutingDataSource(routingDataSource);
+
+        beginReadOnly();
+        assertEquals("old-hash", userDetailsService.loadUserByUsername("JoeTest").getPassword());
+
+        userDetailsService.changePassword("JoeTest", "old", "new");
+        assertNull(userCache.getUserFromCache("joetest"));
+        assertTrue(routingDataSource.isPinnedToPrimary("joetest"));
+
+        assertEquals("new-hash", userDetailsService.loadUserByUsername("JoeTest").getPassword());
+        assertEquals("new-hash", userCache.getUserFromCache("joetest").getPassword());
+        assertEquals("new-hash", userDetailsService.loadUserByUsername("joetest").getPassword());
+    }
+
+    private Connection connection() {
+        try {
+            return routingDataSource.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void beginReadOnly() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+}
@@ -0,0 +1,71 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.rsw.auth.domain.RswUser;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * Invalidation generations of RswUserCache, and RswUserDetailsService not caching a user evicted while it loaded
+ */
+public class RswUserCacheTest {
+
+    private RswUserCache userCache;
+
+    @Before
+    public void setUp() {
+        userCache = new RswUserCache(10, 300);
+    }
+
+    @Test
+    public void putUserInCache_skippedAfterRemoval() {
+        long generation = userCache.getGeneration("joetest");
+        userCache.removeUserFromCache("joetest");
+        assertFalse(userCache.putUserInCache(user("joetest", "old-hash"), generation));
+        assertNull(userCache.getUserFromCache("joetest"));
+
+        generation = userCache.getGeneration("joetest");
+        userCache.clear();
+        assertFalse(userCache.putUserInCache(user("joetest", "old-hash"), generation));
+
+        generation = userCache.getGeneration("joetest");
+        assertTrue(userCache.putUserInCache(user("joetest", "new-hash"), generation));
+        assertEquals("new-hash", userCache.getUserFromCache("joetest").getPassword());
+    }
+
+    @Test
+    public void loadUserByUsername_evictedDuringLoad_notCached() {
+        // the first load reads the row, then a concurrent lock commits and evicts before the load caches it
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.query(eq(RswUserDetailsService.DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY), any(Object[].class),
+                any(ResultSetExtractor.class)))
+                .thenAnswer(invocation -> {
+                    userCache.removeUserFromCache("joetest");
+                    return user("joetest", "unlocked");
+                })
+                .thenReturn(user("joetest", "locked"));
+        RswUserDetailsService userDetailsService = new RswUserDetailsService();
+        userDetailsService.setJdbcTemplate(jdbcTemplate);
+        userDetailsService.setPasswordService(mock(PasswordService.class));
+        userDetailsService.setUserCache(new ClusteredUserCache(userCache, mock(UserCacheInvalidationChannel.class)));
+
+        assertEquals("unlocked", userDetailsService.loadUserByUsername("JoeTest").getPassword());
+        assertNull(userCache.getUserFromCache("joetest"));
+
+        assertEquals("locked", userDetailsService.loadUserByUsername("JoeTest").getPassword());
+        assertEquals("locked", userCache.getUserFromCache("joetest").getPassword());
+        verify(jdbcTemplate, times(2)).query(eq(RswUserDetailsService.DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY),
+                any(Object[].class), any(ResultSetExtractor.class));
+    }
+
+    private static RswUser user(String username, String password) {
+        return new RswUser(username, password, true, null, false, AuthorityUtils.createAuthorityList("ROLE_USER"));
+    }
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.*;
 import com.rsw.auth.domain.RswGroup;
 import com.rsw.auth.domain.RswUser;
 import com.rsw.auth.domain.UserProfileUpdate;
+import com.rsw.auth.domain.UserSearch;
+import com.rsw.auth.domain.UserSearchPage;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
@@ -19,6 +21,7 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayOutputStream;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -53,6 +56,18 @@ public class RswUserDetailsServiceIGTest {
         assertTrue(pgroups.get(0).equals(RswGroup.SYSTEM_ADMIN));
 	}
 
+    @Test
+    public void createUser_historyReusesHash() throws Exception {
+        RswUser user = getUser("joetest", "MyP@ssw0rd1", RswGroup.SYSTEM_ADMIN);
+        userDetailsService.createUser(user);
+
+        RswUser puser = getPersistedUser(user.getUsername());
+        List<String> history = testJdbcTemplate.queryForList(
+                "select password from password_history where username = ?", String.class, user.getUsername());
+        assertEquals(1, history.size());
+        assertEquals(puser.getPassword(), history.get(0));
+    }
+
     @Test
     public void createUser_expired() throws Exception {
         RswUser user = getUser("joetest", "MyP@ssw0rd1", true, LocalDateTime.now(), false, RswGroup.SYSTEM_ADMIN);
@@ -290,6 +305,113 @@ public class RswUserDetailsServiceIGTest {
         assertTrue(puser.getGroups().get(0).equals(RswGroup.SYSTEM_ADMIN));
 	}
 
+	@Test
+	public void loadUserByUsername_singleQueryMatchesMultiQuery() throws Exception {
+        RswUser user = getUser("joetest", "MyP@ssw0rd1", RswGroup.SYSTEM_ADMIN);
+		userDetailsService.createUser(user);
+
+        RswUser single = (RswUser) userDetailsService.loadUserByUsername(user.getUsername());
+        userDetailsService.getUserCache().removeUserFromCache(user.getUsername());
+        userDetailsService.setSingleQueryLoad(false);
+        RswUser multi;
+        try {
+            multi = (RswUser) userDetailsService.loadUserByUsername(user.getUsername());
+        } finally {
+            userDetailsService.setSingleQueryLoad(true);
+        }
+
+        assertEquals(multi.getUsername(), single.getUsername());
+        assertEquals(multi.getPassword(), single.getPassword());
+        assertEquals(multi.getGroups(), single.getGroups());
+        assertEquals(new HashSet<>(multi.getAuthorities()), new HashSet<>(single.getAuthorities()));
+        assertEquals(multi.getEmailAddress(), single.getEmailAddress());
+        assertEquals(multi.isAccountNonLocked(), single.isAccountNonLocked());
+        assertEquals(multi.isCredentialsNonExpired(), single.isCredentialsNonExpired());
+	}
+
+	@Test
+	public void updateUserAdmin_evictsCachedUser() throws Exception {
+        RswUser user = getUser("joetest", "MyP@ssw0rd1", RswGroup.SYSTEM_ADMIN);
+		userDetailsService.createUser(user);
+
+        RswUser puser = (RswUser) userDetailsService.loadUserByUsername(user.getUsername());
+        assertTrue(puser.isAccountNonLocked());
+        assertNotNull(userDetailsService.getUserCache().getUserFromCache(user.getUsername()));
+
+        // lock account - cached entry must not survive the update
+        RswUser updUser = getUser(user.getUsername(), "", true, null, true, RswGroup.SYSTEM_ADMIN);
+        userDetailsService.updateUserAdmin(updUser);
+        assertNull(userDetailsService.getUserCache().getUserFromCache(user.getUsername()));
+
+        puser = (RswUser) userDetailsService.loadUserByUsername(user.getUsername());
+        assertFalse(puser.isAccountNonLocked());
+	}
+
+	@Test
+	public void updateUserAdmin_changesOnlyDifferingGroups() throws Exception {
+        RswUser user = getUser("joetest", "MyP@ssw0rd1", RswGroup.SYSTEM_ADMIN, RswGroup.API_USER);
+		userDetailsService.createUser(user);
+        String keptRow = getGroupMemberRowId(user.getUsername(), RswGroup.API_USER);
+
+        RswUser updUser = getUser(user.getUsername(), "", RswGroup.API_USER, RswGroup.API_ADMIN);
+        userDetailsService.updateUserAdmin(updUser);
+
+        RswUser puser = getPersistedUser(user.getUsername());
+        assertEquals(new HashSet<>(Arrays.asList(RswGroup.API_USER, RswGroup.API_ADMIN)),
+                new HashSet<>(puser.getGroups()));
+        // unchanged membership is neither deleted nor re-inserted
+        assertEquals(keptRow, getGroupMemberRowId(user.getUsername(), RswGroup.API_USER));
+	}
+
+	@Test
+	public void searchUsers_keysetPages() throws Exception {
+        userDetailsService.createUser(getUser("srch_b", "MyP@ssw0rd1", RswGroup.API_USER).setLastName("Zzsearch"));
+        userDetailsService.createUser(getUser("srch_a", "MyP@ssw0rd1", RswGroup.API_USER).setLastName("zzSearch"));
+        userDetailsService.createUser(getUser("srch_c", "MyP@ssw0rd1", RswGroup.API_USER).setLastName("ZZSEARCHER"));
+
+        UserSearchPage page = userDetailsService.searchUsers(new UserSearch().setLastNamePrefix("zZsEarch")
+                .setPageSize(2));
+        assertEquals(2, page.getUsers().size());
+        assertEquals("srch_a", page.getUsers().get(0).getUsername());
+        assertEquals("srch_b", page.getUsers().get(1).getUsername());
+        assertNull(page.getUsers().get(0).getPassword());
+        assertFalse(page.isLastPage());
+
+        page = userDetailsService.searchUsers(new UserSearch().setLastNamePrefix("zZsEarch").setPageSize(2)
+                .setAfterLastName(page.getNextLastName()).setAfterUsername(page.getNextUsername()));
+        assertEquals(1, page.getUsers().size());
+        assertEquals("srch_c", page.getUsers().get(0).getUsername());
+        assertTrue(page.isLastPage());
+
+        // '_' is matched literally, not as a wildcard
+        assertEquals("srch\\_%", RswUserDetailsService.prefixPattern("SRCH_"));
+        assertEquals(3, userDetailsService.searchUsers(new UserSearch().setUsernamePrefix("SRCH_")).getUsers().size());
+        assertEquals(0, userDetailsService.searchUsers(new UserSearch().setUsernamePrefix("srchx")).getUsers().size());
+	}
+
+	@Test
+	public void exportUsers_streamsUsersWithGroups() throws Exception {
+        RswUser user = getUser("joetest", "MyP@ssw0rd1", RswGroup.SYSTEM_ADMIN, RswGroup.API_USER);
+		userDetailsService.createUser(user);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UserExportWriter writer = new UserExportWriter(out);
+        userDetailsService.exportUsers(writer);
+        writer.flush();
+
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(writer.getCount(), lines.length);
+        String exported = null;
+        for (String line : lines) {
+            if (line.startsWith("{\"username\":\"joetest\"")) {
+                exported = line;
+            }
+        }
+        assertNotNull(exported);
+        assertTrue(exported.contains("\"groups\":[\"API_USER\",\"SYSTEM_ADMIN\"]"));
+        assertFalse(exported.contains(getPersistedUser(user.getUsername()).getPassword()));
+	}
+
 	@Test
 	public void deleteUser() throws Exception {
         RswUser user = getUser("joetest", "MyP@ssw0rd1", RswGroup.SYSTEM_ADMIN);
@@ -399,4 +521,13 @@ public class RswUserDetailsServiceIGTest {
                 new RswGroupRowMapper());
     }
 
+    /**
+     * physical row location - changes when the row is deleted and re-inserted, even within one transaction
+     */
+    private String getGroupMemberRowId(String userName, RswGroup group) {
+        return testJdbcTemplate.queryForObject("select gm.ctid::text from group_members gm " +
+                " join groups g on g.id = gm.group_id " +
+                " where gm.username = ? and g.group_name = ?", String.class, userName, group.name());
+    }
+
 }
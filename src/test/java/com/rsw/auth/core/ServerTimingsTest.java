@@ -0,0 +1,45 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Phase accumulation and Server-Timing header format of ServerTimings
+ */
+public class ServerTimingsTest {
+
+    @Test
+    public void add_ignoredOutsideRequest() {
+        ServerTimings timings = ServerTimings.start();
+        timings.stop();
+        ServerTimings.add(ServerTimings.Phase.DB, 1000000L);
+        assertEquals(0L, timings.getNanos(ServerTimings.Phase.DB));
+    }
+
+    @Test
+    public void toHeader_accumulatedPhases() {
+        ServerTimings timings = ServerTimings.start();
+        try {
+            ServerTimings.add(ServerTimings.Phase.DB, 1000000L);
+            ServerTimings.add(ServerTimings.Phase.DB, 520000L);
+            ServerTimings.add(ServerTimings.Phase.HASH, 62104000L);
+        } finally {
+            timings.stop();
+        }
+        assertEquals(2, timings.getCount(ServerTimings.Phase.DB));
+        assertEquals("db;dur=1.52;desc=\"2\", hash;dur=62.10;desc=\"1\", total;dur=66.03",
+                timings.toHeader(66030000L));
+    }
+
+    @Test
+    public void start_resetsPreviousRequest() {
+        ServerTimings timings = ServerTimings.start();
+        ServerTimings.add(ServerTimings.Phase.SIGN, 3000000L);
+        timings.stop();
+
+        timings = ServerTimings.start();
+        timings.stop();
+        assertEquals("total;dur=0.05", timings.toHeader(50000L));
+    }
+}
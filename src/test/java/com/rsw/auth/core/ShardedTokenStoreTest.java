@@ -0,0 +1,153 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+
+import java.util.*;
+
+/**
+ * Lookups, secondary indexes, refresh token links (in DefaultTokenServices' store order), proactive expiry
+ * and the size bound of ShardedTokenStore
+ */
+public class ShardedTokenStoreTest {
+
+    private static final String CLIENT = "rsw";
+    private static final String USER = "joetest";
+
+    private ShardedTokenStore tokenStore;
+
+    @Before
+    public void setUp() {
+        tokenStore = new ShardedTokenStore(4, 100, 60000L);
+    }
+
+    @After
+    public void tearDown() {
+        tokenStore.shutdown();
+    }
+
+    @Test
+    public void storeAccessToken_indexesByClientAndUser() {
+        OAuth2Authentication userAuth = authentication(CLIENT, USER);
+        DefaultOAuth2AccessToken userToken = accessToken(3600);
+        tokenStore.storeAccessToken(userToken, userAuth);
+        DefaultOAuth2AccessToken clientToken = accessToken(3600);
+        tokenStore.storeAccessToken(clientToken, authentication(CLIENT, null));
+
+        assertEquals(userToken, tokenStore.readAccessToken(userToken.getValue()));
+        assertEquals(USER, tokenStore.readAuthentication(userToken).getName());
+        assertEquals(userToken, tokenStore.getAccessToken(userAuth));
+        assertEquals(2, tokenStore.findTokensByClientId(CLIENT).size());
+        assertEquals(Collections.singletonList(userToken),
+                new ArrayList<>(tokenStore.findTokensByClientIdAndUserName(CLIENT, USER)));
+
+        tokenStore.removeAccessToken(userToken);
+        assertNull(tokenStore.readAccessToken(userToken.getValue()));
+        assertNull(tokenStore.getAccessToken(userAuth));
+        assertTrue(tokenStore.findTokensByClientIdAndUserName(CLIENT, USER).isEmpty());
+        assertEquals(1, tokenStore.findTokensByClientId(CLIENT).size());
+    }
+
+    @Test
+    public void refreshAccessToken_removesPreviousAccessToken() {
+        DefaultTokenServices tokenServices = new DefaultTokenServices();
+        tokenServices.setTokenStore(tokenStore);
+        tokenServices.setSupportRefreshToken(true);
+
+        // DefaultTokenServices stores the access token before its refresh token
+        OAuth2AccessToken accessToken = tokenServices.createAccessToken(authentication(CLIENT, USER));
+        OAuth2RefreshToken refreshToken = accessToken.getRefreshToken();
+        assertNotNull(refreshToken);
+        assertEquals(USER, tokenStore.readAuthenticationForRefreshToken(refreshToken).getName());
+
+        OAuth2AccessToken refreshed = tokenServices.refreshAccessToken(refreshToken.getValue(),
+                new TokenRequest(Collections.<String, String>emptyMap(), CLIENT, Collections.<String>emptySet(),
+                        "refresh_token"));
+        assertNotEquals(accessToken.getValue(), refreshed.getValue());
+        assertNull(tokenStore.readAccessToken(accessToken.getValue()));
+        assertEquals(refreshed, tokenStore.readAccessToken(refreshed.getValue()));
+        assertEquals(refreshToken, tokenStore.readRefreshToken(refreshToken.getValue()));
+        assertEquals(Collections.singletonList(refreshed),
+                new ArrayList<>(tokenStore.findTokensByClientIdAndUserName(CLIENT, USER)));
+
+        // the refreshed token is linked in turn
+        tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+        assertNull(tokenStore.readAccessToken(refreshed.getValue()));
+    }
+
+    @Test
+    public void removeRefreshToken_unlinksAccessToken() {
+        OAuth2Authentication userAuth = authentication(CLIENT, USER);
+        DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(
+                UUID.randomUUID().toString(), new Date(System.currentTimeMillis() + 86400000L));
+        DefaultOAuth2AccessToken accessToken = accessToken(3600);
+        accessToken.setRefreshToken(refreshToken);
+        tokenStore.storeAccessToken(accessToken, userAuth);
+        tokenStore.storeRefreshToken(refreshToken, userAuth);
+
+        tokenStore.removeRefreshToken(refreshToken);
+        tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+        assertNull(tokenStore.readRefreshToken(refreshToken.getValue()));
+        assertEquals(accessToken, tokenStore.readAccessToken(accessToken.getValue()));
+    }
+
+    @Test
+    public void removeExpired_removesOnlyExpiredTokens() {
+        DefaultOAuth2AccessToken expired = accessToken(-1);
+        DefaultOAuth2AccessToken live = accessToken(3600);
+        tokenStore.storeAccessToken(expired, authentication(CLIENT, USER));
+        tokenStore.storeAccessToken(live, authentication(CLIENT, "janetest"));
+
+        tokenStore.removeExpired();
+        assertNull(tokenStore.readAccessToken(expired.getValue()));
+        assertNotNull(tokenStore.readAccessToken(live.getValue()));
+        assertEquals(1, tokenStore.getExpiredCount());
+        assertEquals(1, tokenStore.getTokenCount());
+        assertTrue(tokenStore.findTokensByClientIdAndUserName(CLIENT, USER).isEmpty());
+    }
+
+    @Test
+    public void storeAccessToken_evictsClosestToExpiryWhenFull() {
+        List<DefaultOAuth2AccessToken> tokens = new ArrayList<>();
+        for (int ix = 0; ix < 150; ix++) {
+            DefaultOAuth2AccessToken token = accessToken(3600 + ix);
+            tokens.add(token);
+            tokenStore.storeAccessToken(token, authentication("client-" + ix, null));
+        }
+
+        assertEquals(100, tokenStore.getTokenCount());
+        assertEquals(100, tokenStore.getAccessTokenCount());
+        assertEquals(50, tokenStore.getEvictedCount());
+        assertNull(tokenStore.readAccessToken(tokens.get(0).getValue()));
+        assertNotNull(tokenStore.readAccessToken(tokens.get(149).getValue()));
+    }
+
+    private static DefaultOAuth2AccessToken accessToken(int validitySecs) {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + validitySecs * 1000L));
+        return token;
+    }
+
+    private static OAuth2Authentication authentication(String clientId, String userName) {
+        OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), clientId,
+                AuthorityUtils.createAuthorityList("ROLE_TRUSTED_CLIENT"), true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        UsernamePasswordAuthenticationToken user = (userName == null ? null :
+                new UsernamePasswordAuthenticationToken(userName, "N/A",
+                        AuthorityUtils.createAuthorityList("ROLE_USER")));
+        return new OAuth2Authentication(request, user);
+    }
+}
@@ -0,0 +1,73 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-token results, ordering and saturation behavior of batch introspection
+ */
+public class TokenIntrospectionServiceTest {
+
+    private TokenIntrospectionService service;
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void introspect_failuresDoNotFailBatch() {
+        service = new TokenIntrospectionService(TokenIntrospectionServiceTest::check, 2, 4, 10);
+
+        List<Map<String, Object>> results = service.introspect(
+                Arrays.asList("good-1", "expired", "good-2", "boom"));
+
+        assertEquals(4, results.size());
+        assertEquals(true, results.get(0).get(TokenIntrospectionService.ACTIVE));
+        assertEquals("good-1", results.get(0).get("client_id"));
+        assertEquals(false, results.get(1).get(TokenIntrospectionService.ACTIVE));
+        assertEquals("invalid_token", results.get(1).get(TokenIntrospectionService.ERROR));
+        assertEquals("good-2", results.get(2).get("client_id"));
+        assertEquals("server_error", results.get(3).get(TokenIntrospectionService.ERROR));
+    }
+
+    @Test
+    public void introspect_saturatedPoolRunsOnCaller() {
+        service = new TokenIntrospectionService(TokenIntrospectionServiceTest::check, 1, 1, 50);
+        List<String> tokens = new ArrayList<>();
+        for (int ix = 0; ix < 50; ix++) {
+            tokens.add("good-" + ix);
+        }
+
+        List<Map<String, Object>> results = service.introspect(tokens);
+        assertEquals(50, results.size());
+        for (int ix = 0; ix < 50; ix++) {
+            assertEquals("good-" + ix, results.get(ix).get("client_id"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void introspect_batchTooLarge() {
+        service = new TokenIntrospectionService(TokenIntrospectionServiceTest::check, 1, 1, 2);
+        service.introspect(Arrays.asList("good-1", "good-2", "good-3"));
+    }
+
+    private static Map<String, ?> check(String token) {
+        if (token.startsWith("good")) {
+            return Collections.singletonMap("client_id", token);
+        }
+        if (token.equals("expired")) {
+            throw new InvalidTokenException("Token has expired");
+        }
+        throw new IllegalStateException("store unavailable");
+    }
+}
@@ -0,0 +1,81 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+
+import com.rsw.auth.domain.RswGroup;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * NDJSON and CSV parsing of UserImportReader, and the COPY row format of UserImportService
+ */
+public class UserImportReaderTest {
+
+    @Test
+    public void next_ndjson() throws Exception {
+        UserImportReader reader = new UserImportReader(new StringReader(
+                "{\"username\":\"jdoe\",\"password\":\"MyP@ssw0rd1\",\"firstName\":\"John\",\"lastName\":\"Doe\"," +
+                        "\"emailAddress\":\"jdoe@example.com\",\"locked\":true,\"groups\":[\"API_USER\",\"API_ADMIN\"]}\n" +
+                        "\n" +
+                        "{\"username\":\"asmith\"\n"),
+                UserImportReader.Format.NDJSON);
+
+        UserImportReader.Row row = reader.next();
+        assertNull(row.getError());
+        assertEquals(1, row.getLine());
+        assertEquals("jdoe", row.getUser().getUsername());
+        assertEquals("MyP@ssw0rd1", row.getUser().getPassword());
+        assertEquals("Doe", row.getUser().getLastName());
+        assertTrue(row.getUser().isEnabled());
+        assertFalse(row.getUser().isAccountNonLocked());
+        assertEquals(Arrays.asList(RswGroup.API_USER, RswGroup.API_ADMIN), row.getUser().getGroups());
+
+        row = reader.next();
+        assertEquals(3, row.getLine());
+        assertNull(row.getUser());
+        assertNotNull(row.getError());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void next_csv() throws Exception {
+        UserImportReader reader = new UserImportReader(new StringReader(
+                "username,password,firstName,lastName,emailAddress,groups\n" +
+                        "jdoe,\"My,P@ss\"\"w0rd1\",John,Doe,jdoe@example.com,API_USER|SYSTEM_ADMIN\n" +
+                        "asmith,MyP@ssw0rd1,Ann,Smith,asmith@example.com,NO_SUCH_GROUP\n" +
+                        "bjones,MyP@ssw0rd1,Bob\n"),
+                UserImportReader.Format.CSV);
+
+        UserImportReader.Row row = reader.next();
+        assertNull(row.getError());
+        assertEquals(2, row.getLine());
+        assertEquals("My,P@ss\"w0rd1", row.getUser().getPassword());
+        assertEquals(Arrays.asList(RswGroup.API_USER, RswGroup.SYSTEM_ADMIN), row.getUser().getGroups());
+
+        row = reader.next();
+        assertEquals("Unknown group 'NO_SUCH_GROUP'", row.getError());
+
+        row = reader.next();
+        assertEquals(4, row.getLine());
+        assertEquals("Expected 6 values, found 3", row.getError());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void next_requiresUsernameAndPassword() throws Exception {
+        UserImportReader reader = new UserImportReader(new StringReader("{\"username\":\"jdoe\"}"),
+                UserImportReader.Format.NDJSON);
+        assertEquals("username and password are required", reader.next().getError());
+    }
+
+    @Test
+    public void appendRow_quotesValuesAndLeavesNullsEmpty() {
+        StringBuilder rows = new StringBuilder();
+        UserImportService.appendRow(rows, "jdoe", null, true, 3, "say \"hi\"");
+        assertEquals("\"jdoe\",,\"true\",\"3\",\"say \"\"hi\"\"\"\n", rows.toString());
+    }
+}
@@ -0,0 +1,134 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import com.rsw.auth.domain.RswGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * UserImportService against the database: validation failures, the COPY write path, and the per-row retry of a
+ * chunk whose COPY fails.
+ *
+ * Not @Transactional - a failed COPY aborts the transaction it runs in, so the import must run its own chunk and
+ * row transactions as it does in production.  Imported users (all named imptest*) are deleted after each test.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class UserImportServiceIGTest {
+
+    private static final String PASSWORD = "MyP@ssw0rd1";
+    private static final int STALE_GROUP_ID = -1;
+
+    @Autowired
+    JdbcTemplate testJdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    PasswordService passwordService;
+
+    @Autowired
+    AuthMetrics authMetrics;
+
+    private BCryptPasswordEncoder hashEncoder;
+    private UserImportService userImportService;
+    private final Map<Long, String> failures = new TreeMap<>();
+    private final UserImportService.Listener listener = new UserImportService.Listener() {
+        @Override
+        public void rowFailed(long line, String username, String error) {
+            failures.put(line, error);
+        }
+
+        @Override
+        public void chunkWritten(UserImportService.Progress progress) {
+        }
+    };
+
+    @Before
+    public void setUp() {
+        // SYSTEM_ADMIN resolves to a group that no longer exists (e.g. deleted since the snapshot): validation
+        // passes, and only the group_members foreign key rejects the row
+        GroupAuthorityCache groupAuthorityCache = spy(new GroupAuthorityCache().setJdbcTemplate(testJdbcTemplate));
+        groupAuthorityCache.refresh();
+        doReturn(STALE_GROUP_ID).when(groupAuthorityCache).getGroupId(RswGroup.SYSTEM_ADMIN);
+
+        hashEncoder = new BCryptPasswordEncoder(4);
+        userImportService = new UserImportService(testJdbcTemplate, new TransactionTemplate(transactionManager),
+                passwordService, hashEncoder, groupAuthorityCache, authMetrics, 2, 10);
+    }
+
+    @After
+    public void tearDown() {
+        userImportService.shutdown();
+        testJdbcTemplate.update("delete from group_members where lower(username) like 'imptest%'");
+        testJdbcTemplate.update("delete from password_history where lower(username) like 'imptest%'");
+        testJdbcTemplate.update("delete from users where lower(username) like 'imptest%'");
+    }
+
+    @Test
+    public void importUsers_reportsOnlyOffendingRows() throws Exception {
+        UserImportService.Progress progress = userImportService.importUsers(new UserImportReader(new StringReader(
+                user("ImpTestOne", "O\\\"Brien", "Smith, Jr", "\"API_USER\",\"API_ADMIN\"") +
+                user("ImpTestTwo", "Ann", "Jones", "\"API_USER\"") +
+                user("IMPTESTONE", "Dup", "Licate", "\"API_USER\"") +
+                user("Admin", "Existing", "User", "\"API_USER\"") +
+                user("ImpTestBad", "Stale", "Group", "\"SYSTEM_ADMIN\"") +
+                user("ImpTestSix", "Bob", "Brown", "\"API_USER\"")),
+                UserImportReader.Format.NDJSON), listener);
+
+        assertEquals(6, progress.getRead());
+        assertEquals(3, progress.getImported());
+        assertEquals(3, progress.getFailed());
+        assertEquals(Arrays.asList(3L, 4L, 5L), new ArrayList<>(failures.keySet()));
+        assertEquals("Duplicate username", failures.get(3L));
+        assertEquals("Username Admin already exists", failures.get(4L));
+        assertTrue(failures.get(5L), failures.get(5L).contains("fk_group_members_groups"));
+
+        // the failed row's own transaction rolled back; the chunk's retried rows are all there
+        assertEquals(Arrays.asList("imptestone", "imptestsix", "imptesttwo"), testJdbcTemplate.queryForList(
+                "select username from users where lower(username) like 'imptest%' order by username", String.class));
+        assertEquals(Arrays.asList("imptestone", "imptestone", "imptestsix", "imptesttwo"),
+                testJdbcTemplate.queryForList("select username from group_members " +
+                        "where lower(username) like 'imptest%' order by username", String.class));
+        assertEquals(Arrays.asList("imptestone", "imptestsix", "imptesttwo"),
+                testJdbcTemplate.queryForList("select username from password_history " +
+                        "where lower(username) like 'imptest%' order by username", String.class));
+
+        for (String username : Arrays.asList("imptestone", "imptesttwo", "imptestsix")) {
+            String hash = testJdbcTemplate.queryForObject("select password from users where username = ?",
+                    String.class, username);
+            assertEquals(hash, testJdbcTemplate.queryForObject(
+                    "select password from password_history where username = ?", String.class, username));
+            assertTrue(hashEncoder.matches(PASSWORD, hash));
+        }
+
+        // quotes and delimiters in values survive the COPY csv format; absent values are NULL, not ""
+        Map<String, Object> quoted = testJdbcTemplate.queryForMap(
+                "select first_name, last_name, middle_initial from users where username = 'imptestone'");
+        assertEquals("O\"Brien", quoted.get("first_name"));
+        assertEquals("Smith, Jr", quoted.get("last_name"));
+        assertNull(quoted.get("middle_initial"));
+    }
+
+    private static String user(String username, String firstName, String lastName, String groups) {
+        return "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\",\"firstName\":\"" + firstName +
+                "\",\"lastName\":\"" + lastName + "\",\"emailAddress\":\"" + username.toLowerCase() +
+                "@example.com\",\"groups\":[" + groups + "]}\n";
+    }
+}
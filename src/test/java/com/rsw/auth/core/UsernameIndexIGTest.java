@@ -0,0 +1,92 @@
+package com.rsw.auth.core;
+
+import static org.junit.Assert.*;
+import com.rsw.auth.domain.RswGroup;
+import com.rsw.auth.domain.RswUser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Username lookups on the login path use the lower(username) indexes of the schema, and are case-insensitive.
+ *
+ * The test tables are tiny, so sequential scans are disabled for the transaction: a plan still showing a
+ * Seq Scan means no index matches the statement's username predicate.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class UsernameIndexIGTest {
+
+    @Autowired
+    RswUserDetailsService userDetailsService;
+
+    @Autowired
+    JdbcTemplate testJdbcTemplate;
+
+    @Before
+    public void disableSeqScan() {
+        testJdbcTemplate.execute("set local enable_seqscan = off");
+    }
+
+    @Test
+    public void userWithGroupsQuery_usesUsernameIndexes() {
+        String plan = explain(RswUserDetailsService.DEF_USER_WITH_GROUPS_BY_USERNAME_QUERY, "Admin");
+        assertNoSeqScan(plan, "users", "group_members", "authorities");
+        assertTrue(plan, plan.contains("ix_uq_users"));
+        assertTrue(plan, plan.contains("ix_group_members_users"));
+        assertTrue(plan, plan.contains("ix_authorities_users") || plan.contains("ix_uq_authorities"));
+    }
+
+    @Test
+    public void usersAndGroupQueries_useUsernameIndexes() {
+        String plan = explain(RswUserDetailsService.DEF_USERS_BY_USERNAME_QUERY, "Admin");
+        assertNoSeqScan(plan, "users");
+        assertTrue(plan, plan.contains("ix_uq_users"));
+
+        plan = explain(RswUserDetailsService.DEF_GROUPNAMES_BY_USERNAME_QUERY, "Admin");
+        assertNoSeqScan(plan, "group_members");
+        assertTrue(plan, plan.contains("ix_group_members_users"));
+    }
+
+    @Test
+    public void passwordHistoryQuery_usesUsernameIndex() {
+        String plan = explain(PasswordService.DEF_FIND_PASSWORD_HISTORY_SQL, "Admin", 5);
+        assertNoSeqScan(plan, "password_history");
+        assertTrue(plan, plan.contains("ix_password_history_users"));
+    }
+
+    @Test
+    public void loadUserByUsername_caseInsensitive() throws Exception {
+        RswUser user = new RswUser("JoeTest", "MyP@ssw0rd1", true, null, false, Arrays.asList(RswGroup.API_USER));
+        userDetailsService.createUser(user.setFirstName("Test").setLastName("User").setEmailAddress("test@example.com"));
+
+        assertEquals("joetest", userDetailsService.loadUserByUsername("JOETEST").getUsername());
+        assertEquals("joetest", userDetailsService.loadUserByUsername("joetest").getUsername());
+        assertTrue(userDetailsService.userExists("jOeTeSt"));
+        userDetailsService.authenticate("JoeTest", "MyP@ssw0rd1");
+
+        List<String> members = testJdbcTemplate.queryForList(
+                "select username from group_members where username = ?", String.class, "joetest");
+        assertEquals(Arrays.asList("joetest"), members);
+    }
+
+    private String explain(String sql, Object... args) {
+        List<String> lines = testJdbcTemplate.queryForList("explain " + sql, String.class, args);
+        return String.join("\n", lines);
+    }
+
+    private static void assertNoSeqScan(String plan, String... tables) {
+        for (String table : tables) {
+            assertFalse(plan, plan.contains("Seq Scan on " + table + " "));
+        }
+    }
+}